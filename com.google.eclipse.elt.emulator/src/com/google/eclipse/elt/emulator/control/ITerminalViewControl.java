@@ -70,6 +70,10 @@ public interface ITerminalViewControl {
 
   public boolean pasteString(String string);
 
+  void cancelPaste();
+
+  boolean isPasting();
+
   void setCommandInputField(ICommandInputField inputField);
 
   ICommandInputField getCommandInputField();
@@ -85,4 +89,14 @@ public interface ITerminalViewControl {
   void setColors(RGB background, RGB foreground);
 
   void setBlinkingCursor(boolean useBlinkingCursor);
+
+  void setRenderingMode(RenderingMode mode);
+
+  RenderingMode getRenderingMode();
+
+  RenderingMode getEffectiveRenderingMode();
+
+  void setMaximumFrameRate(int framesPerSecond);
+
+  void setThroughputParseBudget(int milliseconds);
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.control;
+
+/**
+ * How a terminal balances the latency of small updates against the throughput of large bursts of output.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+public enum RenderingMode {
+  /**
+   * Switches between {@link #LOW_LATENCY} and {@link #HIGH_THROUGHPUT} depending on how much output is received.
+   */
+  AUTOMATIC,
+
+  /**
+   * Parses output in short slices and paints every change as soon as it has been parsed. Best for interactive use.
+   */
+  LOW_LATENCY,
+
+  /**
+   * Parses output in large batches and paints at a capped frame rate. Best for large bursts of output.
+   */
+  HIGH_THROUGHPUT;
+}
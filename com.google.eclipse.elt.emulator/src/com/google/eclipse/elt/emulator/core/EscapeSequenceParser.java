@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.core;
+
+import java.util.Arrays;
+
+/**
+ * Recognizes ECMA-48 control functions and DEC escape sequences, one character at a time.
+ * <p>
+ * The parser is a state machine driven by a transition table, modeled after the DEC VT500 parser: each state maps
+ * each 7-bit character (and all other characters, as a single class) to an action and a next state. Characters that
+ * are part of a sequence are consumed by the parser; {@link #next(char)} tells the caller when a character must be
+ * printed or executed, or when a sequence is complete.
+ * <p>
+ * Numeric parameters are accumulated directly into an {@code int} array, and the parser never allocates once created.
+ * Parameters and intermediates are only valid until the next call to {@link #next(char)}.
+ * <p>
+ * Device control strings, and SOS, PM and APC strings, are recognized and skipped, since none of them is supported.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+class EscapeSequenceParser {
+  // Results of next(char).
+  /** The character is part of a sequence that is not complete yet, or is ignored. */
+  static final int NONE = 0;
+  /** The character is a graphic character, to be displayed. */
+  static final int PRINT = 1;
+  /** The character is a C0 control character, to be executed. */
+  static final int EXECUTE = 2;
+  /** The character is the final character of an escape sequence ({@code ESC I... F}.) */
+  static final int ESC_DISPATCH = 3;
+  /** The character is the final character of a control sequence ({@code CSI P... I... F}.) */
+  static final int CSI_DISPATCH = 4;
+  /** The character terminates an operating system command ({@code OSC ... BEL} or {@code OSC ... ESC}.) */
+  static final int OSC_DISPATCH = 5;
+
+  // Actions performed by the parser itself.
+  private static final int COLLECT = 6;
+  private static final int PARAM = 7;
+  private static final int OSC_PUT = 8;
+
+  private static final int GROUND = 0;
+  private static final int ESCAPE = 1;
+  private static final int ESCAPE_INTERMEDIATE = 2;
+  private static final int CSI_ENTRY = 3;
+  private static final int CSI_PARAM = 4;
+  private static final int CSI_INTERMEDIATE = 5;
+  private static final int CSI_IGNORE = 6;
+  private static final int OSC_STRING = 7;
+  // Also used for SOS, PM and APC strings, which are skipped the same way.
+  private static final int DCS_STRING = 8;
+  private static final int STATE_COUNT = 9;
+
+  // Characters 0x00-0x7F are their own class. All other characters share the last one.
+  private static final int OTHER_CHARACTERS = 0x80;
+  private static final int CLASS_COUNT = 0x81;
+
+  // Each entry holds an action in its upper 4 bits and the next state in its lower 4 bits.
+  private static final byte[] TRANSITIONS = new byte[STATE_COUNT * CLASS_COUNT];
+
+  static {
+    for (int state = 0; state < STATE_COUNT; state++) {
+      // By default characters are ignored, without leaving the current state.
+      transition(state, 0x00, OTHER_CHARACTERS, NONE, state);
+      if (state != OSC_STRING && state != DCS_STRING) {
+        executeC0Controls(state);
+      }
+      // CAN and SUB cancel any sequence, and ESC starts a new one.
+      transition(state, 0x18, 0x18, EXECUTE, GROUND);
+      transition(state, 0x1A, 0x1A, EXECUTE, GROUND);
+      transition(state, 0x1B, 0x1B, NONE, ESCAPE);
+    }
+
+    transition(GROUND, 0x20, 0x7E, PRINT, GROUND);
+    transition(GROUND, OTHER_CHARACTERS, OTHER_CHARACTERS, PRINT, GROUND);
+
+    transition(ESCAPE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+    transition(ESCAPE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+    transition(ESCAPE, 'P', 'P', NONE, DCS_STRING);
+    transition(ESCAPE, 'X', 'X', NONE, DCS_STRING);
+    transition(ESCAPE, '[', '[', NONE, CSI_ENTRY);
+    transition(ESCAPE, ']', ']', NONE, OSC_STRING);
+    transition(ESCAPE, '^', '_', NONE, DCS_STRING);
+    transition(ESCAPE, OTHER_CHARACTERS, OTHER_CHARACTERS, NONE, GROUND);
+
+    transition(ESCAPE_INTERMEDIATE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+    transition(ESCAPE_INTERMEDIATE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+    transition(ESCAPE_INTERMEDIATE, OTHER_CHARACTERS, OTHER_CHARACTERS, NONE, GROUND);
+
+    transition(CSI_ENTRY, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+    transition(CSI_ENTRY, 0x30, 0x3B, PARAM, CSI_PARAM);
+    // Private parameter markers ('<', '=', '>' and '?'.)
+    transition(CSI_ENTRY, 0x3C, 0x3F, COLLECT, CSI_PARAM);
+    transition(CSI_ENTRY, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+    transition(CSI_ENTRY, OTHER_CHARACTERS, OTHER_CHARACTERS, NONE, GROUND);
+
+    transition(CSI_PARAM, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+    transition(CSI_PARAM, 0x30, 0x3B, PARAM, CSI_PARAM);
+    transition(CSI_PARAM, 0x3C, 0x3F, NONE, CSI_IGNORE);
+    transition(CSI_PARAM, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+    transition(CSI_PARAM, OTHER_CHARACTERS, OTHER_CHARACTERS, NONE, GROUND);
+
+    transition(CSI_INTERMEDIATE, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+    transition(CSI_INTERMEDIATE, 0x30, 0x3F, NONE, CSI_IGNORE);
+    transition(CSI_INTERMEDIATE, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+    transition(CSI_INTERMEDIATE, OTHER_CHARACTERS, OTHER_CHARACTERS, NONE, GROUND);
+
+    transition(CSI_IGNORE, 0x40, 0x7E, NONE, GROUND);
+    transition(CSI_IGNORE, OTHER_CHARACTERS, OTHER_CHARACTERS, NONE, GROUND);
+
+    // xterm also accepts BEL as the terminator of an operating system command.
+    transition(OSC_STRING, 0x07, 0x07, OSC_DISPATCH, GROUND);
+    transition(OSC_STRING, 0x1B, 0x1B, OSC_DISPATCH, ESCAPE);
+    transition(OSC_STRING, 0x20, OTHER_CHARACTERS, OSC_PUT, OSC_STRING);
+    transition(OSC_STRING, 0x7F, 0x7F, NONE, OSC_STRING);
+  }
+
+  private static void executeC0Controls(int state) {
+    transition(state, 0x00, 0x17, EXECUTE, state);
+    transition(state, 0x19, 0x19, EXECUTE, state);
+    transition(state, 0x1C, 0x1F, EXECUTE, state);
+  }
+
+  private static void transition(int state, int first, int last, int action, int nextState) {
+    byte transition = (byte) ((action << 4) | nextState);
+    Arrays.fill(TRANSITIONS, state * CLASS_COUNT + first, state * CLASS_COUNT + last + 1, transition);
+  }
+
+  /** The maximum number of parameters of a control sequence. Extra parameters are ignored. */
+  static final int MAX_PARAMETERS = 16;
+
+  // Larger values are clamped, so that accumulating digits never overflows.
+  private static final int MAX_PARAMETER_VALUE = 0xFFFF;
+
+  // Longer operating system commands are truncated.
+  private static final int MAX_OSC_LENGTH = 4096;
+
+  private int state = GROUND;
+
+  // The parameters of the current control sequence. Omitted parameters are -1.
+  private final int[] parameters = new int[MAX_PARAMETERS];
+  private int parameterIndex;
+  private int parameterCount;
+  // Bit i is set if parameter i was separated from the previous one by ':' instead of ';'.
+  private int subParameters;
+  private boolean tooManyParameters;
+
+  private char privateMarker;
+  private char intermediate;
+  private int intermediateCount;
+
+  private final StringBuilder oscString = new StringBuilder(128);
+
+  /**
+   * Processes the next character.
+   *
+   * @param c the character.
+   * @return what the caller must do with the character: {@link #NONE}, {@link #PRINT}, {@link #EXECUTE},
+   *         {@link #ESC_DISPATCH}, {@link #CSI_DISPATCH} or {@link #OSC_DISPATCH}.
+   */
+  int next(char c) {
+    int transition = TRANSITIONS[state * CLASS_COUNT + (c < OTHER_CHARACTERS ? c : OTHER_CHARACTERS)];
+    int action = (transition >> 4) & 0xF;
+    int nextState = transition & 0xF;
+    switch (action) {
+    case COLLECT:
+      collect(c);
+      action = NONE;
+      break;
+    case PARAM:
+      param(c);
+      action = NONE;
+      break;
+    case OSC_PUT:
+      if (oscString.length() < MAX_OSC_LENGTH) {
+        oscString.append(c);
+      }
+      action = NONE;
+      break;
+    default:
+      break;
+    }
+    if (nextState != state) {
+      enter(nextState);
+    }
+    return action;
+  }
+
+  private void enter(int nextState) {
+    state = nextState;
+    switch (nextState) {
+    case ESCAPE:
+      clear();
+      break;
+    case OSC_STRING:
+      oscString.setLength(0);
+      break;
+    default:
+      break;
+    }
+  }
+
+  private void clear() {
+    parameters[0] = -1;
+    parameterIndex = 0;
+    parameterCount = 0;
+    subParameters = 0;
+    tooManyParameters = false;
+    privateMarker = 0;
+    intermediate = 0;
+    intermediateCount = 0;
+  }
+
+  private void collect(char c) {
+    if (c >= 0x3C && c <= 0x3F) {
+      privateMarker = c;
+      return;
+    }
+    intermediate = c;
+    intermediateCount++;
+  }
+
+  private void param(char c) {
+    if (c == ';' || c == ':') {
+      if (parameterIndex == MAX_PARAMETERS - 1) {
+        tooManyParameters = true;
+        return;
+      }
+      parameterIndex++;
+      parameters[parameterIndex] = -1;
+      if (c == ':') {
+        subParameters |= 1 << parameterIndex;
+      }
+      parameterCount = parameterIndex + 1;
+      return;
+    }
+    if (tooManyParameters) {
+      return;
+    }
+    int value = parameters[parameterIndex];
+    value = (value < 0) ? c - '0' : Math.min(value * 10 + (c - '0'), MAX_PARAMETER_VALUE);
+    parameters[parameterIndex] = value;
+    parameterCount = parameterIndex + 1;
+  }
+
+  /**
+   * Returns to the initial state, discarding any sequence in progress.
+   */
+  void reset() {
+    state = GROUND;
+    clear();
+  }
+
+  /**
+   * Indicates whether the given character is displayed when no sequence is in progress. Runs of such characters can be
+   * displayed without going through {@link #next(char)}.
+   *
+   * @param c the character.
+   * @return {@code true} if the given character is a graphic character.
+   */
+  static boolean isGraphicCharacter(char c) {
+    return (c >= 0x20 && c < 0x7F) || c >= OTHER_CHARACTERS;
+  }
+
+  /**
+   * Returns the number of parameters of the last control sequence, including omitted ones (e.g. 3 for
+   * {@code "\e[;;5H"}.)
+   *
+   * @return the number of parameters of the last control sequence.
+   */
+  int getParameterCount() {
+    return parameterCount;
+  }
+
+  /**
+   * Indicates whether the given parameter of the last control sequence is present.
+   *
+   * @param index the index of the parameter.
+   * @return {@code true} if the parameter has a value, {@code false} if it was omitted.
+   */
+  boolean hasParameter(int index) {
+    return index >= 0 && index < parameterCount && parameters[index] >= 0;
+  }
+
+  /**
+   * Returns one of the parameters of the last control sequence.
+   *
+   * @param index the index of the parameter.
+   * @param defaultValue the value to return if the parameter was omitted.
+   * @return the value of the parameter.
+   */
+  int getParameter(int index, int defaultValue) {
+    return hasParameter(index) ? parameters[index] : defaultValue;
+  }
+
+  /**
+   * Indicates whether the given parameter of the last control sequence is a sub-parameter, i.e. it was separated from
+   * the previous parameter by ':' (e.g. the 2 in {@code "\e[38:2:255:0:0m"}.)
+   *
+   * @param index the index of the parameter.
+   * @return {@code true} if the given parameter is a sub-parameter.
+   */
+  boolean isSubParameter(int index) {
+    return index > 0 && index < parameterCount && (subParameters & (1 << index)) != 0;
+  }
+
+  /**
+   * Returns the private parameter marker of the last control sequence (e.g. '?' for {@code "\e[?2004h"}.)
+   *
+   * @return the private parameter marker, or 0 if there is none.
+   */
+  char getPrivateMarker() {
+    return privateMarker;
+  }
+
+  /**
+   * Returns the intermediate character of the last escape or control sequence (e.g. '(' for {@code "\e(B"}.)
+   *
+   * @return the last intermediate character, or 0 if there is none.
+   */
+  char getIntermediate() {
+    return intermediate;
+  }
+
+  /**
+   * Returns the number of intermediate characters of the last escape or control sequence.
+   *
+   * @return the number of intermediate characters.
+   */
+  int getIntermediateCount() {
+    return intermediateCount;
+  }
+
+  /**
+   * Returns the text of the last operating system command, without its introducer and terminator (e.g.
+   * {@code "0;title"} for {@code "\e]0;title\u0007"}.)
+   *
+   * @return the text of the last operating system command.
+   */
+  CharSequence getOscString() {
+    return oscString;
+  }
+}
@@ -22,6 +22,10 @@ public interface IVT100EmulatorBackend {
   /**
    * Sets the dimensions of the addressable scroll space of the screen. Keeps the cursor position relative to the bottom
    * of the screen.
+   * <p>
+   * When the number of columns changes, text that wrapped at the old width is wrapped again at the new one: right away
+   * for the screen, and in the background for the lines above it.
+   * </p>
    *
    * @param lines the number of lines.
    * @param columns the number of columns.
@@ -92,6 +96,55 @@ public interface IVT100EmulatorBackend {
    */
   void deleteLines(int lineCount);
 
+  /**
+   * Sets the top and bottom margins of the scrolling region (DECSTBM) and moves the cursor to the top-left corner of
+   * the screen. Only the lines of the scrolling region scroll when a new line is added at its bottom margin, and lines
+   * scrolled off the top of a region that does not span the whole screen are lost. The region is reset to the whole
+   * screen when the dimensions change. Margins that do not leave at least two lines in the region are ignored.
+   *
+   * @param top the screen line of the top margin.
+   * @param bottom the screen line of the bottom margin.
+   */
+  void setScrollingRegion(int top, int bottom);
+
+  /**
+   * Scrolls the lines of the scrolling region up. Lines moved past the top margin are lost, and blank lines are added
+   * at the bottom margin. The cursor does not move.
+   *
+   * @param lineCount the number of lines to scroll.
+   */
+  void scrollUp(int lineCount);
+
+  /**
+   * Scrolls the lines of the scrolling region down. Lines moved past the bottom margin are lost, and blank lines are
+   * added at the top margin. The cursor does not move.
+   *
+   * @param lineCount the number of lines to scroll.
+   */
+  void scrollDown(int lineCount);
+
+  /**
+   * Moves the cursor up one line, in the same column (RI). If the cursor is at the top margin, the scrolling region is
+   * scrolled down instead.
+   */
+  void reverseLineFeed();
+
+  /**
+   * Switches to the alternate screen, or back to the main one. The alternate screen is as big as the screen, without
+   * lines above it, and keeps its text while the main screen is shown. The main screen is shown again as it was when
+   * it was left, including the cursor position and the style; it is resized then if the dimensions changed meanwhile.
+   *
+   * @param alternate {@code true} to show the alternate screen, {@code false} to show the main one.
+   */
+  void setAlternateScreen(boolean alternate);
+
+  /**
+   * Indicates whether the alternate screen is shown.
+   *
+   * @return {@code true} if the alternate screen is shown, {@code false} if the main one is.
+   */
+  boolean isAlternateScreen();
+
   Style getStyle();
 
   /**
@@ -114,6 +167,16 @@ public interface IVT100EmulatorBackend {
    */
   void appendString(String buffer);
 
+  /**
+   * Displays some of the newly-received characters in the terminal view, like {@link #appendString(String)}. The
+   * characters are copied, so the caller can reuse the buffer once this method returns.
+   *
+   * @param buffer contains the characters to append.
+   * @param offset the index of the first character to append.
+   * @param length the number of characters to append.
+   */
+  void appendChars(char[] buffer, int offset, int length);
+
   /**
    * Process a newline (Control-J) character. A newline (NL) character just moves the cursor to the same column on the
    * next line, creating new lines when the cursor reaches the bottom edge of the terminal. This is counter-intuitive,
@@ -127,6 +190,9 @@ public interface IVT100EmulatorBackend {
    * xterm or this code) _always_ interprets a CR to mean "move the cursor to the beginning of the current
    * line" and a NL to mean "move the cursor to the same column on the next line".
    * </p>
+   * <p>
+   * If the cursor is at the bottom margin of the scrolling region, the scrolling region is scrolled up instead.
+   * </p>
    */
   void processNewline();
 
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.core;
+
+import static java.nio.charset.CodingErrorAction.REPLACE;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+
+/**
+ * Incrementally decodes the bytes received from the connector into characters for the emulator.
+ * <p>
+ * UTF-8 and ISO-8859-1 are decoded natively; runs of 7-bit ASCII are copied without any decoding step. Any other
+ * charset is decoded with a {@link CharsetDecoder}. Incomplete multi-byte sequences at the end of a chunk are kept
+ * until the rest of the sequence arrives, including across charset changes.
+ * <p>
+ * Decoding happens in the thread that feeds the emulator. The charset may be changed from any thread; the change is
+ * applied before the next chunk is decoded.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+class InputDecoder {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+  private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+  private final InputStream input;
+
+  // Bytes read from the input that have not been decoded yet are between bytesStart (inclusive) and bytesEnd
+  // (exclusive).
+  private final byte[] bytes = new byte[8 * 1024];
+  private int bytesStart;
+  private int bytesEnd;
+
+  private volatile Charset requestedCharset = ISO_8859_1;
+  private Charset charset;
+  private CharsetDecoder decoder;
+
+  InputDecoder(InputStream input) {
+    this.input = input;
+  }
+
+  void setCharset(Charset charset) {
+    requestedCharset = charset;
+  }
+
+  /**
+   * Decodes as many characters as possible, without blocking, into the given array.
+   *
+   * @param chars the array to decode into.
+   * @param off the start offset in {@code chars}.
+   * @param len the maximum number of characters to decode; must be at least 2.
+   * @return the number of characters decoded, zero if no complete character is available.
+   * @throws IOException if the input cannot be read.
+   */
+  int decode(char[] chars, int off, int len) throws IOException {
+    updateCharset();
+    fillBytes();
+    if (bytesStart == bytesEnd) {
+      return 0;
+    }
+    if (charset == UTF_8) {
+      return decodeUtf8(chars, off, len);
+    }
+    if (charset == ISO_8859_1) {
+      return decodeLatin1(chars, off, len);
+    }
+    return decodeWithCharsetDecoder(chars, off, len);
+  }
+
+  private void updateCharset() {
+    Charset newCharset = requestedCharset;
+    if (newCharset.equals(charset)) {
+      return;
+    }
+    charset = newCharset.equals(UTF_8) ? UTF_8 : newCharset.equals(ISO_8859_1) ? ISO_8859_1 : newCharset;
+    decoder = null;
+    if (charset != UTF_8 && charset != ISO_8859_1) {
+      decoder = charset.newDecoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE);
+    }
+  }
+
+  private void fillBytes() throws IOException {
+    if (bytesStart == bytesEnd) {
+      bytesStart = 0;
+      bytesEnd = 0;
+    } else if (bytesEnd == bytes.length) {
+      // Keep the pending bytes (e.g. an incomplete multi-byte sequence) and make room after them.
+      System.arraycopy(bytes, bytesStart, bytes, 0, bytesEnd - bytesStart);
+      bytesEnd -= bytesStart;
+      bytesStart = 0;
+    }
+    int available = input.available();
+    if (available <= 0) {
+      return;
+    }
+    int count = input.read(bytes, bytesEnd, Math.min(available, bytes.length - bytesEnd));
+    if (count > 0) {
+      bytesEnd += count;
+    }
+  }
+
+  private int decodeUtf8(char[] chars, int off, int len) {
+    int in = bytesStart;
+    int out = off;
+    int outEnd = off + len;
+    while (in < bytesEnd && out < outEnd) {
+      int b = bytes[in];
+      if (b >= 0) {
+        // ASCII fast path.
+        int asciiEnd = Math.min(bytesEnd, in + (outEnd - out));
+        do {
+          chars[out++] = (char) b;
+          if (++in == asciiEnd) {
+            break;
+          }
+          b = bytes[in];
+        } while (b >= 0);
+        continue;
+      }
+      int sequenceLength;
+      int codePoint;
+      if ((b & 0xE0) == 0xC0) {
+        sequenceLength = 2;
+        codePoint = b & 0x1F;
+      } else if ((b & 0xF0) == 0xE0) {
+        sequenceLength = 3;
+        codePoint = b & 0x0F;
+      } else if ((b & 0xF8) == 0xF0) {
+        sequenceLength = 4;
+        codePoint = b & 0x07;
+      } else {
+        // Unexpected continuation byte or invalid lead byte.
+        chars[out++] = REPLACEMENT_CHARACTER;
+        in++;
+        continue;
+      }
+      int valid = 1;
+      while (valid < sequenceLength && in + valid < bytesEnd && (bytes[in + valid] & 0xC0) == 0x80) {
+        codePoint = (codePoint << 6) | (bytes[in + valid] & 0x3F);
+        valid++;
+      }
+      if (valid < sequenceLength) {
+        if (in + valid == bytesEnd) {
+          // Incomplete sequence: wait for the rest of it.
+          break;
+        }
+        chars[out++] = REPLACEMENT_CHARACTER;
+        in += valid;
+        continue;
+      }
+      if (isOverlongOrInvalid(codePoint, sequenceLength)) {
+        chars[out++] = REPLACEMENT_CHARACTER;
+      } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        chars[out++] = (char) codePoint;
+      } else {
+        if (outEnd - out < 2) {
+          break;
+        }
+        out += Character.toChars(codePoint, chars, out);
+      }
+      in += sequenceLength;
+    }
+    bytesStart = in;
+    return out - off;
+  }
+
+  private static boolean isOverlongOrInvalid(int codePoint, int sequenceLength) {
+    switch (sequenceLength) {
+    case 2:
+      return codePoint < 0x80;
+    case 3:
+      return codePoint < 0x800 || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE);
+    default:
+      return codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT || codePoint > Character.MAX_CODE_POINT;
+    }
+  }
+
+  private int decodeLatin1(char[] chars, int off, int len) {
+    int count = Math.min(len, bytesEnd - bytesStart);
+    for (int i = 0; i < count; i++) {
+      chars[off + i] = (char) (bytes[bytesStart + i] & 0xFF);
+    }
+    bytesStart += count;
+    return count;
+  }
+
+  private int decodeWithCharsetDecoder(char[] chars, int off, int len) {
+    ByteBuffer in = ByteBuffer.wrap(bytes, bytesStart, bytesEnd - bytesStart);
+    CharBuffer out = CharBuffer.wrap(chars, off, len);
+    decoder.decode(in, out, false);
+    bytesStart = in.position();
+    return out.position() - off;
+  }
+}
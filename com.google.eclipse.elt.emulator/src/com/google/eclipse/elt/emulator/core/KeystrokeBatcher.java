@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.core;
+
+import static java.nio.charset.CodingErrorAction.REPLACE;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Coalesces the keystrokes sent to the remote side.
+ * <p>
+ * The first keystroke after a quiet period is written and flushed right away, so that its echo is not delayed. The
+ * keystrokes that follow it in the same tick of the event loop (e.g. when typing fast or when a key repeats) are
+ * encoded into a reusable buffer instead, and written with a single write and flush once the event loop has processed
+ * the pending events. While a paste is being sent, keystrokes are queued after it instead, so that the remote side does
+ * not mistake them for pasted text.
+ * <p>
+ * This class is not thread-safe: it must only be used from the UI thread.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+class KeystrokeBatcher {
+  private final Executor endOfTick;
+  private final PasteSender pasteSender;
+  private final ErrorHandler errorHandler;
+
+  private CharsetEncoder encoder;
+  private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+  private OutputStream target;
+  private boolean flushScheduled;
+
+  private final Runnable flushTask = new Runnable() {
+    @Override public void run() {
+      flushScheduled = false;
+      try {
+        flush();
+      } catch (IOException e) {
+        errorHandler.sendFailed(e);
+      }
+    }
+  };
+
+  /**
+   * Creates a new {@link KeystrokeBatcher}.
+   *
+   * @param endOfTick runs tasks on the UI thread once the pending events have been processed.
+   * @param pasteSender sends the pastes the keystrokes must not be mixed with.
+   * @param errorHandler notified when batched keystrokes cannot be sent.
+   */
+  KeystrokeBatcher(Executor endOfTick, PasteSender pasteSender, ErrorHandler errorHandler) {
+    this.endOfTick = endOfTick;
+    this.pasteSender = pasteSender;
+    this.errorHandler = errorHandler;
+    setCharset(Charset.defaultCharset());
+  }
+
+  void setCharset(Charset charset) {
+    encoder = charset.newEncoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE);
+  }
+
+  /**
+   * Sends the given keystrokes to the remote side, either right away or at the end of the current tick of the event
+   * loop.
+   *
+   * @param keys the characters generated by the keystrokes.
+   * @param target the stream connected to the remote side.
+   * @throws IOException if the keystrokes had to be sent right away and could not be.
+   */
+  void send(CharSequence keys, OutputStream target) throws IOException {
+    if (target != this.target) {
+      // Keystrokes are never carried over from one connection to the next.
+      buffer.clear();
+      this.target = target;
+    }
+    encode(keys);
+    if (!flushScheduled) {
+      flushScheduled = true;
+      endOfTick.execute(flushTask);
+      flush();
+    }
+  }
+
+  private void encode(CharSequence keys) {
+    CharBuffer in = CharBuffer.wrap(keys);
+    encoder.reset();
+    while (true) {
+      CoderResult result = encoder.encode(in, buffer, true);
+      if (!result.isOverflow()) {
+        result = encoder.flush(buffer);
+      }
+      if (!result.isOverflow()) {
+        return;
+      }
+      ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+      buffer.flip();
+      larger.put(buffer);
+      buffer = larger;
+    }
+  }
+
+  /**
+   * Sends the keystrokes batched so far right away, e.g. before a paste is queued.
+   *
+   * @throws IOException if the keystrokes could not be sent.
+   */
+  void flush() throws IOException {
+    if (buffer.position() == 0 || target == null) {
+      return;
+    }
+    int count = buffer.position();
+    buffer.clear();
+    if (pasteSender.hasPendingWrites()) {
+      // Pastes are only queued from the UI thread, so none can start between this check and the write below.
+      pasteSender.sendAfterPastes(Arrays.copyOf(buffer.array(), count), target);
+      return;
+    }
+    target.write(buffer.array(), 0, count);
+    target.flush();
+  }
+
+  interface ErrorHandler {
+    /**
+     * Called from the UI thread when batched keystrokes could not be sent.
+     *
+     * @param e the error that occurred.
+     */
+    void sendFailed(IOException e);
+  }
+}
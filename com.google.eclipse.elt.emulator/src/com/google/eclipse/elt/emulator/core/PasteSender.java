@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.core;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.eclipse.elt.emulator.provisional.api.Logger;
+
+/**
+ * Sends pasted text to the remote side without blocking the UI thread.
+ * <p>
+ * Each paste is encoded once and written by a background thread in chunks no larger than the input buffer of a
+ * pseudo-terminal, flushing after each chunk. Writes block while the remote side is not reading, which throttles a large
+ * paste to the speed the shell consumes it. Pastes are sent in the order they were made, and can be cancelled between
+ * chunks.
+ * <p>
+ * When bracketed paste is requested, the text is wrapped in {@code "\e[200~"} and {@code "\e[201~"}, so that the shell
+ * can tell pasted text from typed text. Any end marker inside the pasted text is removed, so that the paste cannot end
+ * the bracket early. The end marker is sent even if the paste is cancelled.
+ * <p>
+ * Keystrokes typed while a paste is being sent are queued after it with {@link #sendAfterPastes(byte[], OutputStream)},
+ * so that they neither land between its chunks nor inside its bracket.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+class PasteSender {
+  // The input queue of a pseudo-terminal holds 4 KB on most systems.
+  private static final int CHUNK_SIZE = 4 * 1024;
+
+  private static final String BRACKETED_PASTE_START = "\u001b[200~";
+  private static final String BRACKETED_PASTE_END = "\u001b[201~";
+
+  private final ThreadPoolExecutor executor;
+  private final ErrorHandler errorHandler;
+
+  // Pastes made before the latest call to cancel() have a lower generation and stop at the next chunk.
+  private final AtomicInteger generation = new AtomicInteger();
+  private final AtomicInteger pendingPastes = new AtomicInteger();
+  // Pastes and keystrokes queued or being sent.
+  private final AtomicInteger pendingWrites = new AtomicInteger();
+
+  PasteSender(ErrorHandler errorHandler) {
+    this.errorHandler = errorHandler;
+    executor = new ThreadPoolExecutor(1, 1, 30, SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Terminal paste");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Queues the given text to be sent to the remote side.
+   *
+   * @param text the text to send.
+   * @param encoding the name of the encoding to send the text in.
+   * @param bracketed whether to wrap the text in bracketed paste markers.
+   * @param target the stream connected to the remote side.
+   */
+  void paste(final String text, final String encoding, final boolean bracketed, final OutputStream target) {
+    final int pasteGeneration = generation.get();
+    pendingPastes.incrementAndGet();
+    boolean queued = queue(new Runnable() {
+      @Override public void run() {
+        try {
+          send(text, encoding, bracketed, target, pasteGeneration);
+        } catch (IOException e) {
+          Logger.logException(e);
+          errorHandler.pasteFailed(e);
+        } finally {
+          pendingPastes.decrementAndGet();
+        }
+      }
+    });
+    if (!queued) {
+      pendingPastes.decrementAndGet();
+    }
+  }
+
+  /**
+   * Queues the given bytes to be sent to the remote side once the pastes queued or being sent are done. Unlike pastes,
+   * the bytes are sent even if the pastes are cancelled.
+   *
+   * @param bytes the bytes to send.
+   * @param target the stream connected to the remote side.
+   */
+  void sendAfterPastes(final byte[] bytes, final OutputStream target) {
+    queue(new Runnable() {
+      @Override public void run() {
+        try {
+          target.write(bytes);
+          target.flush();
+        } catch (IOException e) {
+          Logger.logException(e);
+          errorHandler.pasteFailed(e);
+        }
+      }
+    });
+  }
+
+  private boolean queue(final Runnable write) {
+    pendingWrites.incrementAndGet();
+    try {
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          try {
+            write.run();
+          } finally {
+            pendingWrites.decrementAndGet();
+          }
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      pendingWrites.decrementAndGet();
+      Logger.logException(e);
+      return false;
+    }
+  }
+
+  private void send(String text, String encoding, boolean bracketed, OutputStream target, int pasteGeneration)
+      throws IOException {
+    if (pasteGeneration != generation.get()) {
+      return;
+    }
+    if (bracketed) {
+      text = text.replace(BRACKETED_PASTE_END, "");
+      target.write(BRACKETED_PASTE_START.getBytes(encoding));
+    }
+    byte[] bytes = text.getBytes(encoding);
+    Logger.log("pasting " + bytes.length + " bytes");
+    for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE) {
+      if (pasteGeneration != generation.get()) {
+        Logger.log("paste cancelled after " + offset + " bytes");
+        break;
+      }
+      target.write(bytes, offset, Math.min(CHUNK_SIZE, bytes.length - offset));
+      target.flush();
+    }
+    if (bracketed) {
+      target.write(BRACKETED_PASTE_END.getBytes(encoding));
+    }
+    target.flush();
+  }
+
+  /**
+   * Cancels all the pastes queued or being sent. A paste being sent stops after the current chunk.
+   */
+  void cancel() {
+    generation.incrementAndGet();
+  }
+
+  /**
+   * Indicates whether a paste is queued or being sent.
+   *
+   * @return {@code true} if a paste is queued or being sent.
+   */
+  boolean isPasting() {
+    return pendingPastes.get() > 0;
+  }
+
+  /**
+   * Indicates whether a paste, or keystrokes queued after one, are queued or being sent. Keystrokes must then be sent
+   * with {@link #sendAfterPastes(byte[], OutputStream)} to keep their order.
+   *
+   * @return {@code true} if bytes are queued or being sent.
+   */
+  boolean hasPendingWrites() {
+    return pendingWrites.get() > 0;
+  }
+
+  interface ErrorHandler {
+    /**
+     * Called from the paste thread when the text could not be sent.
+     *
+     * @param e the error that stopped the paste.
+     */
+    void pasteFailed(IOException e);
+  }
+}
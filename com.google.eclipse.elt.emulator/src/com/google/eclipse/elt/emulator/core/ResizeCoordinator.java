@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.core;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.eclipse.elt.emulator.provisional.api.*;
+
+/**
+ * Tells the remote side about the size of the terminal, once the size has settled.
+ * <p>
+ * Dragging the edge of a terminal changes its size many times per second. Each size sent to the remote side makes it
+ * redraw (e.g. a full-screen application receiving {@code SIGWINCH}), so the size is only sent once it has not changed
+ * for a short while. Sizes equal to the one the remote side already knows about are never sent. The first size of a
+ * connection is sent right away, so that the remote side does not start with a wrong size.
+ * <p>
+ * This class is thread-safe. Sizes are sent on a thread shared by all terminals.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+class ResizeCoordinator {
+  /** How long, in milliseconds, the size of a terminal must stay the same before it is sent to the remote side. */
+  static final long DEFAULT_SETTLE_DELAY_MILLIS = 100;
+
+  private static final ScheduledThreadPoolExecutor scheduler;
+
+  static {
+    scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Terminal resize " + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    scheduler.setKeepAliveTime(30, SECONDS);
+    scheduler.allowCoreThreadTimeOut(true);
+  }
+
+  private final long settleDelayMillis;
+
+  // The size waiting to settle. The generation tells apart the sends that were cancelled after they started running.
+  private int pendingGeneration;
+  private ITerminalConnector pendingConnector;
+  private int pendingColumns;
+  private int pendingLines;
+  private ScheduledFuture<?> pendingSend;
+
+  // The size the remote side knows about.
+  private ITerminalConnector sentConnector;
+  private int sentColumns;
+  private int sentLines;
+
+  ResizeCoordinator() {
+    this(DEFAULT_SETTLE_DELAY_MILLIS);
+  }
+
+  ResizeCoordinator(long settleDelayMillis) {
+    this.settleDelayMillis = settleDelayMillis;
+  }
+
+  /**
+   * Records the new size of the terminal, to be sent to the remote side once it settles.
+   *
+   * @param connector the connection to the remote side. Nothing is sent if it is {@code null}.
+   * @param columns the width of the terminal, in columns.
+   * @param lines the height of the terminal, in lines.
+   */
+  synchronized void sizeChanged(ITerminalConnector connector, int columns, int lines) {
+    if (connector == null || columns <= 0 || lines <= 0) {
+      return;
+    }
+    if (pendingSend != null && isPending(connector, columns, lines)) {
+      // Keep waiting for the size to settle, without pushing the deadline back.
+      return;
+    }
+    cancelPendingSend();
+    if (isSent(connector, columns, lines)) {
+      // The size went back to the one the remote side already has.
+      return;
+    }
+    pendingConnector = connector;
+    pendingColumns = columns;
+    pendingLines = lines;
+    final int generation = ++pendingGeneration;
+    long delay = (connector == sentConnector) ? settleDelayMillis : 0;
+    pendingSend = scheduler.schedule(new Runnable() {
+      @Override public void run() {
+        sendPendingSize(generation);
+      }
+    }, delay, MILLISECONDS);
+  }
+
+  private boolean isPending(ITerminalConnector connector, int columns, int lines) {
+    return connector == pendingConnector && columns == pendingColumns && lines == pendingLines;
+  }
+
+  private boolean isSent(ITerminalConnector connector, int columns, int lines) {
+    return connector == sentConnector && columns == sentColumns && lines == sentLines;
+  }
+
+  private void sendPendingSize(int generation) {
+    ITerminalConnector connector;
+    int columns;
+    int lines;
+    synchronized (this) {
+      if (pendingConnector == null || generation != pendingGeneration) {
+        return;
+      }
+      connector = pendingConnector;
+      columns = pendingColumns;
+      lines = pendingLines;
+      pendingConnector = null;
+      pendingSend = null;
+      sentConnector = connector;
+      sentColumns = columns;
+      sentLines = lines;
+    }
+    // Sizes are sent in order, since the scheduler has a single thread.
+    try {
+      connector.setTerminalSize(columns, lines);
+    } catch (RuntimeException e) {
+      Logger.logException(e);
+    }
+  }
+
+  /**
+   * Forgets the size the remote side knows about, e.g. when the terminal connects again. The next size is sent right
+   * away.
+   */
+  synchronized void reset() {
+    cancelPendingSend();
+    sentConnector = null;
+  }
+
+  private void cancelPendingSend() {
+    if (pendingSend != null) {
+      pendingSend.cancel(false);
+      pendingSend = null;
+    }
+    pendingConnector = null;
+  }
+}
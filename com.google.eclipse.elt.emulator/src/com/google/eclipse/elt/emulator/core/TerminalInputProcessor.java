@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.core;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.google.eclipse.elt.emulator.model.ITerminalTextData;
+import com.google.eclipse.elt.emulator.provisional.api.Logger;
+import com.google.eclipse.elt.emulator.textcanvas.*;
+import com.google.eclipse.elt.emulator.textcanvas.PipedInputStream;
+
+/**
+ * Feeds the input of a terminal to its emulator as soon as it arrives.
+ * <p>
+ * Instead of polling, the processor is scheduled by the thread writing to the terminal's input stream whenever new
+ * data lands. It then drains the input in bounded time slices, rescheduling itself between slices, so that a terminal
+ * flooded with output cannot starve the others. The length of each slice is decided by the terminal's
+ * {@link RenderingGovernor}, which is told how long each slice took. All terminals share a small pool of threads, which
+ * die off when every terminal is idle.
+ * <p>
+ * When more input is queued than fits on the screen, the processor jump scrolls: the terminal model is still updated
+ * line by line, but its snapshots are only told about the changes once the backlog has been drained or a frame is due,
+ * so that the intermediate screens are never painted. The same is done while a program draws a frame in synchronized
+ * output mode: the changes are held back until the frame is complete, or until the program took too long to complete
+ * it.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+class TerminalInputProcessor implements Runnable {
+  private static final ScheduledThreadPoolExecutor executor;
+
+  static {
+    int threadCount = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
+    executor = new ScheduledThreadPoolExecutor(threadCount, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Terminal input processor " + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.setKeepAliveTime(30, SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  private final PipedInputStream input;
+  private final VT100Emulator emulator;
+  private final ITerminalTextData model;
+  private final RenderingGovernor governor;
+  private final ErrorHandler errorHandler;
+
+  // Set while a slice is queued or running; a single slice per terminal is ever queued.
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final Object sliceLock = new Object();
+  private volatile boolean started;
+
+  // Only accessed while holding sliceLock.
+  private boolean jumpScrolling;
+  private long jumpScrollStart;
+  // Runs a slice once a frame drawn in synchronized output mode has taken too long, in case no input arrives until then.
+  private ScheduledFuture<?> synchronizedOutputTimeout;
+
+  private final Runnable dataListener = new Runnable() {
+    @Override public void run() {
+      schedule();
+    }
+  };
+
+  TerminalInputProcessor(PipedInputStream input, VT100Emulator emulator, ITerminalTextData model,
+      RenderingGovernor governor, ErrorHandler errorHandler) {
+    this.input = input;
+    this.emulator = emulator;
+    this.model = model;
+    this.governor = governor;
+    this.errorHandler = errorHandler;
+  }
+
+  /**
+   * Starts processing input, including any input received before this method was called.
+   */
+  void start() {
+    started = true;
+    input.setDataListener(dataListener);
+    schedule();
+  }
+
+  /**
+   * Stops processing input. Input received afterwards is kept until the processor is started again. If a slice is
+   * running in another thread, this method waits until it finishes.
+   */
+  void stop() {
+    started = false;
+    input.setDataListener(null);
+    synchronized (sliceLock) {
+      // Wait for the current slice, if any, and show whatever it held back.
+      stopJumpScrolling();
+    }
+  }
+
+  private void schedule() {
+    if (started && scheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        scheduled.set(false);
+        Logger.logException(e);
+      }
+    }
+  }
+
+  @Override public void run() {
+    boolean sliceExpired = false;
+    try {
+      synchronized (sliceLock) {
+        if (started) {
+          long start = System.nanoTime();
+          if (hasBacklog() || emulator.isOutputSynchronized()) {
+            startJumpScrolling(start);
+          }
+          sliceExpired = emulator.processText(governor.parseTimeSlice());
+          long end = System.nanoTime();
+          long synchronizedOutputTimeLeft = emulator.synchronizedOutputTimeLeft();
+          if (synchronizedOutputTimeLeft > 0) {
+            // The program is drawing a frame: hold back the changes until the frame is complete.
+            startJumpScrolling(end);
+            scheduleSynchronizedOutputTimeout(synchronizedOutputTimeLeft);
+          } else if (!sliceExpired || end - jumpScrollStart >= governor.frameInterval()) {
+            // Show the held back changes once the backlog has been drained or when a frame is due.
+            stopJumpScrolling();
+          }
+          governor.parseFinished(end - start, sliceExpired);
+        }
+      }
+    } catch (RuntimeException e) {
+      stop();
+      errorHandler.processingFailed(e);
+      return;
+    } finally {
+      scheduled.set(false);
+    }
+    // Input that did not fit in this slice, or that arrived while it was running, needs another slice.
+    if (sliceExpired || input.available() > 0 || emulator.hasBufferedInput()) {
+      schedule();
+    }
+  }
+
+  private boolean hasBacklog() {
+    return input.available() > emulator.screenSize();
+  }
+
+  private void startJumpScrolling(long now) {
+    if (!jumpScrolling) {
+      jumpScrolling = true;
+      jumpScrollStart = now;
+      model.setJumpScroll(true);
+    }
+  }
+
+  private void scheduleSynchronizedOutputTimeout(long delayNanos) {
+    if (synchronizedOutputTimeout == null || synchronizedOutputTimeout.isDone()) {
+      synchronizedOutputTimeout = executor.schedule(dataListener, delayNanos, NANOSECONDS);
+    }
+  }
+
+  private void stopJumpScrolling() {
+    if (jumpScrolling) {
+      jumpScrolling = false;
+      model.setJumpScroll(false);
+    }
+  }
+
+  interface ErrorHandler {
+    void processingFailed(RuntimeException e);
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.core;
+
+import static java.util.Arrays.copyOfRange;
+
+import java.util.*;
+
+import com.google.eclipse.elt.emulator.internal.model.TerminalTextDataStore;
+import com.google.eclipse.elt.emulator.model.*;
+
+/**
+ * Rewraps lines of terminal text to a new width.
+ * <p>
+ * Lines are added in order. A line whose text wrapped onto the next one (see
+ * {@link ITerminalTextData#getWrapWidth(int)}) is joined with the next line into a single logical line, which is then
+ * split again at the new width. The trailing blank cells of the last line of a logical line are dropped. The position
+ * of the cursor, if it is in one of the added lines, is tracked through the rewrapping.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+class TextReflow {
+  private final int width;
+
+  // The rewrapped lines.
+  private final List<char[]> chars = new ArrayList<char[]>();
+  private final List<Style[]> styles = new ArrayList<Style[]>();
+  private final BitSet wrapped = new BitSet();
+  // The index, among the added lines, of the first line of the logical line each rewrapped line belongs to.
+  private int[] sources = new int[64];
+
+  // The logical line being joined.
+  private char[] lineChars = new char[256];
+  private Style[] lineStyles = new Style[256];
+  private int lineLength;
+  private int lineSource = -1;
+  private int lineCursor = -1;
+
+  private int addedLineCount;
+  private int cursorLine = -1;
+  private int cursorColumn;
+
+  TextReflow(int width) {
+    this.width = width;
+  }
+
+  /**
+   * Adds the next line to rewrap.
+   *
+   * @param chars the characters of the line, or {@code null} if the line is empty.
+   * @param styles the styles of the line, or {@code null} if the line is empty.
+   * @param wrapWidth the width of the line when its text wrapped onto the next line, or 0 if it did not.
+   */
+  void addLine(char[] chars, Style[] styles, int wrapWidth) {
+    addLine(chars, styles, wrapWidth, -1);
+  }
+
+  /**
+   * Adds the next line to rewrap, which is the line containing the cursor.
+   *
+   * @param chars the characters of the line, or {@code null} if the line is empty.
+   * @param styles the styles of the line, or {@code null} if the line is empty.
+   * @param wrapWidth the width of the line when its text wrapped onto the next line, or 0 if it did not.
+   * @param cursorColumn the column of the cursor.
+   */
+  void addCursorLine(char[] chars, Style[] styles, int wrapWidth, int cursorColumn) {
+    addLine(chars, styles, wrapWidth, cursorColumn);
+  }
+
+  private void addLine(char[] chars, Style[] styles, int wrapWidth, int cursorColumn) {
+    if (lineSource < 0) {
+      lineSource = addedLineCount;
+    }
+    addedLineCount++;
+    int length = (wrapWidth > 0) ? wrapWidth : textLength(chars, styles);
+    if (cursorColumn >= 0) {
+      lineCursor = lineLength + cursorColumn;
+    }
+    ensureCapacity(lineLength + length);
+    int copied = (chars == null) ? 0 : Math.min(length, chars.length);
+    if (copied > 0) {
+      System.arraycopy(chars, 0, lineChars, lineLength, copied);
+      System.arraycopy(styles, 0, lineStyles, lineLength, copied);
+    }
+    // Cells never written to are blank.
+    Arrays.fill(lineChars, lineLength + copied, lineLength + length, '\000');
+    Arrays.fill(lineStyles, lineLength + copied, lineLength + length, null);
+    lineLength += length;
+    if (wrapWidth <= 0) {
+      endLogicalLine();
+    }
+  }
+
+  private static int textLength(char[] chars, Style[] styles) {
+    if (chars == null) {
+      return 0;
+    }
+    int length = chars.length;
+    while (length > 0 && chars[length - 1] == '\000' && (styles == null || styles[length - 1] == null)) {
+      length--;
+    }
+    return length;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > lineChars.length) {
+      int newCapacity = Math.max(capacity, lineChars.length * 2);
+      lineChars = Arrays.copyOf(lineChars, newCapacity);
+      lineStyles = Arrays.copyOf(lineStyles, newCapacity);
+    }
+  }
+
+  /**
+   * Ends the logical line being joined, if any. Must be called after the last line has been added, since the last line
+   * may have wrapped onto a line that was not added.
+   */
+  void finish() {
+    if (lineSource >= 0) {
+      endLogicalLine();
+    }
+  }
+
+  private void endLogicalLine() {
+    int length = lineLength;
+    int lineCount = Math.max(1, (length + width - 1) / width);
+    if (lineCursor >= 0) {
+      // The cursor may be past the end of the text, even on a line of its own.
+      lineCount = Math.max(lineCount, lineCursor / width + 1);
+      cursorLine = chars.size() + lineCursor / width;
+      cursorColumn = lineCursor % width;
+    }
+    for (int i = 0; i < lineCount; i++) {
+      int start = Math.min(i * width, length);
+      int end = Math.min(start + width, length);
+      if (end > start) {
+        chars.add(copyOfRange(lineChars, start, end));
+        styles.add(copyOfRange(lineStyles, start, end));
+      } else {
+        chars.add(null);
+        styles.add(null);
+      }
+      if (i < lineCount - 1) {
+        wrapped.set(chars.size() - 1);
+      }
+      addSource(lineSource);
+    }
+    lineLength = 0;
+    lineSource = -1;
+    lineCursor = -1;
+  }
+
+  private void addSource(int source) {
+    int index = chars.size() - 1;
+    if (index >= sources.length) {
+      sources = Arrays.copyOf(sources, sources.length * 2);
+    }
+    sources[index] = source;
+  }
+
+  /**
+   * Returns the number of rewrapped lines.
+   * @return the number of rewrapped lines.
+   */
+  int getLineCount() {
+    return chars.size();
+  }
+
+  /**
+   * Returns the index, among the added lines, of the first line of the logical line the given rewrapped line belongs
+   * to.
+   *
+   * @param line the index of a rewrapped line.
+   * @return the index of the added line the logical line of the given rewrapped line starts with.
+   */
+  int getSourceLine(int line) {
+    return sources[line];
+  }
+
+  /**
+   * Returns the rewrapped line containing the cursor.
+   * @return the index of the rewrapped line containing the cursor, or -1 if the cursor was not in any added line.
+   */
+  int getCursorLine() {
+    return cursorLine;
+  }
+
+  int getCursorColumn() {
+    return cursorColumn;
+  }
+
+  /**
+   * Returns some of the rewrapped lines as terminal text.
+   *
+   * @param firstLine the index of the first rewrapped line to return.
+   * @param lineCount the number of lines to return. Lines past the last rewrapped line are empty.
+   * @return the rewrapped lines.
+   */
+  ITerminalTextData toTextData(int firstLine, int lineCount) {
+    TerminalTextDataStore data = new TerminalTextDataStore();
+    data.setDimensions(lineCount, width);
+    int last = Math.min(firstLine + lineCount, chars.size());
+    for (int i = firstLine; i < last; i++) {
+      char[] lineChars = chars.get(i);
+      if (lineChars != null) {
+        data.setLine(i - firstLine, lineChars, styles.get(i));
+      }
+      if (wrapped.get(i)) {
+        data.setWrapWidth(i - firstLine, width);
+      }
+    }
+    return data;
+  }
+}
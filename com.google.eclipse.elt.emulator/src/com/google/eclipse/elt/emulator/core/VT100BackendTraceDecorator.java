@@ -28,6 +28,11 @@ public class VT100BackendTraceDecorator implements IVT100EmulatorBackend {
     backend.appendString(buffer);
   }
 
+  @Override public void appendChars(char[] buffer, int offset, int length) {
+    out.println("appendChars(\"" + new String(buffer, offset, length) + "\")");
+    backend.appendChars(buffer, offset, length);
+  }
+
   @Override public void clearAll() {
     out.println("clearAll()");
     backend.clearAll();
@@ -108,6 +113,35 @@ public class VT100BackendTraceDecorator implements IVT100EmulatorBackend {
     backend.processNewline();
   }
 
+  @Override public void setScrollingRegion(int top, int bottom) {
+    out.println("setScrollingRegion(" + top + ", " + bottom + ")");
+    backend.setScrollingRegion(top, bottom);
+  }
+
+  @Override public void scrollUp(int n) {
+    out.println("scrollUp(" + n + ")");
+    backend.scrollUp(n);
+  }
+
+  @Override public void scrollDown(int n) {
+    out.println("scrollDown(" + n + ")");
+    backend.scrollDown(n);
+  }
+
+  @Override public void reverseLineFeed() {
+    out.println("reverseLineFeed()");
+    backend.reverseLineFeed();
+  }
+
+  @Override public void setAlternateScreen(boolean alternate) {
+    out.println("setAlternateScreen(" + alternate + ")");
+    backend.setAlternateScreen(alternate);
+  }
+
+  @Override public boolean isAlternateScreen() {
+    return backend.isAlternateScreen();
+  }
+
   @Override public void setCursor(int targetLine, int targetColumn) {
     out.println("setCursor(" + targetLine + ", " + targetColumn + ")");
     backend.setCursor(targetLine, targetColumn);
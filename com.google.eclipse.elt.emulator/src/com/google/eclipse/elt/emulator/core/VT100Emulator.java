@@ -7,9 +7,14 @@
  *******************************************************************************/
 package com.google.eclipse.elt.emulator.core;
 
-import static com.google.eclipse.elt.emulator.model.Style.getDefaultStyle;
+import static com.google.eclipse.elt.emulator.core.EscapeSequenceParser.isGraphicCharacter;
+import static com.google.eclipse.elt.emulator.model.Style.*;
+import static com.google.eclipse.elt.emulator.model.StyleColor.indexed;
+import static com.google.eclipse.elt.emulator.model.StyleColor.rgb;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.List;
 
 import org.eclipse.jface.text.hyperlink.IHyperlink;
@@ -27,27 +32,12 @@ import com.google.eclipse.elt.emulator.provisional.api.*;
  * <p>
  */
 public class VT100Emulator implements ControlListener {
-  // This is a character processing state: Initial state.
-  private static final int ANSISTATE_INITIAL = 0;
+  // How long the changes made while a program draws a frame in synchronized output mode are held back at most, in case
+  // the program never ends the frame.
+  private static final long SYNCHRONIZED_OUTPUT_TIMEOUT = MILLISECONDS.toNanos(200);
 
-  // This is a character processing state: We've seen an escape character.
-  private static final int ANSISTATE_ESCAPE = 1;
-
-  // Character processing state: We've seen a '[' after an escape character. Expecting a parameter character or a
-  // command character next.
-  private static final int ANSISTATE_EXPECTING_PARAMETER_OR_COMMAND = 2;
-
-  // Character processing state: We've seen a ']' after an escape character. We are now expecting an operating system
-  // command that reprograms an intelligent terminal.
-  private static final int ANSISTATE_EXPECTING_OS_COMMAND = 3;
-
-  /**
-   * This field holds the current state of the Finite Terminal State Automaton (FSA) that recognizes ANSI escape
-   * sequences.
-   *
-   * @see #processNewText()
-   */
-  private int ansiState = ANSISTATE_INITIAL;
+  // Recognizes the ANSI escape sequences, and holds the parameters of the current one.
+  private final EscapeSequenceParser parser = new EscapeSequenceParser();
 
   // Holds a reference to the {@link TerminalControl} object that instantiates this class.
   private final ITerminalControlForText terminal;
@@ -61,30 +51,45 @@ public class VT100Emulator implements ControlListener {
   // Holds the saved column number of the cursor when processing the "ESC 7" and "ESC 8" command sequences.
   private int savedCursorColumn = 0;
 
-  // Holds an array of StringBuffer objects, each of which is one parameter from the current ANSI escape
-  // sequence. For example, when parsing the escape sequence "\e[20;10H", this array holds the strings "20" and "10".
-  private final StringBuffer[] parameters = new StringBuffer[16];
+  // Characters decoded from the input are scanned by index from this window. Only the characters between windowStart
+  // (inclusive) and windowEnd (exclusive) have not been processed yet.
+  private final char[] window = new char[8 * 1024];
+  private int windowStart;
+  private int windowEnd;
 
-  // Holds the OS-specific command found in an escape sequence of the form "\e]...\u0007".
-  private final StringBuffer ansiOsCommand = new StringBuffer(128);
+  private final InputDecoder decoder;
+  private boolean crAfterNewLine;
 
-  // Holds the index of the next unused element of the array stored in field 'parameters'.
-  private int nextAnsiParameter = 0;
+  // Sends the size of the terminal to the remote side once it stops changing, e.g. while the view is being resized.
+  private final ResizeCoordinator resizeCoordinator = new ResizeCoordinator();
 
-  private int nextChar = -1;
-  private Reader reader;
-  private boolean crAfterNewLine;
+  // Set by "\e[?2004h": the shell wants pasted text to be wrapped in "\e[200~" and "\e[201~".
+  private volatile boolean bracketedPasteMode;
+
+  // Set by "\e[?2026h": the program is drawing a frame, which should only be shown once "\e[?2026l" ends it. Only
+  // accessed by the thread processing the input.
+  private boolean synchronizedOutput;
+  private long synchronizedOutputStart;
+  // Set when processText stopped at the beginning or the end of a frame drawn in synchronized output mode.
+  private boolean frameBoundary;
+
+  // processText stops decoding new input once timeSlice nanoseconds have elapsed since sliceStart.
+  private long sliceStart;
+  private long timeSlice = Long.MAX_VALUE;
+  private boolean sliceExpired;
 
   /**
    * The constructor.
+   *
+   * @param data the terminal model to write to.
+   * @param terminal the terminal control.
+   * @param input the stream providing the bytes received from the remote side. Only the bytes that can be read without
+   * blocking are consumed on each call to {@link #processText()}.
    */
-  public VT100Emulator(ITerminalTextData data, ITerminalControlForText terminal, Reader reader) {
+  public VT100Emulator(ITerminalTextData data, ITerminalControlForText terminal, InputStream input) {
     super();
     this.terminal = terminal;
-    for (int i = 0; i < parameters.length; ++i) {
-      parameters[i] = new StringBuffer();
-    }
-    setInputStreamReader(reader);
+    decoder = new InputDecoder(input);
     if (TerminalPlugin.isOptionEnabled("com.google.eclipse.tm.terminal/debug/log/VT100Backend")) {
       text = new VT100BackendTraceDecorator(new VT100EmulatorBackend(data), System.out);
     } else {
@@ -93,28 +98,77 @@ public class VT100Emulator implements ControlListener {
   }
 
   /**
-   * Set the reader that this terminal gets its input from.
+   * Sets the charset used to decode the bytes received from the remote side. It is safe to change the charset while
+   * the terminal is running: bytes already received but not yet decoded (including incomplete multi-byte sequences) are
+   * kept and decoded with the new charset.
    *
-   * The reader can be changed while the Terminal is running, but a change of the reader likely loses some characters
-   * which have not yet been fully read. Changing the reader can be done in order to change the selected Encoding,
-   * though. This is typically done when the Terminal is constructed, i.e. before it really starts operation; or, when
-   * the user manually selects a different encoding and thus doesn't care about losing old characters.
-   *
-   * @param reader the new reader.
+   * @param charset the new charset.
    */
-  public void setInputStreamReader(Reader reader) {
-    this.reader = reader;
+  public void setCharset(Charset charset) {
+    decoder.setCharset(charset);
   }
 
+  /**
+   * Resizes the terminal. The remote side is told about the new size once the size stops changing.
+   *
+   * @param lines the new height, in lines.
+   * @param cols the new width, in columns.
+   */
   public void setDimensions(int lines, int cols) {
     text.setDimensions(lines, cols);
-    ITerminalConnector telnetConnection = getConnector();
-    if (telnetConnection != null) {
-      telnetConnection.setTerminalSize(text.getColumns(), text.getLines());
+    adjustTerminalDimensions();
+  }
+
+  /**
+   * Tells the remote side about the size of the terminal right away. Called once the terminal has connected.
+   */
+  void connected() {
+    resizeCoordinator.reset();
+    adjustTerminalDimensions();
+  }
+
+  /**
+   * Indicates whether the shell asked for pasted text to be bracketed (with {@code "\e[?2004h"}.)
+   *
+   * @return {@code true} if pasted text should be wrapped in {@code "\e[200~"} and {@code "\e[201~"}.
+   */
+  public boolean isBracketedPasteMode() {
+    return bracketedPasteMode;
+  }
+
+  /**
+   * Indicates whether the program is drawing a frame in synchronized output mode (DEC private mode 2026.) The changes
+   * made to the terminal meanwhile should not be shown until the frame is complete, unless the program takes too long
+   * to complete it.
+   *
+   * @return {@code true} if the changes made to the terminal should be held back.
+   */
+  public boolean isOutputSynchronized() {
+    return synchronizedOutputTimeLeft() > 0;
+  }
+
+  // Returns how long, in nanoseconds, before the changes made while drawing the current frame should be shown even if
+  // the frame is not complete. Returns 0 if not in synchronized output mode.
+  long synchronizedOutputTimeLeft() {
+    if (!synchronizedOutput) {
+      return 0;
     }
+    return Math.max(0, synchronizedOutputStart + SYNCHRONIZED_OUTPUT_TIMEOUT - System.nanoTime());
+  }
+
+  // Indicates whether some decoded input has not been processed yet, because processing stopped at a frame boundary.
+  boolean hasBufferedInput() {
+    return windowStart < windowEnd;
   }
 
-  public void dispose() {}
+  // Returns how many characters fit on the screen.
+  int screenSize() {
+    return text.getLines() * text.getColumns();
+  }
+
+  public void dispose() {
+    resizeCoordinator.reset();
+  }
 
   @Override public void controlMoved(ControlEvent event) {}
 
@@ -133,9 +187,29 @@ public class VT100Emulator implements ControlListener {
   }
 
   public void processText() {
+    do {
+      processText(Long.MAX_VALUE);
+    } while (frameBoundary);
+  }
+
+  /**
+   * Processes the input that can be read without blocking, but stops decoding new input once the given time has
+   * elapsed. Input that has not been processed is kept for the next call.
+   * <p>
+   * Processing also stops right after the beginning and the end of a frame drawn in synchronized output mode, so that
+   * the caller can hold back the changes made while the frame is drawn (see {@link #isOutputSynchronized()}.)
+   * </p>
+   *
+   * @param timeSliceNanos the maximum time to spend, in nanoseconds.
+   * @return {@code true} if processing stopped because the time slice elapsed, {@code false} if all the available input
+   *         was processed, or if processing stopped at a frame boundary.
+   */
+  public boolean processText(long timeSliceNanos) {
+    sliceStart = System.nanoTime();
+    timeSlice = timeSliceNanos;
+    sliceExpired = false;
+    frameBoundary = false;
     try {
-      // Find the width and height of the terminal, and resize it to display an integral number of lines and columns.
-      adjustTerminalDimensions();
       // Restore the caret offset, process and display the new text, then save
       // the caret offset. See the documentation for field caretOffset for
       // details.
@@ -148,6 +222,7 @@ public class VT100Emulator implements ControlListener {
     } catch (RuntimeException e) {
       Logger.logException(e);
     }
+    return sliceExpired;
   }
 
   /**
@@ -160,104 +235,109 @@ public class VT100Emulator implements ControlListener {
     // Scan the newly received text.
     while (hasNextChar()) {
       char character = getNextChar();
-      switch (ansiState) {
-      case ANSISTATE_INITIAL:
-        switch (character) {
-        case '\u0000':
-          break; // NUL character. Ignore it.
-        case '\u0007':
-          processBEL(); // BEL (Control-G)
-          break;
-        case '\b':
-          processBackspace(); // Backspace
-          break;
-        case '\t':
-          processTab(); // Tab.
-          break;
-        case '\n':
-          processNewline(); // Newline (Control-J)
-          if (crAfterNewLine) {
-            processCarriageReturn(); // Carriage Return (Control-M)
-          }
-          break;
-        case '\r':
-          processCarriageReturn(); // Carriage Return (Control-M)
-          break;
-        case '\u001b':
-          ansiState = ANSISTATE_ESCAPE; // Escape.
-          break;
-        default:
-          processNonControlCharacters(character);
-          break;
-        }
+      switch (parser.next(character)) {
+      case EscapeSequenceParser.PRINT:
+        processNonControlCharacters();
         break;
-      case ANSISTATE_ESCAPE:
-        // We've seen an escape character. Here, we process the character immediately following the escape.
-        switch (character) {
-        case '[':
-          ansiState = ANSISTATE_EXPECTING_PARAMETER_OR_COMMAND;
-          nextAnsiParameter = 0;
-          // Erase the parameter strings in preparation for optional parameter characters.
-          for (int i = 0; i < parameters.length; ++i) {
-            parameters[i].delete(0, parameters[i].length());
-          }
-          break;
-        case ']':
-          ansiState = ANSISTATE_EXPECTING_OS_COMMAND;
-          ansiOsCommand.delete(0, ansiOsCommand.length());
-          break;
-        case '7':
-          // Save cursor position and character attributes.
-          ansiState = ANSISTATE_INITIAL;
-          savedCursorLine = relativeCursorLine();
-          savedCursorColumn = getCursorColumn();
-          break;
-        case '8':
-          // Restore cursor and attributes to previously saved position.
-          ansiState = ANSISTATE_INITIAL;
-          moveCursor(savedCursorLine, savedCursorColumn);
-          break;
-        case 'c':
-          // Reset the terminal.
-          ansiState = ANSISTATE_INITIAL;
-          resetTerminal();
-          break;
-        default:
-          Logger.log("Unsupported escape sequence: escape '" + character + "'");
-          ansiState = ANSISTATE_INITIAL;
-          break;
-        }
+      case EscapeSequenceParser.EXECUTE:
+        processControlCharacter(character);
         break;
-      case ANSISTATE_EXPECTING_PARAMETER_OR_COMMAND:
-        // Parameters can appear after the '[' in an escape sequence, but they are optional.
-        if (character == '@' || (character >= 'A' && character <= 'Z') || (character >= 'a' && character <= 'z')) {
-          ansiState = ANSISTATE_INITIAL;
-          processAnsiCommandCharacter(character);
-        } else {
-          processAnsiParameterCharacter(character);
-        }
+      case EscapeSequenceParser.ESC_DISPATCH:
+        processEscapeCharacter(character);
         break;
-      case ANSISTATE_EXPECTING_OS_COMMAND:
-        // A BEL (\u0007) character marks the end of the OSC sequence.
-        if (character == '\u0007') {
-          ansiState = ANSISTATE_INITIAL;
-          processAnsiOsCommand();
-        } else {
-          ansiOsCommand.append(character);
-        }
+      case EscapeSequenceParser.CSI_DISPATCH:
+        processAnsiCommandCharacter(character);
+        break;
+      case EscapeSequenceParser.OSC_DISPATCH:
+        processAnsiOsCommand();
         break;
       default:
-        // This should never happen! If it does happen, it means there is a bug in the FSA. For robustness, we return to
-        // the initial state.
-        Logger.log("INVALID ANSI FSA STATE: " + ansiState);
-        ansiState = ANSISTATE_INITIAL;
         break;
       }
+      if (frameBoundary) {
+        // Stop right there, but have the input that follows ready for the next call.
+        hasNextChar();
+        return;
+      }
+    }
+  }
+
+  // Executes a C0 control character.
+  private void processControlCharacter(char character) {
+    switch (character) {
+    case '\u0007':
+      processBEL(); // BEL (Control-G)
+      break;
+    case '\b':
+      processBackspace(); // Backspace
+      break;
+    case '\t':
+      processTab(); // Tab.
+      break;
+    case '\n':
+    case '\u000b':
+    case '\f':
+      processNewline(); // Newline (Control-J). Vertical tab and form feed are treated the same way.
+      if (crAfterNewLine) {
+        processCarriageReturn(); // Carriage Return (Control-M)
+      }
+      break;
+    case '\r':
+      processCarriageReturn(); // Carriage Return (Control-M)
+      break;
+    default:
+      break; // NUL and other control characters are ignored.
+    }
+  }
+
+  // Processes the final character of an escape sequence that is not a control sequence or an OS command.
+  private void processEscapeCharacter(char character) {
+    if (parser.getIntermediateCount() > 0) {
+      Logger.log("Unsupported escape sequence: escape '" + parser.getIntermediate() + character + "'");
+      return;
+    }
+    switch (character) {
+    case '7':
+      // Save cursor position and character attributes.
+      savedCursorLine = relativeCursorLine();
+      savedCursorColumn = getCursorColumn();
+      break;
+    case '8':
+      // Restore cursor and attributes to previously saved position.
+      moveCursor(savedCursorLine, savedCursorColumn);
+      break;
+    case 'c':
+      // Reset the terminal.
+      resetTerminal();
+      break;
+    case 'D':
+      // Index (IND).
+      processNewline();
+      break;
+    case 'E':
+      // Next line (NEL).
+      processNewline();
+      processCarriageReturn();
+      break;
+    case 'M':
+      // Reverse index (RI).
+      text.reverseLineFeed();
+      break;
+    case '\\':
+      // String terminator, which ends an OS command.
+      break;
+    default:
+      Logger.log("Unsupported escape sequence: escape '" + character + "'");
+      break;
     }
   }
 
   private void resetTerminal() {
+    bracketedPasteMode = false;
+    setSynchronizedOutput(false);
+    text.setAlternateScreen(false);
     text.eraseAll();
+    text.setScrollingRegion(0, text.getLines() - 1);
     text.setCursor(0, 0);
     text.setStyle(null);
   }
@@ -265,17 +345,22 @@ public class VT100Emulator implements ControlListener {
   // This method is called when we have parsed an OS Command escape sequence. The only one we support is
   // "\e]0;...\u0007", which sets the terminal title.
   private void processAnsiOsCommand() {
-    if (ansiOsCommand.charAt(0) != '0' || ansiOsCommand.charAt(1) != ';') {
-      Logger.log("Ignoring unsupported ANSI OSC sequence: '" + ansiOsCommand + "'");
+    CharSequence command = parser.getOscString();
+    if (command.length() < 2 || command.charAt(0) != '0' || command.charAt(1) != ';') {
+      Logger.log("Ignoring unsupported ANSI OSC sequence: '" + command + "'");
       return;
     }
-    terminal.setTerminalTitle(ansiOsCommand.substring(2));
+    terminal.setTerminalTitle(command.subSequence(2, command.length()).toString());
   }
 
   // Dispatches control to various processing methods based on the command character found in the most recently received
   // ANSI escape sequence. This method only handles command characters that follow the ANSI standard Control Sequence
   // Introducer (CSI), which is "\e[...", where "..." is an optional ';'-separated sequence of numeric parameters.
   private void processAnsiCommandCharacter(char ansiCommandCharacter) {
+    if (parser.getIntermediateCount() > 0 || (parser.getPrivateMarker() != 0 && !isModeCommand(ansiCommandCharacter))) {
+      Logger.log("Ignoring unsupported ANSI control sequence with final character: '" + ansiCommandCharacter + "'");
+      return;
+    }
     // If the width or height of the terminal is ridiculously small (one line or column or less), don't even try to
     // process the escape sequence. This avoids throwing an exception (SPR 107450). The display will be messed up, but
     // what did you user expect by making the terminal so small?
@@ -332,6 +417,14 @@ public class VT100Emulator implements ControlListener {
       // Delete line(s).
       processAnsiCommand_M();
       break;
+    case 'h':
+      // Set mode.
+      processAnsiCommand_h();
+      break;
+    case 'l':
+      // Reset mode.
+      processAnsiCommand_l();
+      break;
     case 'm':
       // Set Graphics Rendition (SGR).
       processAnsiCommand_m();
@@ -344,13 +437,17 @@ public class VT100Emulator implements ControlListener {
       // Delete character(s).
       processAnsiCommand_P();
       break;
+    case 'r':
+      // Set top and bottom margins (DECSTBM).
+      processAnsiCommand_r();
+      break;
     case 'S':
       // Scroll up.
-      // Emacs, vi, and GNU readline don't seem to use this command, so we ignore it for now.
+      processAnsiCommand_S();
       break;
     case 'T':
       // Scroll down.
-      // Emacs, vi, and GNU readline don't seem to use this command, so we ignore it for now.
+      processAnsiCommand_T();
       break;
     case 'X':
       // Erase character.
@@ -367,6 +464,10 @@ public class VT100Emulator implements ControlListener {
     }
   }
 
+  private static boolean isModeCommand(char ansiCommandCharacter) {
+    return ansiCommandCharacter == 'h' || ansiCommandCharacter == 'l';
+  }
+
   // Makes room for N characters on the current line at the cursor position. Text under the cursor moves right without
   // wrapping at the end of the line.
   private void processAnsiCommand_atsign() {
@@ -410,7 +511,7 @@ public class VT100Emulator implements ControlListener {
   // Moves the cursor within the current line to the column specified by the ANSI parameter (default is column 1).
   private void processAnsiCommand_G() {
     int targetColumn = 1;
-    if (parameters[0].length() > 0) {
+    if (parser.hasParameter(0)) {
       targetColumn = getAnsiParameter(0) - 1;
     }
     moveCursor(relativeCursorLine(), targetColumn);
@@ -424,12 +525,7 @@ public class VT100Emulator implements ControlListener {
 
   // Deletes some (or all) of the text on the screen without moving the cursor.
   private void processAnsiCommand_J() {
-    int parameter;
-    if (parameters[0].length() == 0) {
-      parameter = 0;
-    } else {
-      parameter = getAnsiParameter(0);
-    }
+    int parameter = parser.getParameter(0, 0);
     switch (parameter) {
     case 0:
       text.eraseToEndOfScreen();
@@ -482,108 +578,236 @@ public class VT100Emulator implements ControlListener {
     text.deleteLines(getAnsiParameter(0));
   }
 
+  // Sets one or more modes (DECSET). Only the DEC private modes, i.e. "\e[?...h", are supported.
+  private void processAnsiCommand_h() {
+    setPrivateModes(true);
+  }
+
+  // Resets one or more modes (DECRST). Only the DEC private modes, i.e. "\e[?...l", are supported.
+  private void processAnsiCommand_l() {
+    setPrivateModes(false);
+  }
+
+  private void setPrivateModes(boolean enabled) {
+    if (parser.getPrivateMarker() != '?') {
+      Logger.log("Ignoring unsupported ANSI mode: '" + parser.getParameter(0, 0) + "'");
+      return;
+    }
+    for (int i = 0; i < parser.getParameterCount(); i++) {
+      if (!parser.hasParameter(i)) {
+        continue;
+      }
+      int mode = parser.getParameter(i, 0);
+      switch (mode) {
+      case 47:
+      case 1047:
+      case 1049:
+        // Alternate screen.
+        setAlternateScreen(mode, enabled);
+        break;
+      case 2004:
+        // Bracketed paste.
+        bracketedPasteMode = enabled;
+        break;
+      case 2026:
+        // Synchronized output.
+        setSynchronizedOutput(enabled);
+        break;
+      default:
+        Logger.log("Ignoring unsupported DEC private mode: " + mode);
+        break;
+      }
+    }
+  }
+
+  // Switches to or from the alternate screen. Mode 1049 clears the alternate screen when switching to it, and mode 1047
+  // when switching from it. The backend keeps the cursor position and style of the main screen in any case.
+  private void setAlternateScreen(int mode, boolean enabled) {
+    if (enabled == text.isAlternateScreen()) {
+      return;
+    }
+    if (!enabled && mode == 1047) {
+      text.eraseAll();
+    }
+    text.setAlternateScreen(enabled);
+    if (enabled && mode == 1049) {
+      text.eraseAll();
+    }
+  }
+
+  // Starts or ends a frame drawn in synchronized output mode. A frame started again while being drawn keeps its start
+  // time, so that a program that never ends its frames cannot hold back the screen for longer than the timeout.
+  private void setSynchronizedOutput(boolean enabled) {
+    if (enabled == synchronizedOutput) {
+      return;
+    }
+    synchronizedOutput = enabled;
+    if (enabled) {
+      synchronizedOutputStart = System.nanoTime();
+    }
+    frameBoundary = true;
+  }
+
   // Sets a new graphics rendition mode, such as foreground/background color, bold/normal text, and reverse video.
   private void processAnsiCommand_m() {
-    if (parameters[0].length() == 0) {
-      // This a special case: when no ANSI parameter is specified, act like a single parameter equal to 0 was specified.
-      parameters[0].append('0');
-    }
     Style style = text.getStyle();
-    if (style == null) {
-      style = getDefaultStyle();
-    }
-    // There are a non-zero number of ANSI parameters. Process each one in order.
-    int parameterCount = parameters.length;
-    int parameterIndex = 0;
-    while (parameterIndex < parameterCount && parameters[parameterIndex].length() > 0) {
-      int parameter = getAnsiParameter(parameterIndex);
+    long value = (style == null) ? 0 : style.getValue();
+    // When no ANSI parameter is specified, act like a single parameter equal to 0 was specified. Omitted parameters
+    // are 0 as well.
+    int parameterCount = Math.max(1, parser.getParameterCount());
+    for (int parameterIndex = 0; parameterIndex < parameterCount; parameterIndex++) {
+      if (parser.isSubParameter(parameterIndex)) {
+        // Sub-parameters of an unsupported attribute (e.g. the underline style in "\e[4:3m").
+        continue;
+      }
+      int parameter = parser.getParameter(parameterIndex, 0);
       switch (parameter) {
       case 0:
         // Reset all graphics modes.
-        style = null;
+        value = 0;
         break;
       case 1:
-        style = style.setBold(true);
+        value = withBold(value, true);
         break;
       case 4:
-        style = style.setUnderline(true);
+        value = withUnderline(value, true);
         break;
       case 5:
-        style = style.setBlink(true);
+        value = withBlink(value, true);
         break;
       case 7:
-        style = style.setReverse(true);
+        value = withReverse(value, true);
         break;
       case 10: // Set primary font. Ignored.
         break;
       case 21:
       case 22:
-        style = style.setBold(false);
+        value = withBold(value, false);
         break;
       case 24:
-        style = style.setUnderline(false);
+        value = withUnderline(value, false);
         break;
       case 25:
-        style = style.setBlink(false);
+        value = withBlink(value, false);
         break;
       case 27:
-        style = style.setReverse(false);
+        value = withReverse(value, false);
         break;
       case 30:
-        style = style.setForground("BLACK");
-        break;
       case 31:
-        style = style.setForground("RED");
-        break;
       case 32:
-        style = style.setForground("GREEN");
-        break;
       case 33:
-        style = style.setForground("YELLOW");
-        break;
       case 34:
-        style = style.setForground("BLUE");
-        break;
       case 35:
-        style = style.setForground("MAGENTA");
-        break;
       case 36:
-        style = style.setForground("CYAN");
-        break;
       case 37:
-        style = style.setForground("WHITE_FOREGROUND");
+        value = withForeground(value, indexed(parameter - 30));
         break;
-      case 40:
-        style = style.setBackground("BLACK");
+      case 38:
+      case 48:
+        // A color of the 256-color palette (e.g. "\e[38;5;208m") or a 24-bit color (e.g. "\e[48;2;255;128;0m").
+        int lastParameterIndex = lastExtendedColorParameter(parameterIndex);
+        int color = extendedColor(parameterIndex, lastParameterIndex);
+        if (color != -1) {
+          value = (parameter == 38) ? withForeground(value, color) : withBackground(value, color);
+        }
+        parameterIndex = lastParameterIndex;
         break;
-      case 41:
-        style = style.setBackground("RED");
+      case 39:
+        value = withForeground(value, StyleColor.DEFAULT);
         break;
+      case 40:
+      case 41:
       case 42:
-        style = style.setBackground("GREEN");
-        break;
       case 43:
-        style = style.setBackground("YELLOW");
-        break;
       case 44:
-        style = style.setBackground("BLUE");
-        break;
       case 45:
-        style = style.setBackground("MAGENTA");
-        break;
       case 46:
-        style = style.setBackground("CYAN");
-        break;
       case 47:
-        style = style.setBackground("WHITE");
+        value = withBackground(value, indexed(parameter - 40));
+        break;
+      case 49:
+        value = withBackground(value, StyleColor.DEFAULT);
+        break;
+      case 90:
+      case 91:
+      case 92:
+      case 93:
+      case 94:
+      case 95:
+      case 96:
+      case 97:
+        // Bright colors.
+        value = withForeground(value, indexed(parameter - 90 + 8));
+        break;
+      case 100:
+      case 101:
+      case 102:
+      case 103:
+      case 104:
+      case 105:
+      case 106:
+      case 107:
+        value = withBackground(value, indexed(parameter - 100 + 8));
         break;
       default:
         Logger.log("Unsupported graphics rendition parameter: " + parameter);
         break;
       }
-      ++parameterIndex;
     }
-    text.setStyle(style);
+    text.setStyle((value == 0) ? null : Style.getStyle(value));
+  }
+
+  // Returns the index of the last parameter of the extended color that starts at the given index. The color is given
+  // either by sub-parameters ("38:5:n", "38:2:r:g:b" or "38:2:id:r:g:b") or, more commonly, by the parameters that
+  // follow ("38;5;n" or "38;2;r;g;b".)
+  private int lastExtendedColorParameter(int index) {
+    int last = index;
+    if (parser.isSubParameter(index + 1)) {
+      while (parser.isSubParameter(last + 1)) {
+        last++;
+      }
+      return last;
+    }
+    switch (parser.getParameter(index + 1, 0)) {
+    case 5:
+      last = index + 2;
+      break;
+    case 2:
+      last = index + 4;
+      break;
+    default:
+      last = index + 1;
+      break;
+    }
+    return Math.min(last, parser.getParameterCount() - 1);
+  }
+
+  // Returns the extended color given by the parameters between the given indices, or -1 if they are not valid.
+  private int extendedColor(int index, int lastIndex) {
+    switch (parser.getParameter(index + 1, 0)) {
+    case 5:
+      int colorIndex = parser.getParameter(index + 2, -1);
+      if (lastIndex < index + 2 || colorIndex < 0 || colorIndex > 255) {
+        return -1;
+      }
+      return indexed(colorIndex);
+    case 2:
+      // The color space identifier, only present in the sub-parameter form, is ignored.
+      int redIndex = (lastIndex - index >= 5) ? index + 3 : index + 2;
+      if (lastIndex < redIndex + 2) {
+        return -1;
+      }
+      int red = parser.getParameter(redIndex, 0);
+      int green = parser.getParameter(redIndex + 1, 0);
+      int blue = parser.getParameter(redIndex + 2, 0);
+      if (red > 255 || green > 255 || blue > 255) {
+        return -1;
+      }
+      return rgb(red, green, blue);
+    default:
+      return -1;
+    }
   }
 
   // Responds to an ANSI Device Status Report (DSR) command from the remote endpoint requesting the cursor position.
@@ -612,66 +836,64 @@ public class VT100Emulator implements ControlListener {
     text.deleteCharacters(getAnsiParameter(0));
   }
 
-  // Returns one of the numeric ANSI parameters received in the most recent escape sequence.
-  private int getAnsiParameter(int parameterIndex) {
-    if (parameterIndex < 0 || parameterIndex >= parameters.length) {
-      // This should never happen.
-      return -1;
-    }
-    String parameter = parameters[parameterIndex].toString();
-    if (parameter.length() == 0) {
-      return 1;
+  // Sets the scrolling region (DECSTBM). The 1-based margins default to the top and bottom lines of the screen, and so
+  // does a margin of 0.
+  private void processAnsiCommand_r() {
+    int top = Math.max(1, parser.getParameter(0, 1));
+    int bottom = parser.getParameter(1, 0);
+    if (bottom == 0) {
+      bottom = text.getLines();
     }
-    int parameterValue = 1;
-    // Don't trust the remote endpoint to send well formed numeric parameters.
-    try {
-      parameterValue = Integer.parseInt(parameter);
-    } catch (NumberFormatException ex) {
-      parameterValue = 1;
-    }
-    return parameterValue;
+    text.setScrollingRegion(top - 1, bottom - 1);
   }
 
-  // Processes a single parameter character in an ANSI escape sequence. Parameters are the (optional) characters
-  // between the leading "\e[" and the command character in an escape sequence (e.g., in the escape sequence
-  // "\e[20;10H", the parameter characters are "20;10"). Parameters are integers separated by one or more ';'s.
-  private void processAnsiParameterCharacter(char ch) {
-    if (ch == ';') {
-      ++nextAnsiParameter;
-    } else {
-      if (nextAnsiParameter < parameters.length) {
-        parameters[nextAnsiParameter].append(ch);
-      }
-    }
+  // Scrolls the scrolling region up (SU).
+  private void processAnsiCommand_S() {
+    text.scrollUp(getAnsiParameter(0));
+  }
+
+  // Scrolls the scrolling region down (SD).
+  private void processAnsiCommand_T() {
+    text.scrollDown(getAnsiParameter(0));
+  }
+
+  // Returns one of the numeric ANSI parameters received in the most recent escape sequence.
+  // Omitted parameters default to 1.
+  private int getAnsiParameter(int parameterIndex) {
+    return parser.getParameter(parameterIndex, 1);
   }
 
   // Processes a contiguous sequence of non-control characters. This is a performance optimization, so that we don't
   // have to insert or append each non-control character individually to the StyledText widget. A non-control character
-  // is any character that passes the condition in the below while loop.
-  private void processNonControlCharacters(char character) throws IOException {
-    StringBuilder buffer = new StringBuilder();
-    buffer.append(character);
-    // Identify a contiguous sequence of non-control characters, starting at firstNonControlCharacterIndex in newText.
-    while (hasNextChar()) {
-      character = getNextChar();
-      if (character == '\u0000' || character == '\b' || character == '\t' || character == '\u0007' || character == '\n'
-          || character == '\r' || character == '\u001b') {
-        pushBackChar(character);
-        break;
+  // is any character that passes the condition in EscapeSequenceParser.isGraphicCharacter. The run is scanned directly
+  // in the window, and handed to the backend from there. A run that continues past the end of the window is handed over
+  // one window at a time.
+  private void processNonControlCharacters() throws IOException {
+    // The first character has already been consumed by getNextChar: step back to include it in the run.
+    int runStart = windowStart - 1;
+    while (true) {
+      int runEnd = windowStart;
+      while (runEnd < windowEnd && isGraphicCharacter(window[runEnd])) {
+        runEnd++;
+      }
+      windowStart = runEnd;
+      if (runEnd > runStart) {
+        displayNewText(window, runStart, runEnd - runStart);
+      }
+      // A control character stays in the window for the next iteration of processNewText.
+      if (runEnd < windowEnd || !fillWindow()) {
+        return;
       }
-      buffer.append(character);
+      runStart = windowStart;
     }
-    // Now insert the sequence of non-control characters in the StyledText widget
-    // at the location of the cursor.
-    displayNewText(buffer.toString());
   }
 
   // Displays a subset of the newly-received text in the Terminal view, wrapping text at the right edge of the screen
   // and overwriting text when the cursor is not at the very end of the screen's text.
   // There are never any ANSI control characters or escape sequences in the text being displayed by this method (this
   // includes newlines, carriage returns, and tabs).
-  private void displayNewText(String buffer) {
-    text.appendString(buffer);
+  private void displayNewText(char[] buffer, int offset, int length) {
+    text.appendChars(buffer, offset, length);
   }
 
   // Processes a BEL (Control-G) character.
@@ -711,25 +933,10 @@ public class VT100Emulator implements ControlListener {
     text.setCursorColumn(0);
   }
 
-  // Computes the width of the terminal in columns and its height in lines, then adjusts the width and height of the
-  // view's StyledText widget so that it displays an integral number of lines and columns of text. The adjustment is
-  // always to shrink the widget vertically or horizontally, because if the control were to grow, it would be clipped by
-  // the edges of the view window (i.e., the view window does not become larger to accommodate its contents becoming
-  // larger).
-  //
-  // This method must be called immediately before each time text is written to the terminal so that we can properly
-  // line wrap text. Because it is called so frequently, it must be fast when there is no resizing to be done.
+  // Tells the remote side about the width of the terminal in columns and its height in lines. The size is only sent
+  // once it has settled, and only if it has changed, so this method is cheap to call.
   private void adjustTerminalDimensions() {
-    // Compute how many pixels we need to shrink the StyledText control vertically to make it display an integral number
-    // of lines of text.
-    //
-    // TODO
-    // if(text.getColumns()!=80 && text.getLines()!=80) text.setDimensions(24, 80);
-    ITerminalConnector connector = getConnector();
-    // TODO MSA: send only if dimensions have really changed!
-    if (connector != null) {
-      connector.setTerminalSize(text.getColumns(), text.getLines());
-    }
+    resizeCoordinator.sizeChanged(getConnector(), text.getColumns(), text.getLines());
   }
 
   private ITerminalConnector getConnector() {
@@ -781,40 +988,31 @@ public class VT100Emulator implements ControlListener {
    * essentially makes it ready for new input.
    */
   public void resetState() {
-    ansiState = ANSISTATE_INITIAL;
+    parser.reset();
+    bracketedPasteMode = false;
+    synchronizedOutput = false;
     text.setStyle(null);
   }
 
-  private char getNextChar() throws IOException {
-    int c = -1;
-    if (nextChar != -1) {
-      c = nextChar;
-      nextChar = -1;
-    } else {
-      c = reader.read();
-    }
-    // TODO: better end of file handling
-    if (c == -1) {
-      c = 0;
-    }
-    return (char) c;
+  private char getNextChar() {
+    return window[windowStart++];
   }
 
   private boolean hasNextChar() throws IOException {
-    if (nextChar >= 0) {
-      return true;
-    }
-    return reader.ready();
+    return windowStart < windowEnd || fillWindow();
   }
 
-  /**
-   * Put back one character to the stream. This method can push back exactly one character. The character is the next
-   * character returned by {@link #getNextChar}.
-   *
-   * @param c the character to be pushed back.
-   */
-  private void pushBackChar(char c) {
-    nextChar = c;
+  // Decodes the next chunk of input into the window, discarding the characters already processed. Only reads what can be
+  // read without blocking, and nothing once the current time slice has elapsed. Returns true if at least one new
+  // character is available.
+  private boolean fillWindow() throws IOException {
+    if (System.nanoTime() - sliceStart >= timeSlice) {
+      sliceExpired = true;
+      return false;
+    }
+    windowStart = 0;
+    windowEnd = decoder.decode(window, 0, window.length);
+    return windowEnd > 0;
   }
 
   private int getCursorColumn() {
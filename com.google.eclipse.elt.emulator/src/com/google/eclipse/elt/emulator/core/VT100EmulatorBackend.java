@@ -8,17 +8,42 @@
 package com.google.eclipse.elt.emulator.core;
 
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.hyperlink.IHyperlink;
 
 import com.google.eclipse.elt.emulator.hyperlink.*;
+import com.google.eclipse.elt.emulator.internal.model.*;
 import com.google.eclipse.elt.emulator.model.*;
 
 public class VT100EmulatorBackend implements IVT100EmulatorBackend {
+  // Rewraps the lines above the screen after the width of the terminal changed.
+  private static final ThreadPoolExecutor reflowExecutor;
+
+  static {
+    reflowExecutor = new ThreadPoolExecutor(1, 1, 30, SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Terminal reflow " + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+        });
+    reflowExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  // How many lines are read from the terminal each time the lock is taken while rewrapping the lines above the screen.
+  private static final int REFLOW_BATCH_SIZE = 256;
+
   // This field holds the number of the column in which the cursor is logically positioned. The left-most column on the
   // screen is column 0, and column numbers increase to the right. The maximum value of this field is
   // widthInColumns - 1. We track the cursor column using this field to avoid having to recompute it repeatly using
@@ -40,11 +65,38 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
   private Style style;
   private int lines;
   private int columns;
+  // The margins of the scrolling region, as screen lines. A bottom margin of -1 means that the region spans the whole
+  // screen, in which case lines scrolled off its top are kept above the screen.
+  private int scrollingRegionTop;
+  private int scrollingRegionBottom = -1;
 
   private final ITerminalTextData terminal;
 
+  // The screen that is not shown: the alternate screen while the main one is shown, created the first time it is
+  // needed, and the main screen while the alternate one is shown. Switching screens swaps it with the one shown.
+  private ITerminalTextData hiddenScreen;
+  private boolean alternateScreen;
+  // The state of the main screen while the alternate one is shown.
+  private int mainScreenLines;
+  private int mainScreenColumns;
+  private int mainScreenCursorLine;
+  private int mainScreenCursorColumn;
+  private Style mainScreenStyle;
+
   private final IHyperlinkFactory httpHyperlinkFactory = new HttpHyperlinkFactory();
-  private final Map<Integer, List<IHyperlink>> hyperlinks = new HashMap<Integer, List<IHyperlink>>();
+  private Map<Integer, List<IHyperlink>> hyperlinks = new HashMap<Integer, List<IHyperlink>>();
+  // The hyperlinks of the screen that is not shown.
+  private Map<Integer, List<IHyperlink>> hiddenHyperlinks = new HashMap<Integer, List<IHyperlink>>();
+  // The characters being appended, as seen by the hyperlink factory.
+  private final CharArraySlice appendedChars = new CharArraySlice();
+
+  // Changed every time the lines above the screen may have moved in a way a background reflow cannot follow, which
+  // makes the reflow in progress, if any, give up.
+  private int reflowGeneration;
+  // The number of lines dropped from the top of the terminal, to make room for new lines.
+  private long linesScrolledOff;
+  // The reflow of the lines above the screen that has not finished yet, if any.
+  private ScrollbackReflow pendingReflow;
 
   public VT100EmulatorBackend(ITerminalTextData terminal) {
     this.terminal = terminal;
@@ -52,12 +104,15 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
 
   @Override public void clearAll() {
     synchronized (terminal) {
+      reflowGeneration++;
+      pendingReflow = null;
       // clear the history
       int n = terminal.getHeight();
       for (int line = 0; line < n; line++) {
         terminal.cleanLine(line);
       }
       terminal.setDimensions(lines, terminal.getWidth());
+      resetScrollingRegion();
       setStyle(null);
       setCursor(0, 0);
     }
@@ -68,30 +123,119 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
       if (lines == this.lines && columns == this.columns) {
         return; // nothing to do
       }
-      // relative cursor line
-      int cursorLine = getCursorLine();
-      int cursorColumn = getCursorColumn();
-      int height = terminal.getHeight();
-      // absolute cursor line
-      int absoluteCursorLine = cursorLine + height - this.lines;
-      int newLines = Math.max(lines, height);
-      if (lines < this.lines) {
-        if (height == this.lines) {
-          // if the terminal has no history, then resize by setting the size to the new size.
-          // TODO We are assuming that cursor line points at end of text.
-          newLines = Math.max(lines, cursorLine + 1);
-        }
+      resize(lines, columns);
+    }
+  }
+
+  // MUST be called from a synchronized block!
+  private void resize(int lines, int columns) {
+    reflowGeneration++;
+    resetScrollingRegion();
+    int oldColumns = this.columns;
+    // relative cursor line
+    int cursorLine = getCursorLine();
+    int cursorColumn = getCursorColumn();
+    int height = terminal.getHeight();
+    // absolute cursor line
+    int absoluteCursorLine = cursorLine + height - this.lines;
+    int newLines = Math.max(lines, height);
+    if (alternateScreen) {
+      // The alternate screen has no lines above it.
+      newLines = lines;
+    } else if (lines < this.lines) {
+      if (height == this.lines) {
+        // if the terminal has no history, then resize by setting the size to the new size.
+        // TODO We are assuming that cursor line points at end of text.
+        newLines = Math.max(lines, cursorLine + 1);
+      }
+    }
+    this.lines = lines;
+    this.columns = columns;
+    // Make the terminal at least as high as we need lines.
+    terminal.setDimensions(newLines, this.columns);
+    // Compute relative cursor line.
+    cursorLine = absoluteCursorLine - (newLines - this.lines);
+    setCursor(cursorLine, cursorColumn);
+    // A reflow interrupted by a change of height is started over, since lines may have moved onto the screen.
+    // The alternate screen is not rewrapped: programs that use it draw it again when its size changes.
+    if (!alternateScreen && ((columns != oldColumns && oldColumns > 0) || pendingReflow != null)) {
+      reflow(absoluteCursorLine, cursorColumn);
+    }
+  }
+
+  // Rewraps the lines of the screen to the current width right away, and the lines above the screen in the
+  // background. The screen keeps its height: lines that no longer fit on it move above it, and lines freed at its
+  // bottom stay empty.
+  //
+  // MUST be called from a synchronized block!
+  private void reflow(int absoluteCursorLine, int cursorColumn) {
+    // The columns of a hyperlink change when its line is rewrapped.
+    hyperlinks.clear();
+    int height = terminal.getHeight();
+    int screenStart = height - lines;
+    // Start with the first line of the text the top of the screen belongs to, looking back at most one screen.
+    int start = screenStart;
+    int limit = Math.max(0, screenStart - lines);
+    while (start > limit && terminal.getWrapWidth(start - 1) > 0) {
+      start--;
+    }
+    // The empty lines below the cursor are not rewrapped, so that they can absorb lines added by the rewrapping.
+    int end = height;
+    while (end > start && end - 1 > absoluteCursorLine && isBlank(end - 1)) {
+      end--;
+    }
+    TextReflow reflow = new TextReflow(columns);
+    for (int line = start; line < end; line++) {
+      char[] chars = terminal.getChars(line);
+      Style[] styles = terminal.getStyles(line);
+      int wrapWidth = terminal.getWrapWidth(line);
+      if (line == absoluteCursorLine) {
+        reflow.addCursorLine(chars, styles, wrapWidth, cursorColumn);
+      } else {
+        reflow.addLine(chars, styles, wrapWidth);
       }
-      this.lines = lines;
-      this.columns = columns;
-      // Make the terminal at least as high as we need lines.
-      terminal.setDimensions(newLines, this.columns);
-      // Compute relative cursor line.
-      cursorLine = absoluteCursorLine - (newLines - this.lines);
-      setCursor(cursorLine, cursorColumn);
+    }
+    reflow.finish();
+    int lineCount = Math.max(reflow.getLineCount(), height - start);
+    // Drop the oldest lines if the rewrapped lines do not fit in the terminal anymore.
+    int excess = start + lineCount - terminal.getMaxHeight();
+    int skipped = 0;
+    if (excess > 0) {
+      int dropped = Math.min(excess, start);
+      terminal.replaceLines(0, dropped, new TerminalTextDataStore());
+      linesScrolledOff += dropped;
+      start -= dropped;
+      skipped = excess - dropped;
+    }
+    terminal.replaceLines(start, height - start, reflow.toTextData(skipped, lineCount - skipped));
+    int newHeight = terminal.getHeight();
+    int newCursorLine = (reflow.getCursorLine() >= 0) ? start + reflow.getCursorLine() - skipped : newHeight - 1;
+    setCursor(newCursorLine - (newHeight - lines), reflow.getCursorColumn());
+    pendingReflow = null;
+    if (start > 0) {
+      pendingReflow = new ScrollbackReflow(start);
+      reflowExecutor.execute(pendingReflow);
     }
   }
 
+  // MUST be called from a synchronized block!
+  private boolean isBlank(int line) {
+    if (terminal.getWrapWidth(line) > 0) {
+      return false;
+    }
+    char[] chars = terminal.getChars(line);
+    if (chars == null) {
+      return true;
+    }
+    Style[] styles = terminal.getStyles(line);
+    for (int i = 0; i < chars.length; i++) {
+      if (chars[i] != '\000' || styles[i] != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   int toAbsoluteLine(int line) {
     synchronized (terminal) {
       return terminal.getHeight() - this.lines + line;
@@ -170,9 +314,7 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
         return;
       }
       Assert.isTrue(lineCount > 0);
-      int line = toAbsoluteLine(cursorLine);
-      int nLines = terminal.getHeight() - line;
-      terminal.scroll(line, nLines, lineCount);
+      scrollLines(cursorLine, bottomMargin(), lineCount);
     }
   }
 
@@ -197,14 +339,137 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
         return;
       }
       Assert.isTrue(lineCount > 0);
-      int line = toAbsoluteLine(cursorLine);
-      int currentLineCount = terminal.getHeight() - line;
-      terminal.scroll(line, currentLineCount, -lineCount);
+      scrollLines(cursorLine, bottomMargin(), -lineCount);
     }
   }
 
+  // MUST be called from a synchronized block!
   private boolean isCursorInScrollingRegion() {
-    return true;
+    return cursorLine >= scrollingRegionTop && cursorLine <= bottomMargin();
+  }
+
+  @Override public void setScrollingRegion(int top, int bottom) {
+    synchronized (terminal) {
+      top = Math.max(0, top);
+      bottom = Math.min(lines - 1, bottom);
+      if (top >= bottom) {
+        return;
+      }
+      if (top == 0 && bottom == lines - 1) {
+        resetScrollingRegion();
+      } else {
+        scrollingRegionTop = top;
+        scrollingRegionBottom = bottom;
+      }
+      setCursor(0, 0);
+    }
+  }
+
+  @Override public void scrollUp(int lineCount) {
+    synchronized (terminal) {
+      if (lineCount > 0) {
+        scrollLines(scrollingRegionTop, bottomMargin(), -lineCount);
+      }
+    }
+  }
+
+  @Override public void scrollDown(int lineCount) {
+    synchronized (terminal) {
+      if (lineCount > 0) {
+        scrollLines(scrollingRegionTop, bottomMargin(), lineCount);
+      }
+    }
+  }
+
+  @Override public void reverseLineFeed() {
+    synchronized (terminal) {
+      if (cursorLine == scrollingRegionTop) {
+        scrollLines(scrollingRegionTop, bottomMargin(), 1);
+      } else if (cursorLine > 0) {
+        setCursorLine(cursorLine - 1);
+      }
+    }
+  }
+
+  @Override public void setAlternateScreen(boolean alternate) {
+    synchronized (terminal) {
+      if (alternate == alternateScreen) {
+        return;
+      }
+      if (alternate) {
+        mainScreenLines = lines;
+        mainScreenColumns = columns;
+        mainScreenCursorLine = cursorLine;
+        mainScreenCursorColumn = cursorColumn;
+        mainScreenStyle = style;
+        // A reflow of the lines above the main screen gives up, and starts over when the main screen is shown again.
+        reflowGeneration++;
+        if (hiddenScreen == null || hiddenScreen.getHeight() != lines || hiddenScreen.getWidth() != columns) {
+          hiddenScreen = new TerminalTextDataFastScroll(lines);
+          hiddenScreen.setDimensions(lines, columns);
+          hiddenHyperlinks.clear();
+        }
+        swapScreens();
+        alternateScreen = true;
+        setCursor(mainScreenCursorLine, mainScreenCursorColumn);
+      } else {
+        swapScreens();
+        alternateScreen = false;
+        int lines = this.lines;
+        int columns = this.columns;
+        this.lines = mainScreenLines;
+        this.columns = mainScreenColumns;
+        setCursor(mainScreenCursorLine, mainScreenCursorColumn);
+        setStyle(mainScreenStyle);
+        mainScreenStyle = null;
+        if (lines != this.lines || columns != this.columns || pendingReflow != null) {
+          resize(lines, columns);
+        }
+      }
+      resetScrollingRegion();
+    }
+  }
+
+  // Swaps the screen shown with the hidden one. No lines are copied.
+  //
+  // MUST be called from a synchronized block!
+  private void swapScreens() {
+    hiddenScreen = terminal.swapLines(hiddenScreen);
+    Map<Integer, List<IHyperlink>> shownHyperlinks = hiddenHyperlinks;
+    hiddenHyperlinks = hyperlinks;
+    hyperlinks = shownHyperlinks;
+  }
+
+  @Override public boolean isAlternateScreen() {
+    synchronized (terminal) {
+      return alternateScreen;
+    }
+  }
+
+  // MUST be called from a synchronized block!
+  private void resetScrollingRegion() {
+    scrollingRegionTop = 0;
+    scrollingRegionBottom = -1;
+  }
+
+  // MUST be called from a synchronized block!
+  private boolean hasScrollingRegion() {
+    return scrollingRegionBottom >= 0;
+  }
+
+  // MUST be called from a synchronized block!
+  private int bottomMargin() {
+    return hasScrollingRegion() ? scrollingRegionBottom : lines - 1;
+  }
+
+  // Scrolls the screen lines between top and bottom (inclusive) down if shift is positive, up if it is negative. Only
+  // those lines change, so that snapshots can tell that the rest of the screen did not move.
+  //
+  // MUST be called from a synchronized block!
+  private void scrollLines(int top, int bottom, int shift) {
+    int size = bottom - top + 1;
+    shift = Math.max(-size, Math.min(size, shift));
+    terminal.scroll(toAbsoluteLine(top), size, shift);
   }
 
   @Override public Style getStyle() {
@@ -220,23 +485,33 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
   }
 
   @Override public void appendString(String buffer) {
+    char[] chars = buffer.toCharArray();
+    appendChars(chars, 0, chars.length);
+  }
+
+  @Override public void appendChars(char[] buffer, int offset, int length) {
     synchronized (terminal) {
-      char[] chars = buffer.toCharArray();
       int line = toAbsoluteLine(cursorLine);
       int originalLine = line;
-      List<IHyperlink> found = emptyList();
-      if (buffer != null) {
-        found = httpHyperlinkFactory.hyperlinksIn(cursorColumn, buffer);
+      appendedChars.set(buffer, offset, length);
+      List<IHyperlink> found = httpHyperlinkFactory.hyperlinksIn(cursorColumn, appendedChars);
+      appendedChars.set(null, 0, 0);
+      if (!found.isEmpty()) {
         hyperlinks.put(new Integer(line), found);
+      } else if (!hyperlinks.isEmpty()) {
+        // Text written over a line replaces the hyperlinks it had.
+        hyperlinks.remove(new Integer(line));
       }
-      int i = 0;
-      while (i < chars.length) {
-        int n = Math.min(columns - cursorColumn, chars.length - i);
-        terminal.setChars(line, cursorColumn, chars, i, n, style);
+      int i = offset;
+      int end = offset + length;
+      while (i < end) {
+        int n = Math.min(columns - cursorColumn, end - i);
+        terminal.setChars(line, cursorColumn, buffer, i, n, style);
         int col = cursorColumn + n;
         i += n;
         // wrap needed?
         if (col >= columns) {
+          terminal.setWrapWidth(line, columns);
           doNewline();
           line = toAbsoluteLine(cursorLine);
           setCursorColumn(0);
@@ -252,7 +527,8 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
     for (IHyperlink hyperlink : hyperlinks) {
       IRegion region = hyperlink.getHyperlinkRegion();
       int start = region.getOffset();
-      int end = start + region.getLength();
+      // Only the part of the hyperlink that is on the line it starts in is underlined.
+      int end = Math.min(start + region.getLength(), terminal.getWidth());
       for (int column = start; column < end; column++) {
         Style style = terminal.getStyle(line, column);
         if (style != null) {
@@ -265,11 +541,20 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
 
   // MUST be called from a synchronized block!
   private void doNewline() {
-    if (cursorLine + 1 >= lines) {
+    if (cursorLine == bottomMargin() && (hasScrollingRegion() || alternateScreen)) {
+      // Lines scrolled off the alternate screen are lost, like the ones scrolled off a scrolling region.
+      scrollLines(scrollingRegionTop, bottomMargin(), -1);
+    } else if (cursorLine + 1 >= lines) {
+      if (hasScrollingRegion()) {
+        // The cursor is below the scrolling region: nothing scrolls.
+        return;
+      }
       int h = terminal.getHeight();
       terminal.addLine();
       if (h != terminal.getHeight()) {
         setCursorLine(cursorLine + 1);
+      } else {
+        linesScrolledOff++;
       }
     } else {
       setCursorLine(cursorLine + 1);
@@ -342,6 +627,90 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
     }
   }
 
+  // Rewraps the lines above the screen, reading them a batch at a time so that the lock on the terminal is never held
+  // for long. The rewrapped lines replace the original ones at once, unless the lines above the screen moved in the
+  // meantime in a way that cannot be followed. Lines dropped from the top of the terminal while rewrapping are simply
+  // left out.
+  private class ScrollbackReflow implements Runnable {
+    private final int generation;
+    private final int lineCount;
+    private final int width;
+    private final long linesScrolledOffAtStart;
+
+    // MUST be called from a synchronized block!
+    ScrollbackReflow(int lineCount) {
+      generation = reflowGeneration;
+      this.lineCount = lineCount;
+      width = columns;
+      linesScrolledOffAtStart = linesScrolledOff;
+    }
+
+    @Override public void run() {
+      TextReflow reflow = new TextReflow(width);
+      int line = 0;
+      int dropped;
+      while (line < lineCount) {
+        synchronized (terminal) {
+          if (generation != reflowGeneration) {
+            return;
+          }
+          dropped = droppedLineCount();
+          int batchEnd = Math.min(line + REFLOW_BATCH_SIZE, lineCount);
+          for (; line < batchEnd; line++) {
+            int current = line - dropped;
+            if (current < 0) {
+              // Gone already. Added empty to keep the line indices, and left out below.
+              reflow.addLine(null, null, 0);
+            } else {
+              reflow.addLine(terminal.getChars(current), terminal.getStyles(current), terminal.getWrapWidth(current));
+            }
+          }
+        }
+      }
+      reflow.finish();
+      synchronized (terminal) {
+        dropped = droppedLineCount();
+      }
+      // Copying the lines is done without holding the lock; lines dropped in the meantime are removed afterwards.
+      int first = firstLineToKeep(reflow, 0, dropped);
+      ITerminalTextData rewrapped = reflow.toTextData(first, reflow.getLineCount() - first);
+      synchronized (terminal) {
+        if (generation != reflowGeneration) {
+          return;
+        }
+        pendingReflow = null;
+        int replaced = lineCount - droppedLineCount();
+        if (replaced <= 0 || replaced > terminal.getHeight() - lines) {
+          return;
+        }
+        int removed = firstLineToKeep(reflow, first, droppedLineCount()) - first;
+        int excess = terminal.getHeight() - replaced + rewrapped.getHeight() - removed - terminal.getMaxHeight();
+        removed += Math.max(0, excess);
+        if (removed > 0) {
+          rewrapped.replaceLines(0, removed, new TerminalTextDataStore());
+        }
+        terminal.replaceLines(0, replaced, rewrapped);
+        hyperlinks.clear();
+        // The screen did not move, but its position in the terminal did.
+        setCursorLine(cursorLine);
+      }
+    }
+
+    // MUST be called from a synchronized block!
+    private int droppedLineCount() {
+      return (int) Math.min(linesScrolledOff - linesScrolledOffAtStart, lineCount);
+    }
+
+    // Leaves out the rewrapped lines of the text that started in a line that has been dropped.
+    private int firstLineToKeep(TextReflow reflow, int start, int dropped) {
+      int line = start;
+      while (line < reflow.getLineCount() && reflow.getSourceLine(line) < dropped) {
+        line++;
+      }
+      return line;
+    }
+  }
+
   @Override public List<IHyperlink> hyperlinksAt(int line) {
     List<IHyperlink> found = hyperlinks.get(new Integer(line));
     if (found == null) {
@@ -349,4 +718,34 @@ public class VT100EmulatorBackend implements IVT100EmulatorBackend {
     }
     return found;
   }
+
+  // A read-only view of some of the characters of an array. It is reused for every call to appendChars, so that
+  // looking for hyperlinks does not copy the characters.
+  private static class CharArraySlice implements CharSequence {
+    private char[] chars;
+    private int offset;
+    private int length;
+
+    void set(char[] chars, int offset, int length) {
+      this.chars = chars;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override public int length() {
+      return length;
+    }
+
+    @Override public char charAt(int index) {
+      return chars[offset + index];
+    }
+
+    @Override public CharSequence subSequence(int start, int end) {
+      return new String(chars, offset + start, end - start);
+    }
+
+    @Override public String toString() {
+      return new String(chars, offset, length);
+    }
+  }
 }
\ No newline at end of file
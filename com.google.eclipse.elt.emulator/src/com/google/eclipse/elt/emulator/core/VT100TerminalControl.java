@@ -8,15 +8,16 @@
 package com.google.eclipse.elt.emulator.core;
 
 import static com.google.eclipse.elt.emulator.impl.TerminalPlugin.isOptionEnabled;
-import static org.eclipse.core.runtime.Status.OK_STATUS;
 import static org.eclipse.jface.bindings.keys.SWTKeySupport.convertEventToUnmodifiedAccelerator;
 
 import java.io.*;
 import java.net.SocketException;
+import java.nio.charset.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.*;
-import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.resource.JFaceResources;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.hyperlink.IHyperlink;
@@ -44,9 +45,27 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
   private static final String DEFAULT_ENCODING =
       new InputStreamReader(new ByteArrayInputStream(new byte[0])).getEncoding();
 
+  /** Default size, in bytes, of the buffer between the connector and the emulator. */
+  public static final int DEFAULT_INPUT_BUFFER_SIZE = 256 * 1024;
+
+  // Connectors may load native libraries or start processes, which must not block the UI thread.
+  private static final ExecutorService connectExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "Terminal connect " + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
   // This field holds a reference to a TerminalText object that performs all ANSI text processing on data received from
   // the remote host and controls how text is displayed using the view's StyledText widget.
   private final VT100Emulator terminalText;
+  private final TerminalInputProcessor inputProcessor;
+  private final RenderingGovernor renderingGovernor = new RenderingGovernor();
+  private final PasteSender pasteSender;
+  private final KeystrokeBatcher keystrokeBatcher;
 
   private Display display;
   private TextCanvas textControl;
@@ -54,28 +73,70 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
   private Clipboard clipboard;
   private KeyListener keyHandler;
   private final ITerminalListener terminalListener;
-  private String message = "";
+  private volatile String message = "";
   private FocusListener focusListener;
   private ITerminalConnector connector;
   private final ITerminalConnector[] connectors;
   private final PipedInputStream inputStream;
   private String encoding = DEFAULT_ENCODING;
-  private InputStreamReader inputStreamReader;
   private ICommandInputField commandInputField;
   private volatile TerminalState state;
   private final ITerminalTextData terminalModel;
 
-  volatile private Job job;
-
   private final EditActionAccelerators editActionAccelerators = new EditActionAccelerators();
 
   public VT100TerminalControl(ITerminalListener target, Composite wndParent, ITerminalConnector[] connectors) {
+    this(target, wndParent, connectors, DEFAULT_INPUT_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a new {@link VT100TerminalControl}.
+   *
+   * @param target listens to state and title changes of the terminal.
+   * @param wndParent the parent of the terminal's controls.
+   * @param connectors the available terminal connectors.
+   * @param inputBufferSize the size, in bytes, of the buffer holding data received from the connector that has not
+   * been processed by the emulator yet. Connectors block when this buffer is full.
+   */
+  public VT100TerminalControl(ITerminalListener target, Composite wndParent, ITerminalConnector[] connectors,
+      int inputBufferSize) {
     this.connectors = connectors;
     terminalListener = target;
     terminalModel = TerminalTextDataFactory.makeTerminalTextData();
     terminalModel.setMaxHeight(1000);
-    inputStream = new PipedInputStream(8 * 1024);
-    terminalText = new VT100Emulator(terminalModel, this, null);
+    inputStream = new PipedInputStream(inputBufferSize);
+    terminalText = new VT100Emulator(terminalModel, this, inputStream);
+    inputProcessor = new TerminalInputProcessor(inputStream, terminalText, terminalModel, renderingGovernor,
+        new TerminalInputProcessor.ErrorHandler() {
+          @Override public void processingFailed(RuntimeException e) {
+            disconnectTerminal();
+            TerminalPlugin.log(e.getLocalizedMessage(), e);
+          }
+        });
+    pasteSender = new PasteSender(new PasteSender.ErrorHandler() {
+      @Override public void pasteFailed(final IOException e) {
+        if (display == null || display.isDisposed()) {
+          return;
+        }
+        display.asyncExec(new Runnable() {
+          @Override public void run() {
+            if (!getTextControl().isDisposed() && isConnected()) {
+              showErrorMessage(TerminalMessages.ioError + "!\n" + e.getMessage());
+              disconnectTerminal();
+            }
+          }
+        });
+      }
+    });
+    keystrokeBatcher = new KeystrokeBatcher(new Executor() {
+      @Override public void execute(Runnable command) {
+        display.asyncExec(command);
+      }
+    }, pasteSender, new KeystrokeBatcher.ErrorHandler() {
+      @Override public void sendFailed(IOException e) {
+        handleSendError(e);
+      }
+    });
     try {
       // Use default Encoding as start, until setEncoding() is called.
       setEncoding(null);
@@ -83,8 +144,8 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
       e.printStackTrace();
       // Fall back to local platform default encoding
       encoding = DEFAULT_ENCODING;
-      inputStreamReader = new InputStreamReader(inputStream);
-      terminalText.setInputStreamReader(inputStreamReader);
+      terminalText.setCharset(Charset.defaultCharset());
+      keystrokeBatcher.setCharset(Charset.defaultCharset());
     }
     setUpTerminal(wndParent);
   }
@@ -93,10 +154,17 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
     if (encoding == null) {
       encoding = "ISO-8859-1";
     }
-    inputStreamReader = new InputStreamReader(inputStream, encoding);
+    Charset charset;
+    try {
+      charset = Charset.forName(encoding);
+    } catch (IllegalArgumentException e) {
+      throw new UnsupportedEncodingException(encoding);
+    }
     // remember encoding if above didn't throw an exception
     this.encoding = encoding;
-    terminalText.setInputStreamReader(inputStreamReader);
+    // The emulator keeps its decoding state, so no input is lost when the encoding changes mid-stream.
+    terminalText.setCharset(charset);
+    keystrokeBatcher.setCharset(charset);
   }
 
   @Override public String getEncoding() {
@@ -131,6 +199,11 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
     pasteString(strText);
   }
 
+  /**
+   * Sends the given text to the remote side in the background. Large pastes are throttled to the speed the remote side
+   * reads them, and can be cancelled with {@link #cancelPaste()}. If the shell enabled bracketed paste mode, the text
+   * is sent as a bracketed paste.
+   */
   @Override public boolean pasteString(String text) {
     if (!isConnected()) {
       return false;
@@ -138,17 +211,29 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
     if (text == null) {
       return false;
     }
-    if (!encoding.equals(DEFAULT_ENCODING)) {
-      sendString(text);
-    } else {
-      // TODO I do not understand why pasteString would do this here...
-      for (int i = 0; i < text.length(); i++) {
-        sendChar(text.charAt(i), false);
-      }
+    OutputStream os = getOutputStream();
+    if (os == null) {
+      return false;
     }
+    try {
+      // Keystrokes typed before the paste go first.
+      keystrokeBatcher.flush();
+    } catch (IOException e) {
+      handleSendError(e);
+      return false;
+    }
+    pasteSender.paste(text, encoding, terminalText.isBracketedPasteMode(), os);
     return true;
   }
 
+  @Override public void cancelPaste() {
+    pasteSender.cancel();
+  }
+
+  @Override public boolean isPasting() {
+    return pasteSender.isPasting();
+  }
+
   @Override public void selectAll() {
     getTextControl().selectAll();
   }
@@ -201,20 +286,50 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
     getTerminalText().dispose();
   }
 
+  /**
+   * Starts connecting the terminal in the background, and returns right away. The terminal stays in the
+   * {@link TerminalState#CONNECTING} state until the connector has started; output received in the meantime is shown
+   * as soon as it arrives.
+   */
   @Override public void connectTerminal() {
-    if (getTerminalConnector() == null) {
+    final ITerminalConnector connector = getTerminalConnector();
+    if (connector == null || state == TerminalState.CONNECTING) {
       return;
     }
     terminalText.resetState();
-    if (connector.getInitializationErrorMessage() != null) {
-      showErrorMessage(NLS.bind(TerminalMessages.cannotConnectTo, connector.getName(),
-          connector.getInitializationErrorMessage()));
-      return;
-    }
-    getTerminalConnector().connect(this);
     // clean the error message
     setErrorMessage("");
-    waitForConnect();
+    setState(TerminalState.CONNECTING);
+    inputProcessor.start();
+    connectExecutor.execute(new Runnable() {
+      @Override public void run() {
+        try {
+          String initializationErrorMessage = connector.getInitializationErrorMessage();
+          if (initializationErrorMessage != null) {
+            setErrorMessage(NLS.bind(TerminalMessages.cannotConnectTo, connector.getName(), initializationErrorMessage));
+            setState(TerminalState.CLOSED);
+          } else {
+            connector.connect(VT100TerminalControl.this);
+            if (isConnected()) {
+              terminalText.connected();
+            }
+          }
+        } catch (RuntimeException e) {
+          TerminalPlugin.log(e.getLocalizedMessage(), e);
+          setErrorMessage(NLS.bind(TerminalMessages.cannotConnectTo, connector.getName(), e.getLocalizedMessage()));
+          setState(TerminalState.CLOSED);
+        }
+        if (display.isDisposed()) {
+          disconnectTerminal();
+          return;
+        }
+        display.asyncExec(new Runnable() {
+          @Override public void run() {
+            connectFinished();
+          }
+        });
+      }
+    });
   }
 
   @Override public ITerminalConnector getTerminalConnector() {
@@ -227,37 +342,12 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
     if (getState() != TerminalState.CLOSED && getTerminalConnector() != null) {
       getTerminalConnector().disconnect();
     }
-    // Ensure that a new Job can be started; then clean up old Job.
-    Job newJob;
-    synchronized (this) {
-      newJob = job;
-      job = null;
-    }
-    if (newJob != null) {
-      newJob.cancel();
-      // Join job to avoid leaving job running after workbench shutdown (333613).
-      // Interrupt to be fast enough; cannot close fInputStream since it is re-used (bug 348700).
-      Thread t = newJob.getThread();
-      if (t != null) {
-        t.interrupt();
-      }
-      try {
-        newJob.join();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      }
-    }
+    pasteSender.cancel();
+    // Wait for the emulator to finish the slice of input it may be processing.
+    inputProcessor.stop();
   }
 
-  private void waitForConnect() {
-    // TODO
-    // Eliminate this code
-    while (getState() == TerminalState.CONNECTING) {
-      if (display.readAndDispatch()) {
-        continue;
-      }
-      display.sleep();
-    }
+  private void connectFinished() {
     if (getTextControl().isDisposed()) {
       disconnectTerminal();
       return;
@@ -267,59 +357,11 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
       disconnectTerminal();
       return;
     }
-    getTextControl().setFocus();
-    startReaderJob();
-  }
-
-  private synchronized void startReaderJob() {
-    if (job == null) {
-      initializeJob();
-      job.setSystem(true);
-      job.schedule();
+    if (isConnected()) {
+      getTextControl().setFocus();
     }
   }
 
-  private void initializeJob() {
-    job = new Job("Terminal data reader") {
-      @Override protected IStatus run(IProgressMonitor monitor) {
-        IStatus status = OK_STATUS;
-        try {
-          while (true) {
-            while (inputStream.available() == 0 && !monitor.isCanceled()) {
-              try {
-                inputStream.waitForAvailable(500);
-              } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-              }
-            }
-            if (monitor.isCanceled()) {
-              // Do not disconnect terminal here because another reader job may already be running.
-              status = Status.CANCEL_STATUS;
-              break;
-            }
-            try {
-              // TODO: should block when no text is available!
-              terminalText.processText();
-            } catch (Exception e) {
-              disconnectTerminal();
-              status = new Status(IStatus.ERROR, TerminalPlugin.PLUGIN_ID, e.getLocalizedMessage(), e);
-              break;
-            }
-          }
-        } finally {
-          // Clean the job: start a new one when the connection gets restarted.
-          // Bug 208145: make sure we do not clean an other job that's already started (since it would become a zombie)
-          synchronized (VT100TerminalControl.this) {
-            if (job == this) {
-              job = null;
-            }
-          }
-        }
-        return status;
-      }
-    };
-  }
-
   private void showErrorMessage(String message) {
     String title = TerminalMessages.terminalError;
     MessageBox mb = new MessageBox(getShell(), SWT.ICON_ERROR | SWT.OK);
@@ -330,23 +372,24 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
 
   protected void sendString(String string) {
     try {
-      // Send the string after converting it to an array of bytes using the platform's default character encoding.
-      //
-      // TODO: Find a way to force this to use the ISO Latin-1 encoding.
-      // TODO: handle Encoding Errors in a better way
-      getOutputStream().write(string.getBytes(encoding));
-      getOutputStream().flush();
-    } catch (SocketException socketException) {
-      displayTextInTerminal(socketException.getMessage());
-      String strMsg = TerminalMessages.socketError + "!\n" + socketException.getMessage();
+      // Send the string after converting it to an array of bytes using the terminal's encoding. Keystrokes sent in the
+      // same tick of the event loop are batched.
+      keystrokeBatcher.send(string, getOutputStream());
+    } catch (IOException e) {
+      handleSendError(e);
+    }
+  }
+
+  private void handleSendError(IOException e) {
+    if (e instanceof SocketException) {
+      displayTextInTerminal(e.getMessage());
+      String strMsg = TerminalMessages.socketError + "!\n" + e.getMessage();
       showErrorMessage(strMsg);
-      Logger.logException(socketException);
-      disconnectTerminal();
-    } catch (IOException ioException) {
-      showErrorMessage(TerminalMessages.ioError + "!\n" + ioException.getMessage());
-      Logger.logException(ioException);
-      disconnectTerminal();
+    } else {
+      showErrorMessage(TerminalMessages.ioError + "!\n" + e.getMessage());
     }
+    Logger.logException(e);
+    disconnectTerminal();
   }
 
   @Override public Shell getShell() {
@@ -356,7 +399,6 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
   protected void sendChar(char chKey, boolean altKeyPressed) {
     try {
       String text = Character.toString(chKey);
-      byte[] bytes = text.getBytes(getEncoding());
       OutputStream os = getOutputStream();
       if (os == null) {
         // Bug 207785: NPE when trying to send char while no longer connected
@@ -371,13 +413,11 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
           //
           // TODO: Make the ESCAPE-vs-highbit behavior user configurable.
           Logger.log("sending ESC + '" + text + "'");
-          getOutputStream().write('\u001b');
-          getOutputStream().write(bytes);
+          keystrokeBatcher.send("\u001b" + text, os);
         } else {
           Logger.log("sending '" + text + "'");
-          getOutputStream().write(bytes);
+          keystrokeBatcher.send(text, os);
         }
-        getOutputStream().flush();
       }
     } catch (SocketException socketException) {
       Logger.logException(socketException);
@@ -439,7 +479,7 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
     ITerminalTextDataSnapshot snapshot = terminalModel.makeSnapshot();
     // TODO how to get the initial size correctly!
     snapshot.updateSnapshot(false);
-    ITextCanvasModel canvasModel = new PollingTextCanvasModel(snapshot);
+    ITextCanvasModel canvasModel = new PollingTextCanvasModel(snapshot, renderingGovernor);
     textControl = new TextCanvas(rootControl, canvasModel, SWT.NONE, new TextLineRenderer(textControl, canvasModel));
     textControl.addMouseListener(new MouseAdapter() {
       @Override public void mouseUp(MouseEvent e) {
@@ -525,6 +565,15 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
     return inputStream.getOutputStream();
   }
 
+  @Override public int offerRemoteToTerminal(byte[] buffer, int offset, int length, Runnable writableListener)
+      throws IOException {
+    int written = inputStream.offer(buffer, offset, length, writableListener);
+    if (written > 0 && Logger.isLogEnabled()) {
+      Logger.log("Received " + written + " bytes: '" + Logger.encode(new String(buffer, offset, written)) + "'");
+    }
+    return written;
+  }
+
   protected boolean isLogCharEnabled() {
     return isOptionEnabled(Logger.TRACE_DEBUG_LOG_CHAR);
   }
@@ -714,6 +763,10 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
         // the mark in Emacs.
         character = '\u0000';
       }
+      if (character == '\u0003') {
+        // Control-C also stops a paste in progress, so that the shell does not keep receiving it after the interrupt.
+        pasteSender.cancel();
+      }
       sendChar(character, altKeyPressed);
       // Special case: When we are in a TCP connection and echoing characters locally, send a LF after sending a CR.
       // ISSUE: Is this absolutely required?
@@ -837,8 +890,27 @@ public class VT100TerminalControl implements ITerminalControlForText, ITerminalC
     textControl.setColors(background, foreground);
   }
 
-  @Override
-  public void setBlinkingCursor(boolean useBlinkingCursor) {
+  @Override public void setBlinkingCursor(boolean useBlinkingCursor) {
     textControl.setBlinkingCursor(useBlinkingCursor);
   }
+
+  @Override public void setRenderingMode(RenderingMode mode) {
+    renderingGovernor.setMode(mode);
+  }
+
+  @Override public RenderingMode getRenderingMode() {
+    return renderingGovernor.getMode();
+  }
+
+  @Override public RenderingMode getEffectiveRenderingMode() {
+    return renderingGovernor.getEffectiveMode();
+  }
+
+  @Override public void setMaximumFrameRate(int framesPerSecond) {
+    renderingGovernor.setMaximumFrameRate(framesPerSecond);
+  }
+
+  @Override public void setThroughputParseBudget(int milliseconds) {
+    renderingGovernor.setThroughputParseBudget(milliseconds);
+  }
 }
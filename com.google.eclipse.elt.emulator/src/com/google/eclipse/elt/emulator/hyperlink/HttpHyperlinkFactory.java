@@ -21,8 +21,8 @@ public class HttpHyperlinkFactory implements IHyperlinkFactory {
   private static Pattern URL_PATTERN =
       Pattern.compile("http(s)?:\\/{2}[\\d\\w-]+(\\.[\\d\\w-]+)*(?:(?:\\/[^\\s/]*))*(\\:[\\d]+)?");
 
-  @Override public List<IHyperlink> hyperlinksIn(int column, String text) {
-    if (text == null) {
+  @Override public List<IHyperlink> hyperlinksIn(int column, CharSequence text) {
+    if (text == null || !containsHttp(text)) {
       return NO_HYPERLINKS;
     }
     List<IHyperlink> hyperlinks = new ArrayList<IHyperlink>();
@@ -39,4 +39,15 @@ public class HttpHyperlinkFactory implements IHyperlinkFactory {
     }
     return hyperlinks.isEmpty() ? NO_HYPERLINKS : hyperlinks;
   }
+
+  // Most text contains no URL: looking for "http" is much cheaper than running the regular expression.
+  private static boolean containsHttp(CharSequence text) {
+    int last = text.length() - 4;
+    for (int i = 0; i <= last; i++) {
+      if (text.charAt(i) == 'h' && text.charAt(i + 1) == 't' && text.charAt(i + 2) == 't' && text.charAt(i + 3) == 'p') {
+        return true;
+      }
+    }
+    return false;
+  }
 }
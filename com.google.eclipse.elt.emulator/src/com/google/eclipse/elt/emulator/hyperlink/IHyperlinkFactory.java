@@ -20,5 +20,5 @@ import org.eclipse.jface.text.hyperlink.IHyperlink;
 public interface IHyperlinkFactory {
   List<IHyperlink> NO_HYPERLINKS = emptyList();
 
-  List<IHyperlink> hyperlinksIn(int column, String text);
+  List<IHyperlink> hyperlinksIn(int column, CharSequence text);
 }
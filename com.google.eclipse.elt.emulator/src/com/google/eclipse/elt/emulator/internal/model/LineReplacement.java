@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.internal.model;
+
+import com.google.eclipse.elt.emulator.model.ITerminalTextData;
+
+/**
+ * Implements {@link ITerminalTextData#replaceLines(int, int, ITerminalTextData)} and
+ * {@link ITerminalTextData#swapLines(ITerminalTextData)} in terms of scrolling and copying lines.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+final class LineReplacement {
+  /**
+   * Replaces some lines of the given terminal text with all the lines of another one. The lines below the replaced
+   * ones are scrolled, so that replacing lines from the top of a {@link TerminalTextDataFastScroll} only moves its
+   * offset.
+   *
+   * @param target the terminal text to change.
+   * @param startLine the first line to replace.
+   * @param lineCount the number of lines to replace.
+   * @param source the lines to replace them with.
+   */
+  static void replaceLines(ITerminalTextData target, int startLine, int lineCount, ITerminalTextData source) {
+    int height = target.getHeight();
+    int sourceHeight = source.getHeight();
+    int shift = sourceHeight - lineCount;
+    if (shift > 0) {
+      // Make room at the bottom, then move the lines below the replaced ones down.
+      target.setDimensions(height + shift, target.getWidth());
+      target.scroll(startLine, height + shift - startLine, shift);
+    } else if (shift < 0) {
+      // Move the lines below the replaced ones up, then drop the lines left at the bottom.
+      target.scroll(startLine, height - startLine, shift);
+      target.setDimensions(height + shift, target.getWidth());
+    }
+    if (sourceHeight > 0) {
+      target.copyRange(source, 0, startLine, sourceHeight);
+    }
+  }
+
+  /**
+   * Swaps all the lines of the given terminal text with the ones of another one, by copying them.
+   *
+   * @param target the terminal text to change.
+   * @param source the new lines.
+   * @return a copy of the replaced lines.
+   */
+  static ITerminalTextData swapLines(ITerminalTextData target, ITerminalTextData source) {
+    ITerminalTextData replaced = new TerminalTextDataStore();
+    replaced.copy(target);
+    target.copy(source);
+    return replaced;
+  }
+
+  private LineReplacement() {}
+}
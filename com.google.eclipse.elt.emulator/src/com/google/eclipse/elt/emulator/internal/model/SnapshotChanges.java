@@ -167,34 +167,28 @@ public class SnapshotChanges implements ISnapshotChanges {
   @Override public void scroll(int startLine, int size, int shift) {
     size = fitSizeToWindow(startLine, size);
     startLine = fitLineToWindow(startLine);
-    // Let's track only negative shifts.
+    if (size <= 0) {
+      // The scrolled lines are outside the interest window.
+      return;
+    }
     if (dontTrackScrolling) {
       // We are in a state where we cannot track scrolling so let's simply mark the scrolled lines as changed.
       markLinesChanged(startLine, size);
-    } else if (shift >= 0) {
-      // We cannot handle positive scroll forget about clever caching of scroll events.
+    } else if (scrollWindowSize > 0 && (scrollWindowStartLine != startLine || scrollWindowSize != size)) {
+      // Only one scrolled region is tracked: forget about clever caching of scroll events.
       doNotTrackScrollingAnymore();
       // Mark all lines inside the scroll region as changed.
       markLinesChanged(startLine, size);
     } else {
-      // We have already scrolled.
-      if (scrollWindowShift < 0) {
-        // We have already scrolled.
-        if (scrollWindowStartLine == startLine && scrollWindowSize == size) {
-          // We are scrolling the same region again?
-          scrollWindowShift += shift;
-          scrollChangesLinesWithNegativeShift(startLine, size, shift);
-        } else {
-          // Mark all lines in the old scroll region as changed.
-          doNotTrackScrollingAnymore();
-          markLinesChanged(startLine, size);
-        }
-      } else {
-        // First scroll in this change -- we just notify it
-        scrollWindowStartLine = startLine;
-        scrollWindowSize = size;
-        scrollWindowShift = shift;
+      // Scrolling the same region again adds up, no matter the direction: every line that is not marked as changed is
+      // the line that was scrollWindowShift lines away.
+      scrollWindowStartLine = startLine;
+      scrollWindowSize = size;
+      scrollWindowShift += shift;
+      if (shift < 0) {
         scrollChangesLinesWithNegativeShift(startLine, size, shift);
+      } else if (shift > 0) {
+        scrollChangesLinesWithPositiveShift(startLine, size, shift);
       }
     }
   }
@@ -230,6 +224,23 @@ public class SnapshotChanges implements ISnapshotChanges {
     }
   }
 
+  private void scrollChangesLinesWithPositiveShift(int line, int n, int shift) {
+    Assert.isTrue(shift > 0);
+    // Scroll the region, starting from its end. Don't run out of bounds!
+    int m = Math.min(line + n, getChangedLineCount());
+    for (int i = m - 1; i >= line + shift; i--) {
+      setChangedLine(i, hasLineChanged(i - shift));
+      // Move the last changed line down. The first changed line is moved by the next loop in this method.
+      if (i > lastChangedLine && hasLineChanged(i)) {
+        lastChangedLine = i;
+      }
+    }
+    // Mark the "opened" lines as changed.
+    for (int i = line; i < Math.min(line + shift, line + n); i++) {
+      markLineChanged(i);
+    }
+  }
+
   @Override public void setAllChanged(int height) {
     scrollWindowStartLine = 0;
     scrollWindowSize = 0;
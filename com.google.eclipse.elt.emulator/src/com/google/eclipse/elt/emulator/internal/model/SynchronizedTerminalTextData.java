@@ -43,6 +43,14 @@ public class SynchronizedTerminalTextData implements ITerminalTextData {
     data.copyRange(source, sourceStartLine, destinationStartLine, length);
   }
 
+  @Override public synchronized void replaceLines(int startLine, int lineCount, ITerminalTextData source) {
+    data.replaceLines(startLine, lineCount, source);
+  }
+
+  @Override public synchronized ITerminalTextData swapLines(ITerminalTextData source) {
+    return data.swapLines(source);
+  }
+
   @Override public synchronized char getChar(int line, int column) {
     return data.getChar(line, column);
   }
@@ -83,6 +91,14 @@ public class SynchronizedTerminalTextData implements ITerminalTextData {
     return data.getWidth();
   }
 
+  @Override public synchronized int getWrapWidth(int line) {
+    return data.getWrapWidth(line);
+  }
+
+  @Override public synchronized void setWrapWidth(int line, int wrapWidth) {
+    data.setWrapWidth(line, wrapWidth);
+  }
+
   @Override public synchronized ITerminalTextDataSnapshot makeSnapshot() {
     return data.makeSnapshot();
   }
@@ -118,4 +134,8 @@ public class SynchronizedTerminalTextData implements ITerminalTextData {
   @Override public synchronized void setMaxHeight(int height) {
     data.setMaxHeight(height);
   }
+
+  @Override public synchronized void setJumpScroll(boolean jumpScroll) {
+    data.setJumpScroll(jumpScroll);
+  }
 }
@@ -12,11 +12,17 @@ import java.util.*;
 import com.google.eclipse.elt.emulator.model.*;
 
 public class TerminalTextData implements ITerminalTextData {
-  private final ITerminalTextData data;
+  private ITerminalTextData data;
   private final List<TerminalTextDataSnapshot> snapshots = new ArrayList<TerminalTextDataSnapshot>();
   private int cursorLine;
   private int cursorColumn;
 
+  // While jump scrolling, changes are only recorded here and sent to the snapshots once jump scrolling is turned off.
+  private boolean jumpScroll;
+  private boolean linesChangeDeferred;
+  private boolean dimensionsChangeDeferred;
+  private boolean cursorChangeDeferred;
+
   public TerminalTextData() {
     this(new TerminalTextDataFastScroll());
   }
@@ -94,18 +100,30 @@ public class TerminalTextData implements ITerminalTextData {
   }
 
   private void sendDimensionsChanged() {
+    if (jumpScroll) {
+      dimensionsChangeDeferred = true;
+      return;
+    }
     for (TerminalTextDataSnapshot snapshot : snapshots) {
       snapshot.markDimensionsChanged();
     }
   }
 
   protected void sendLineChangedToSnapshots(int line) {
+    if (jumpScroll) {
+      linesChangeDeferred = true;
+      return;
+    }
     for (TerminalTextDataSnapshot snapshot : snapshots) {
       snapshot.markLineChanged(line);
     }
   }
 
   protected void sendLinesChangedToSnapshot(int startingLine, int lineCount) {
+    if (jumpScroll) {
+      linesChangeDeferred = true;
+      return;
+    }
     for (TerminalTextDataSnapshot snapshot : snapshots) {
       snapshot.markLinesChanged(startingLine, lineCount);
     }
@@ -118,12 +136,32 @@ public class TerminalTextData implements ITerminalTextData {
    * @param shift delta by which the region is scrolled.
    */
   protected void sendScrolledToSnapshots(int startingLine, int lineCount, int shift) {
+    if (jumpScroll) {
+      linesChangeDeferred = true;
+      return;
+    }
     for (TerminalTextDataSnapshot snapshot : snapshots) {
       snapshot.scroll(startingLine, lineCount, shift);
     }
   }
 
+  // Tells the snapshots that every line has changed, as a single change that does not involve tracking the lines one by
+  // one.
+  protected void sendAllChangedToSnapshots() {
+    if (jumpScroll) {
+      linesChangeDeferred = true;
+      return;
+    }
+    for (TerminalTextDataSnapshot snapshot : snapshots) {
+      snapshot.markAllChanged();
+    }
+  }
+
   protected void sendCursorChanged() {
+    if (jumpScroll) {
+      cursorChangeDeferred = true;
+      return;
+    }
     for (TerminalTextDataSnapshot snapshot : snapshots) {
       snapshot.markCursorChanged();
     }
@@ -174,6 +212,34 @@ public class TerminalTextData implements ITerminalTextData {
     data.copyRange(source, sourceStartLine, destinationStartLine, length);
   }
 
+  /**
+   * Replaces the lines while holding the lock snapshots hold while they are updated, so that snapshots never see the
+   * lines half replaced.
+   */
+  @Override public synchronized void replaceLines(int startLine, int lineCount, ITerminalTextData source) {
+    int oldHeight = getHeight();
+    data.replaceLines(startLine, lineCount, source);
+    int newHeight = getHeight();
+    sendLinesChangedToSnapshot(startLine, newHeight - startLine);
+    if (newHeight != oldHeight) {
+      sendDimensionsChanged();
+    }
+  }
+
+  /**
+   * Swaps the decorated terminal text with the given one while holding the lock snapshots hold while they are updated.
+   * The cursor does not move.
+   */
+  @Override public synchronized ITerminalTextData swapLines(ITerminalTextData source) {
+    ITerminalTextData replaced = data;
+    data = source;
+    if (replaced.getHeight() != data.getHeight() || replaced.getWidth() != data.getWidth()) {
+      sendDimensionsChanged();
+    }
+    sendAllChangedToSnapshots();
+    return replaced;
+  }
+
   @Override public char[] getChars(int line) {
     return data.getChars(line);
   }
@@ -195,6 +261,15 @@ public class TerminalTextData implements ITerminalTextData {
     sendLineChangedToSnapshots(line);
   }
 
+  @Override public int getWrapWidth(int line) {
+    return data.getWrapWidth(line);
+  }
+
+  // Wrapping does not change what the line looks like, so snapshots are not told about it.
+  @Override public void setWrapWidth(int line, int wrapWidth) {
+    data.setWrapWidth(line, wrapWidth);
+  }
+
   @Override public int getCursorColumn() {
     return cursorColumn;
   }
@@ -212,4 +287,31 @@ public class TerminalTextData implements ITerminalTextData {
     cursorLine = line;
     sendCursorChanged();
   }
+
+  @Override public void setJumpScroll(boolean jumpScroll) {
+    if (this.jumpScroll == jumpScroll) {
+      return;
+    }
+    this.jumpScroll = jumpScroll;
+    if (!jumpScroll) {
+      sendDeferredChanges();
+    }
+  }
+
+  // Scrolling is not tracked across a jump: the snapshots simply copy every line again, which keeps them exact no
+  // matter how many lines went by.
+  private void sendDeferredChanges() {
+    if (dimensionsChangeDeferred) {
+      sendDimensionsChanged();
+    }
+    if (linesChangeDeferred) {
+      sendLinesChangedToSnapshot(0, getHeight());
+    }
+    if (cursorChangeDeferred) {
+      sendCursorChanged();
+    }
+    linesChangeDeferred = false;
+    dimensionsChangeDeferred = false;
+    cursorChangeDeferred = false;
+  }
 }
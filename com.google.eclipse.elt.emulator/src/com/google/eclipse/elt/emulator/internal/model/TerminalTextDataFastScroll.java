@@ -13,7 +13,8 @@ import com.google.eclipse.elt.emulator.model.*;
 
 /**
  * This class is optimized for scrolling the entire {@link #getHeight()}. The scrolling is done by moving an offset into
- * the data and using the modulo operator.
+ * the data and using the modulo operator. Scrolling only some of the lines (e.g. the scrolling region of the screen)
+ * scrolls the underlying data, which moves lines without copying them.
  */
 public class TerminalTextDataFastScroll implements ITerminalTextData {
   private final ITerminalTextData data;
@@ -78,6 +79,14 @@ public class TerminalTextDataFastScroll implements ITerminalTextData {
     }
   }
 
+  @Override public void replaceLines(int startLine, int lineCount, ITerminalTextData source) {
+    LineReplacement.replaceLines(this, startLine, lineCount, source);
+  }
+
+  @Override public ITerminalTextData swapLines(ITerminalTextData source) {
+    return LineReplacement.swapLines(this, source);
+  }
+
   @Override public char getChar(int line, int column) {
     Assert.isTrue(line >= 0 && line < height);
     return data.getChar(getPositionOfLine(line), column);
@@ -115,6 +124,16 @@ public class TerminalTextDataFastScroll implements ITerminalTextData {
     return data.getWidth();
   }
 
+  @Override public int getWrapWidth(int line) {
+    Assert.isTrue(line >= 0 && line < height);
+    return data.getWrapWidth(getPositionOfLine(line));
+  }
+
+  @Override public void setWrapWidth(int line, int wrapWidth) {
+    Assert.isTrue(line >= 0 && line < height);
+    data.setWrapWidth(getPositionOfLine(line), wrapWidth);
+  }
+
   @Override public ITerminalTextDataSnapshot makeSnapshot() {
     return data.makeSnapshot();
   }
@@ -127,8 +146,8 @@ public class TerminalTextDataFastScroll implements ITerminalTextData {
 
   @Override public void scroll(int startLine, int size, int shift) {
     Assert.isTrue(startLine >= 0 && startLine + size <= height);
-    if (shift >= maxHeight || -shift >= maxHeight) {
-      cleanLines(startLine, maxHeight - startLine);
+    if (shift >= size || -shift >= size) {
+      cleanLines(startLine, size);
       return;
     }
     if (size == height) {
@@ -141,19 +160,33 @@ public class TerminalTextDataFastScroll implements ITerminalTextData {
         cleanLines(startLine, Math.min(shift, getHeight() - startLine));
       }
     } else {
-      // we have to copy the lines.
-      if (shift < 0) {
-        // move the region up
-        for (int i = startLine; i < startLine + size + shift; i++) {
-          data.copyLine(data, getPositionOfLine(i - shift), getPositionOfLine(i));
+      int position = getPositionOfLine(startLine);
+      // The lines of the region may wrap around the end of the data: the part before the end and the part after the
+      // start are scrolled separately, and only the lines that move from one part to the other are copied.
+      int firstPartSize = Math.min(size, maxHeight - position);
+      int secondPartSize = size - firstPartSize;
+      if (secondPartSize == 0) {
+        data.scroll(position, size, shift);
+      } else if (shift < 0) {
+        data.scroll(position, firstPartSize, shift);
+        // The lines at the start of the second part move to the end of the first part.
+        for (int i = Math.max(0, firstPartSize + shift); i < firstPartSize; i++) {
+          int source = i - shift - firstPartSize;
+          if (source < secondPartSize) {
+            data.copyLine(data, source, position + i);
+          }
         }
-        // then clean the opened lines
-        cleanLines(Math.max(0, startLine + size + shift), Math.min(-shift, getHeight() - startLine));
+        data.scroll(0, secondPartSize, shift);
       } else {
-        for (int i = startLine + size - 1; i >= startLine && i - shift >= 0; i--) {
-          data.copyLine(data, getPositionOfLine(i - shift), getPositionOfLine(i));
+        data.scroll(0, secondPartSize, shift);
+        // The lines at the end of the first part move to the start of the second part.
+        for (int i = 0; i < Math.min(shift, secondPartSize); i++) {
+          int source = firstPartSize + i - shift;
+          if (source >= 0) {
+            data.copyLine(data, position + source, i);
+          }
         }
-        cleanLines(startLine, Math.min(shift, getHeight() - startLine));
+        data.scroll(position, firstPartSize, shift);
       }
     }
   }
@@ -224,4 +257,8 @@ public class TerminalTextDataFastScroll implements ITerminalTextData {
   @Override public void setCursorLine(int line) {
     throw new UnsupportedOperationException();
   }
+
+  @Override public void setJumpScroll(boolean jumpScroll) {
+    data.setJumpScroll(jumpScroll);
+  }
 }
@@ -74,7 +74,9 @@ class TerminalTextDataSnapshot implements ITerminalTextDataSnapshot {
         // first we do the scroll on the copy
         int start = currentChanges.getScrollWindowStartLine();
         int lines = Math.min(currentChanges.getScrollWindowSize(), snapshot.getHeight() - start);
-        snapshot.scroll(start, lines, currentChanges.getScrollWindowShift());
+        // The shifts of several scrolls add up, possibly to more than the size of the region.
+        int shift = Math.max(-lines, Math.min(lines, currentChanges.getScrollWindowShift()));
+        snapshot.scroll(start, lines, shift);
         // and then create the snapshot of the changed lines.
         currentChanges.copyChangedLines(snapshot, terminal);
       }
@@ -152,6 +154,12 @@ class TerminalTextDataSnapshot implements ITerminalTextDataSnapshot {
     notifyListers();
   }
 
+  void markAllChanged() {
+    futureChanges.setAllChanged(terminal.getHeight());
+    futureChanges.setTerminalChanged();
+    notifyListers();
+  }
+
   void markDimensionsChanged() {
     futureChanges.markDimensionsChanged();
     futureChanges.setTerminalChanged();
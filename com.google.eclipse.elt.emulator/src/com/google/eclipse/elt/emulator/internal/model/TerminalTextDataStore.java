@@ -19,6 +19,8 @@ import com.google.eclipse.elt.emulator.model.*;
 public class TerminalTextDataStore implements ITerminalTextData {
   private char[][] chars;
   private Style[][] styles;
+  // The width of each line when its text wrapped onto the next line, or 0.
+  private int[] wrapWidths;
   private int width;
   private int height;
   private int maxHeight;
@@ -28,6 +30,7 @@ public class TerminalTextDataStore implements ITerminalTextData {
   public TerminalTextDataStore() {
     chars = new char[0][];
     styles = new Style[0][];
+    wrapWidths = new int[0];
     width = 0;
   }
 
@@ -49,12 +52,14 @@ public class TerminalTextDataStore implements ITerminalTextData {
       }
       styles = (Style[][]) resizeArray(styles, height);
       chars = (char[][]) resizeArray(chars, height);
+      wrapWidths = (int[]) resizeArray(wrapWidths, height);
     }
     // Clean the new lines
     if (height > this.height) {
       for (int i = this.height; i < height; i++) {
         styles[i] = null;
         chars[i] = null;
+        wrapWidths[i] = 0;
       }
     }
     // Set dimensions after successful resize.
@@ -173,15 +178,17 @@ public class TerminalTextDataStore implements ITerminalTextData {
       for (int i = startLine; i < startLine + size + shift; i++) {
         chars[i] = chars[i - shift];
         styles[i] = styles[i - shift];
+        wrapWidths[i] = wrapWidths[i - shift];
       }
       // then clean the opened lines
-      cleanLines(Math.max(startLine, startLine + size + shift), Math.min(-shift, getHeight() - startLine));
+      cleanLines(Math.max(startLine, startLine + size + shift), Math.min(-shift, size));
     } else {
       for (int i = startLine + size - 1; i >= startLine && i - shift >= 0; i--) {
         chars[i] = chars[i - shift];
         styles[i] = styles[i - shift];
+        wrapWidths[i] = wrapWidths[i - shift];
       }
-      cleanLines(startLine, Math.min(shift, getHeight() - startLine));
+      cleanLines(startLine, Math.min(shift, size));
     }
   }
 
@@ -189,6 +196,7 @@ public class TerminalTextDataStore implements ITerminalTextData {
     for (int i = line; i < line + len; i++) {
       chars[i] = null;
       styles[i] = null;
+      wrapWidths[i] = 0;
     }
   }
 
@@ -223,10 +231,12 @@ public class TerminalTextDataStore implements ITerminalTextData {
     if (getHeight() != newHeight) {
       chars = new char[newHeight][];
       styles = new Style[newHeight][];
+      wrapWidths = new int[newHeight];
     }
     for (int i = 0; i < newHeight; i++) {
       chars[i] = source.getChars(i);
       styles[i] = source.getStyles(i);
+      wrapWidths[i] = source.getWrapWidth(i);
     }
     height = newHeight;
     cursorLine = source.getCursorLine();
@@ -237,12 +247,22 @@ public class TerminalTextDataStore implements ITerminalTextData {
     for (int i = 0; i < length; i++) {
       chars[i + destStartLine] = source.getChars(i + sourceStartLine);
       styles[i + destStartLine] = source.getStyles(i + sourceStartLine);
+      wrapWidths[i + destStartLine] = source.getWrapWidth(i + sourceStartLine);
     }
   }
 
   @Override public void copyLine(ITerminalTextData source, int sourceLine, int destLine) {
     chars[destLine] = source.getChars(sourceLine);
     styles[destLine] = source.getStyles(sourceLine);
+    wrapWidths[destLine] = source.getWrapWidth(sourceLine);
+  }
+
+  @Override public void replaceLines(int startLine, int lineCount, ITerminalTextData source) {
+    LineReplacement.replaceLines(this, startLine, lineCount, source);
+  }
+
+  @Override public ITerminalTextData swapLines(ITerminalTextData source) {
+    return LineReplacement.swapLines(this, source);
   }
 
   @Override public char[] getChars(int line) {
@@ -275,6 +295,15 @@ public class TerminalTextDataStore implements ITerminalTextData {
   @Override public void cleanLine(int line) {
     chars[line] = null;
     styles[line] = null;
+    wrapWidths[line] = 0;
+  }
+
+  @Override public int getWrapWidth(int line) {
+    return wrapWidths[line];
+  }
+
+  @Override public void setWrapWidth(int line, int wrapWidth) {
+    wrapWidths[line] = wrapWidth;
   }
 
   @Override public int getCursorColumn() {
@@ -292,4 +321,8 @@ public class TerminalTextDataStore implements ITerminalTextData {
   @Override public void setCursorLine(int line) {
     cursorLine = line;
   }
+
+  @Override public void setJumpScroll(boolean jumpScroll) {
+    // Snapshots are not supported.
+  }
 }
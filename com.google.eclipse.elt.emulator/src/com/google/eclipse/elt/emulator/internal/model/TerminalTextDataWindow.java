@@ -82,6 +82,19 @@ public class TerminalTextDataWindow implements ITerminalTextData {
     return data.getWidth();
   }
 
+  @Override public int getWrapWidth(int line) {
+    if (!isInWindow(line)) {
+      return 0;
+    }
+    return data.getWrapWidth(line - windowStartLine);
+  }
+
+  @Override public void setWrapWidth(int line, int wrapWidth) {
+    if (isInWindow(line)) {
+      data.setWrapWidth(line - windowStartLine, wrapWidth);
+    }
+  }
+
   @Override public ITerminalTextDataSnapshot makeSnapshot() {
     throw new UnsupportedOperationException();
   }
@@ -126,6 +139,14 @@ public class TerminalTextDataWindow implements ITerminalTextData {
     }
   }
 
+  @Override public void replaceLines(int startLine, int lineCount, ITerminalTextData source) {
+    LineReplacement.replaceLines(this, startLine, lineCount, source);
+  }
+
+  @Override public ITerminalTextData swapLines(ITerminalTextData source) {
+    return LineReplacement.swapLines(this, source);
+  }
+
   @Override public void scroll(int startLine, int lineCount, int shift) {
     Assert.isTrue(startLine >= 0 && startLine + lineCount <= height);
     int length = lineCount;
@@ -212,4 +233,8 @@ public class TerminalTextDataWindow implements ITerminalTextData {
   @Override public void setCursorLine(int line) {
     data.setCursorLine(line);
   }
+
+  @Override public void setJumpScroll(boolean jumpScroll) {
+    // Snapshots are not supported.
+  }
 }
@@ -27,6 +27,23 @@ public interface ITerminalTextData extends ITerminalTextDataReadOnly {
 
   void cleanLine(int line);
 
+  /**
+   * Returns the width the given line had when its text wrapped onto the next line. Such a line and the lines it wrapped
+   * onto hold a single line of text, which can be wrapped again when the width changes.
+   *
+   * @param line the line.
+   * @return the width of the line when its text wrapped onto the next line, or 0 if the line ends where its text does.
+   */
+  int getWrapWidth(int line);
+
+  /**
+   * Records whether the text of the given line wrapped onto the next line. Cleaning a line resets this.
+   *
+   * @param line the line.
+   * @param wrapWidth the width of the line when its text wrapped onto the next line, or 0 if it did not.
+   */
+  void setWrapWidth(int line, int wrapWidth);
+
   /**
    * Shifts some lines up or down. The "empty" space is filled with {@code '\000'} chars and {@code null} {@link Style}.
    * <p>
@@ -76,7 +93,37 @@ public interface ITerminalTextData extends ITerminalTextDataReadOnly {
 
   void copyRange(ITerminalTextData source, int sourceStartLine, int destinationStartLine, int length);
 
+  /**
+   * Replaces some lines with all the lines of another terminal text. The height changes by the difference in the number
+   * of lines; the lines below the replaced ones move up or down accordingly. Snapshots see the replacement as a single
+   * change.
+   *
+   * @param startLine the first line to replace.
+   * @param lineCount the number of lines to replace.
+   * @param source the lines to replace them with. It should be as wide as this terminal text.
+   */
+  void replaceLines(int startLine, int lineCount, ITerminalTextData source);
+
+  /**
+   * Replaces all the lines, and the dimensions, with the ones of another terminal text. Terminal texts that decorate
+   * another one put the given one in its place, so that no lines are copied. Snapshots see the swap as a single change.
+   *
+   * @param source the new lines. It should not be changed afterwards, other than by swapping it back.
+   * @return the replaced lines, to swap back later.
+   */
+  ITerminalTextData swapLines(ITerminalTextData source);
+
   void setCursorLine(int line);
 
   void setCursorColumn(int column);
+
+  /**
+   * Turns jump scrolling on or off. While jump scrolling, changes are applied as usual, but snapshots are not told
+   * about them one at a time: when jump scrolling is turned off, snapshots are told about all the changes at once, so
+   * that only the final state of the terminal gets painted.
+   *
+   * @param jumpScroll {@code true} to defer notifying snapshots of changes, {@code false} to notify them of all the
+   *        changes deferred so far.
+   */
+  void setJumpScroll(boolean jumpScroll);
 }
@@ -7,168 +7,179 @@
  *******************************************************************************/
 package com.google.eclipse.elt.emulator.model;
 
-import java.util.*;
-
-// TODO add an Object for user data, use weak map to keep track of styles with associated user data.
-public class Style {
-  private final StyleColor foreground;
-  private final StyleColor background;
-  private final boolean bold;
-  private final boolean blink;
-  private final boolean underline;
-  private final boolean reverse;
-
-  private static final Map<Style, Style> STYLES = new HashMap<Style, Style>();
+import static com.google.eclipse.elt.emulator.model.StyleColor.BITS;
+
+/**
+ * The colors and attributes of a character, packed in a {@code long}: the foreground color (see {@link StyleColor})
+ * in the lowest bits, then the background color, then one bit per attribute. Styles with the same value are equal;
+ * recently used ones are shared, so that the characters of a run of text usually have the same instance.
+ */
+public final class Style {
+  private static final long COLOR_MASK = (1L << BITS) - 1;
+  private static final int BACKGROUND_SHIFT = BITS;
+  private static final long BOLD = 1L << (2 * BITS);
+  private static final long BLINK = BOLD << 1;
+  private static final long UNDERLINE = BOLD << 2;
+  private static final long REVERSE = BOLD << 3;
+
+  private static final Style DEFAULT_STYLE = new Style(0);
+
+  // A direct-mapped cache of styles. It is not synchronized: styles are immutable, and a style missing from the cache,
+  // or replaced by another thread, is created again.
+  private static final int CACHE_SIZE = 1024;
+  private static final Style[] CACHE = new Style[CACHE_SIZE];
+
+  private final long value;
 
   public static Style getDefaultStyle() {
-    return getStyle("default", "default");
-  }
-
-  private Style(StyleColor foreground, StyleColor background, boolean bold, boolean blink, boolean underline,
-      boolean reverse) {
-    this.foreground = foreground;
-    this.background = background;
-    this.bold = bold;
-    this.blink = blink;
-    this.underline = underline;
-    this.reverse = reverse;
-  }
-
-  public static Style getStyle(StyleColor foreground, StyleColor background, boolean bold, boolean blink,
-      boolean underline, boolean reverse) {
-    Style style = new Style(foreground, background, bold, blink, underline, reverse);
-    Style cached;
-    synchronized (STYLES) {
-      cached = STYLES.get(style);
-      if (cached == null) {
-        cached = style;
-        STYLES.put(cached, cached);
-      }
+    return DEFAULT_STYLE;
+  }
+
+  /**
+   * Returns the style with the given packed value.
+   *
+   * @param value the colors and attributes of the style, as returned by {@link #getValue()}.
+   * @return the style.
+   */
+  public static Style getStyle(long value) {
+    if (value == 0) {
+      return DEFAULT_STYLE;
     }
-    return cached;
-  }
-
-  public static Style getStyle(String foreground, String background) {
-    return getStyle(
-        StyleColor.getStyleColor(foreground), StyleColor.getStyleColor(background), false, false, false, false);
-  }
-
-  public static Style getStyle(StyleColor foreground, StyleColor background) {
-    return getStyle(foreground, background, false, false, false, false);
+    int hash = (int) (value ^ (value >>> 29) ^ (value >>> 47));
+    int index = (hash ^ (hash >>> 10)) & (CACHE_SIZE - 1);
+    Style cached = CACHE[index];
+    if (cached != null && cached.value == value) {
+      return cached;
+    }
+    Style style = new Style(value);
+    CACHE[index] = style;
+    return style;
   }
 
-  public Style setForground(StyleColor foreground) {
-    return getStyle(foreground, background, bold, blink, underline, reverse);
+  public static Style getStyle(int foreground, int background) {
+    return getStyle(withForeground(0, foreground) | withBackground(0, background));
   }
 
-  public Style setBackground(StyleColor background) {
-    return getStyle(foreground, background, bold, blink, underline, reverse);
+  private Style(long value) {
+    this.value = value;
   }
 
-  public Style setForground(String colorName) {
-    return getStyle(StyleColor.getStyleColor(colorName), background, bold, blink, underline, reverse);
+  public Style setForeground(int foreground) {
+    return getStyle(withForeground(value, foreground));
   }
 
-  public Style setBackground(String colorName) {
-    return getStyle(foreground, StyleColor.getStyleColor(colorName), bold, blink, underline, reverse);
+  public Style setBackground(int background) {
+    return getStyle(withBackground(value, background));
   }
 
   public Style setBold(boolean bold) {
-    return getStyle(foreground, background, bold, blink, underline, reverse);
+    return getStyle(with(value, BOLD, bold));
   }
 
   public Style setBlink(boolean blink) {
-    return getStyle(foreground, background, bold, blink, underline, reverse);
+    return getStyle(with(value, BLINK, blink));
   }
 
   public Style setUnderline(boolean underline) {
-    return getStyle(foreground, background, bold, blink, underline, reverse);
+    return getStyle(with(value, UNDERLINE, underline));
   }
 
   public Style setReverse(boolean reverse) {
-    return getStyle(foreground, background, bold, blink, underline, reverse);
+    return getStyle(with(value, REVERSE, reverse));
+  }
+
+  /**
+   * Returns the colors and attributes of this style packed in a {@code long}. Callers that change several of them at
+   * once can work on this value with the static helpers of this class, and get the resulting style with
+   * {@link #getStyle(long)}.
+   *
+   * @return the packed value of this style.
+   */
+  public long getValue() {
+    return value;
   }
 
-  public StyleColor getBackground() {
-    return background;
+  public static long withForeground(long value, int foreground) {
+    return (value & ~COLOR_MASK) | (foreground & COLOR_MASK);
+  }
+
+  public static long withBackground(long value, int background) {
+    return (value & ~(COLOR_MASK << BACKGROUND_SHIFT)) | (background & COLOR_MASK) << BACKGROUND_SHIFT;
+  }
+
+  public static long withBold(long value, boolean bold) {
+    return with(value, BOLD, bold);
+  }
+
+  public static long withBlink(long value, boolean blink) {
+    return with(value, BLINK, blink);
+  }
+
+  public static long withUnderline(long value, boolean underline) {
+    return with(value, UNDERLINE, underline);
+  }
+
+  public static long withReverse(long value, boolean reverse) {
+    return with(value, REVERSE, reverse);
+  }
+
+  private static long with(long value, long attribute, boolean set) {
+    return set ? value | attribute : value & ~attribute;
+  }
+
+  public int getBackground() {
+    return (int) ((value >>> BACKGROUND_SHIFT) & COLOR_MASK);
   }
 
   public boolean isBlink() {
-    return blink;
+    return (value & BLINK) != 0;
   }
 
   public boolean isBold() {
-    return bold;
+    return (value & BOLD) != 0;
   }
 
-  public StyleColor getForeground() {
-    return foreground;
+  public int getForeground() {
+    return (int) (value & COLOR_MASK);
   }
 
   public boolean isReverse() {
-    return reverse;
+    return (value & REVERSE) != 0;
   }
 
   public boolean isUnderline() {
-    return underline;
+    return (value & UNDERLINE) != 0;
   }
 
   @Override public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((background == null) ? 0 : background.hashCode());
-    result = prime * result + (blink ? 1231 : 1237);
-    result = prime * result + (bold ? 1231 : 1237);
-    result = prime * result + ((foreground == null) ? 0 : foreground.hashCode());
-    result = prime * result + (reverse ? 1231 : 1237);
-    result = prime * result + (underline ? 1231 : 1237);
-    return result;
+    return (int) (value ^ (value >>> 32));
   }
 
   @Override public boolean equals(Object obj) {
     if (this == obj) {
       return true;
     }
-    if (obj == null) {
-      return false;
-    }
-    if (getClass() != obj.getClass()) {
-      return false;
-    }
-    final Style other = (Style) obj;
-    if (background != other.background) {
-      return false;
-    }
-    if (blink != other.blink) {
-      return false;
-    }
-    if (bold != other.bold) {
-      return false;
-    }
-    if (foreground != other.foreground) {
-      return false;
-    }
-    if (reverse != other.reverse) {
+    if (!(obj instanceof Style)) {
       return false;
     }
-    return underline == other.underline;
+    return value == ((Style) obj).value;
   }
 
   @Override public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append("Style [foreground=");
-    builder.append(foreground);
+    builder.append(StyleColor.toString(getForeground()));
     builder.append(", background=");
-    builder.append(background);
+    builder.append(StyleColor.toString(getBackground()));
     builder.append(", bold=");
-    builder.append(bold);
+    builder.append(isBold());
     builder.append(", blink=");
-    builder.append(blink);
+    builder.append(isBlink());
     builder.append(", underline=");
-    builder.append(underline);
+    builder.append(isUnderline());
     builder.append(", reverse=");
-    builder.append(reverse);
+    builder.append(isReverse());
     builder.append("]");
     return builder.toString();
   }
-}
\ No newline at end of file
+}
@@ -7,27 +7,91 @@
  *******************************************************************************/
 package com.google.eclipse.elt.emulator.model;
 
-import java.util.concurrent.*;
+/**
+ * Colors of a {@link Style}, packed in an {@code int}: the top bits tell the kind of color, and the low 24 bits hold
+ * either an index in the 256-color palette or the red, green and blue components of a 24-bit color. The colors are
+ * resolved into actual colors when the text is drawn.
+ */
+public final class StyleColor {
+  /** The number of bits used by a color. */
+  static final int BITS = 26;
 
-public class StyleColor {
-  private static final ConcurrentMap<String, StyleColor> STYLE_COLORS = new ConcurrentHashMap<String, StyleColor>();
+  /** The default foreground or background color. */
+  public static final int DEFAULT = 0;
 
-  private final String name;
+  private static final int INDEXED = 1 << 24;
+  private static final int RGB = 2 << 24;
+  private static final int KIND_MASK = 3 << 24;
 
-  public static StyleColor getStyleColor(String name) {
-    StyleColor result = new StyleColor(name);
-    return STYLE_COLORS.putIfAbsent(name, result);
+  public static final int BLACK = indexed(0);
+  public static final int RED = indexed(1);
+  public static final int GREEN = indexed(2);
+  public static final int YELLOW = indexed(3);
+  public static final int BLUE = indexed(4);
+  public static final int MAGENTA = indexed(5);
+  public static final int CYAN = indexed(6);
+  public static final int WHITE = indexed(7);
+
+  /**
+   * Returns a color of the 256-color palette: the 8 ANSI colors, their 8 bright versions, a 6x6x6 color cube and 24
+   * shades of gray.
+   *
+   * @param index the index of the color in the palette, between 0 and 255.
+   * @return the packed color.
+   */
+  public static int indexed(int index) {
+    return INDEXED | (index & 0xFF);
+  }
+
+  /**
+   * Returns a 24-bit color.
+   *
+   * @param red the red component, between 0 and 255.
+   * @param green the green component, between 0 and 255.
+   * @param blue the blue component, between 0 and 255.
+   * @return the packed color.
+   */
+  public static int rgb(int red, int green, int blue) {
+    return RGB | (red & 0xFF) << 16 | (green & 0xFF) << 8 | (blue & 0xFF);
+  }
+
+  public static boolean isDefault(int color) {
+    return (color & KIND_MASK) == DEFAULT;
+  }
+
+  public static boolean isIndexed(int color) {
+    return (color & KIND_MASK) == INDEXED;
   }
 
-  private StyleColor(String name) {
-    this.name = name;
+  public static boolean isRgb(int color) {
+    return (color & KIND_MASK) == RGB;
   }
 
-  public String getName() {
-    return name;
+  public static int getIndex(int color) {
+    return color & 0xFF;
   }
 
-  @Override public String toString() {
-    return name;
+  public static int getRed(int color) {
+    return (color >> 16) & 0xFF;
   }
-}
\ No newline at end of file
+
+  public static int getGreen(int color) {
+    return (color >> 8) & 0xFF;
+  }
+
+  public static int getBlue(int color) {
+    return color & 0xFF;
+  }
+
+  public static String toString(int color) {
+    if (isIndexed(color)) {
+      return "indexed(" + getIndex(color) + ")";
+    }
+    if (isRgb(color)) {
+      return "rgb(" + getRed(color) + "," + getGreen(color) + "," + getBlue(color) + ")";
+    }
+    return "default";
+  }
+
+  private StyleColor() {}
+}
@@ -67,6 +67,20 @@ public interface ITerminalControl {
    */
   OutputStream getRemoteToTerminalOutputStream();
 
+  /**
+   * Writes to the terminal, like {@link #getRemoteToTerminalOutputStream()} does, as many of the given bytes as fit in
+   * the terminal's input buffer, without blocking. If not all of them fit, the given listener is notified once, on an
+   * arbitrary thread, when the terminal has consumed enough of its input; the caller should then write the rest.
+   *
+   * @param buffer the bytes to write.
+   * @param offset the start offset in {@code buffer}.
+   * @param length the number of bytes to write.
+   * @param writableListener the listener to notify if not all bytes were written.
+   * @return the number of bytes written.
+   * @throws IOException if the terminal does not accept any more input.
+   */
+  int offerRemoteToTerminal(byte[] buffer, int offset, int length, Runnable writableListener) throws IOException;
+
   void setTerminalTitle(String title);
 
   /**
@@ -37,6 +37,9 @@ public abstract class AbstractTextCanvasModel implements ITextCanvasModel {
   // do not update while update is running
   boolean inUpdate;
 
+  // Time spent, in nanoseconds, taking a snapshot during the last update, or -1 if the snapshot was up to date.
+  private long lastSnapshotTime = -1;
+
   private int columns;
   private boolean useBlinkingCursor;
 
@@ -59,6 +62,12 @@ public abstract class AbstractTextCanvasModel implements ITextCanvasModel {
     }
   }
 
+  private void fireRangeScrolled(int line, int height, int shift) {
+    for (ITextCanvasModelListener listener : listeners) {
+      listener.rangeScrolled(line, height, shift);
+    }
+  }
+
   private void fireDimensionsChanged(int width, int height) {
     for (ITextCanvasModelListener listener : listeners) {
       listener.dimensionsChanged(width, height);
@@ -80,10 +89,14 @@ public abstract class AbstractTextCanvasModel implements ITextCanvasModel {
   }
 
   private void updateSnapshot() {
+    lastSnapshotTime = -1;
     if (!inUpdate && snapshot.isOutOfDate()) {
       inUpdate = true;
       try {
-        snapshot.updateSnapshot(false);
+        long start = System.nanoTime();
+        // Scrolling is detected so that scrolled lines can be moved on the canvas instead of being painted again.
+        snapshot.updateSnapshot(true);
+        lastSnapshotTime = System.nanoTime() - start;
         if (snapshot.hasTerminalChanged()) {
           fireTerminalDataChanged();
         }
@@ -93,6 +106,9 @@ public abstract class AbstractTextCanvasModel implements ITextCanvasModel {
           fireDimensionsChanged(snapshot.getWidth(), snapshot.getHeight());
           lines = snapshot.getHeight();
           columns = snapshot.getWidth();
+        } else {
+          // After a change of dimensions all lines are marked as changed, so there is nothing to scroll.
+          fireScrolledRange();
         }
         int y = snapshot.getFirstChangedLine();
         // has any line changed?
@@ -106,6 +122,21 @@ public abstract class AbstractTextCanvasModel implements ITextCanvasModel {
     }
   }
 
+  private void fireScrolledRange() {
+    int size = snapshot.getScrollWindowSize();
+    int shift = Math.max(-size, Math.min(size, snapshot.getScrollWindowShift()));
+    if (shift == 0) {
+      return;
+    }
+    int start = snapshot.getScrollWindowStartLine();
+    fireRangeScrolled(start, size, shift);
+    // The cursor was moved along with the text: paint over it where it ended up.
+    int movedCursorLine = cursorLine + shift;
+    if (cursorLine >= start && cursorLine < start + size && movedCursorLine >= start && movedCursorLine < start + size) {
+      fireCellRangeChanged(0, movedCursorLine, snapshot.getWidth(), 1);
+    }
+  }
+
   /**
    * This method must be called from the UI thread.
    */
@@ -115,6 +146,15 @@ public abstract class AbstractTextCanvasModel implements ITextCanvasModel {
     updateCursor();
   }
 
+  /**
+   * Returns the time spent taking a snapshot of the terminal model during the last call to {@link #update()}.
+   *
+   * @return the time spent taking a snapshot, in nanoseconds, or -1 if the snapshot was already up to date.
+   */
+  protected long getLastSnapshotTime() {
+    return lastSnapshotTime;
+  }
+
   @Override public int getCursorColumn() {
     return cursorColumn;
   }
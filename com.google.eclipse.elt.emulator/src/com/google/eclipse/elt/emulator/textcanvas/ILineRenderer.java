@@ -25,4 +25,9 @@ public interface ILineRenderer {
   void setColors(RGB background, RGB foreground);
 
   void setFont(Font font);
+
+  /**
+   * Releases the resources of this renderer. Called when its canvas is disposed.
+   */
+  void dispose();
 }
@@ -10,6 +10,16 @@ package com.google.eclipse.elt.emulator.textcanvas;
 public interface ITextCanvasModelListener {
   void rangeChanged(int col, int line, int width, int height);
 
+  /**
+   * Called when the lines of a range have moved up or down. The lines that scrolled into the range are reported through
+   * {@link #rangeChanged(int, int, int, int)}, but not the lines that moved.
+   *
+   * @param line the first line of the range.
+   * @param height the number of lines in the range.
+   * @param shift the number of lines the text moved by: down if positive, up if negative.
+   */
+  void rangeScrolled(int line, int height, int shift);
+
   void dimensionsChanged(int cols, int rows);
 
   /**
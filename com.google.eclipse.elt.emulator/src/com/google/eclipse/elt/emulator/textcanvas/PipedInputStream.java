@@ -8,19 +8,26 @@
 package com.google.eclipse.elt.emulator.textcanvas;
 
 import java.io.*;
+import java.util.concurrent.locks.ReentrantLock;
 
-import com.google.eclipse.elt.emulator.util.BoundedByteBuffer;
+import com.google.eclipse.elt.emulator.util.ByteRingBuffer;
 
 /**
- * Starts a {@code Runnable} in the display thread when data is available and to pretend no data is available after a
- * given amount of time the {@code Runnable} is running.
+ * A pipe connecting the terminal back-end (the producer, writing to {@link #getOutputStream()}) with the thread that
+ * feeds the emulator (the consumer, reading from this stream.) Bytes travel through a lock-free
+ * {@link ByteRingBuffer}; threads only block when the pipe is empty or full.
  */
 public class PipedInputStream extends InputStream {
   // The output stream used by the terminal back-end to write to the terminal
   protected final OutputStream outputStream;
 
-  // A blocking byte queue.
-  private final BoundedByteBuffer queue;
+  // A single-producer/single-consumer byte queue.
+  private final ByteRingBuffer queue;
+
+  // Serializes the writers of the queue.
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  private final byte[] singleByte = new byte[1];
 
   /**
    * Constructor.
@@ -29,7 +36,7 @@ public class PipedInputStream extends InputStream {
    */
   public PipedInputStream(int bufferSize) {
     outputStream = new PipedOutputStream();
-    queue = new BoundedByteBuffer(bufferSize);
+    queue = new ByteRingBuffer(bufferSize);
   }
 
   /**
@@ -41,6 +48,45 @@ public class PipedInputStream extends InputStream {
     return outputStream;
   }
 
+  /**
+   * Sets the listener to notify, on the writing thread, every time new bytes become available for reading.
+   *
+   * @param listener the listener to notify, or {@code null} to remove it.
+   */
+  public void setDataListener(Runnable listener) {
+    queue.setDataListener(listener);
+  }
+
+  /**
+   * Writes as many of the given bytes as fit in the pipe, without blocking. If not all of them fit, the given listener
+   * is notified once when the pipe has room again, usually on the reading thread; the caller should then write the
+   * rest. Nothing is written if another thread is writing to the pipe at the same time.
+   *
+   * @param b the bytes to write.
+   * @param off the start offset in {@code b}.
+   * @param len the number of bytes to write.
+   * @param writableListener the listener to notify if not all bytes were written.
+   * @return the number of bytes written.
+   * @throws IOException if the pipe is closed.
+   */
+  public int offer(byte[] b, int off, int len, Runnable writableListener) throws IOException {
+    if (queue.isClosed()) {
+      throw new IOException("Stream is closed!");
+    }
+    int written = 0;
+    if (writeLock.tryLock()) {
+      try {
+        written = queue.offer(b, off, len);
+      } finally {
+        writeLock.unlock();
+      }
+    }
+    if (written < len) {
+      queue.notifyWhenWritable(writableListener);
+    }
+    return written;
+  }
+
   /**
    * Waits until data is available for reading.
    *
@@ -48,124 +94,76 @@ public class PipedInputStream extends InputStream {
    * @throws InterruptedException when the thread is interrupted while waiting for the buffer to become ready.
    */
   public void waitForAvailable(long time) throws InterruptedException {
-    synchronized (queue) {
-      if (queue.size() == 0 && !queue.isClosed()) {
-        queue.wait(time);
-      }
+    if (queue.size() == 0 && !queue.isClosed()) {
+      queue.awaitData(time);
     }
   }
 
   @Override public int available() {
-    synchronized (queue) {
-      return queue.size();
-    }
+    return queue.size();
   }
 
   @Override public int read() {
-    try {
-      synchronized (queue) {
-        return queue.read();
-      }
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      return -1;
-    }
+    int n = read(singleByte, 0, 1);
+    return (n == 1) ? singleByte[0] & 0xFF : -1;
   }
 
   @Override public void close() {
-    synchronized (queue) {
-      queue.close();
-    }
+    queue.close();
   }
 
   @Override public int read(byte[] b, int off, int len) {
-    if (len == 0) {
-      return 0;
-    }
-    int n = 0;
-    // Read as much as we can using a single synchronized statement.
     try {
-      synchronized (queue) {
-        // If nothing available, block and read one byte.
-        if (queue.size() == 0) {
-          // Block now until at least one byte is available.
-          int c = queue.read();
-          // Are we at the end of stream?
-          if (c == -1) {
-            return -1;
-          }
-          b[off] = (byte) c;
-          n++;
-        }
-        // Is there more data available?
-        if (n < len && queue.size() > 0) {
-          // Read at most available.
-          int available = Math.min(queue.size(), len - n);
-          // Are we at the end of the stream?
-          if (available == 0 && queue.isClosed()) {
-            // If no byte was read, return -1 to indicate end of stream; otherwise return the bytes we read up to now.
-            if (n == 0) {
-              n = -1;
-            }
-            return n;
-          }
-          queue.read(b, off + n, available);
-          n += available;
-        }
-      }
+      return queue.read(b, off, len);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
+      return 0;
     }
-    return n;
   }
 
   /**
-   * An output stream that calls {@link PipedInputStream#textAvailable} every time data is written to the stream. The
-   * data is written to {@link PipedInputStream#queue}.
+   * The output stream that writes to {@link PipedInputStream#queue}. Writes are serialized so that occasional writes
+   * from other threads (e.g. local echo from the UI thread) do not break the single-producer contract of the queue;
+   * the lock is uncontended in the common case of a single connector thread.
    */
   private class PipedOutputStream extends OutputStream {
+    private final byte[] singleByte = new byte[1];
+
     @Override public void write(byte[] b, int off, int len) throws IOException {
+      if (queue.isClosed()) {
+        throw new IOException("Stream is closed!");
+      }
+      int written;
+      writeLock.lock();
       try {
-        synchronized (queue) {
-          if (queue.isClosed()) {
-            throw new IOException("Stream is closed!");
-          }
-          int written = 0;
-          while (written < len) {
-            if (queue.getFreeSlots() == 0) {
-              // If no slots available, write one byte and block until free slots are available.
-              queue.write(b[off + written]);
-              written++;
-            } else {
-              // If slots are available, write as much as we can in one junk
-              int n = Math.min(queue.getFreeSlots(), len - written);
-              queue.write(b, off + written, n);
-              written += n;
-            }
-          }
-        }
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
+        written = queue.write(b, off, len);
+      } finally {
+        writeLock.unlock();
       }
+      if (written == len) {
+        return;
+      }
+      if (queue.isClosed()) {
+        throw new IOException("Stream is closed!");
+      }
+      // Interrupted while the pipe was full: report the short write (the interrupt status of the thread is kept.)
+      InterruptedIOException e = new InterruptedIOException("Interrupted while waiting for the pipe to have room");
+      e.bytesTransferred = written;
+      throw e;
     }
 
     @Override public void write(int b) throws IOException {
+      writeLock.lock();
       try {
-        synchronized (queue) {
-          if (queue.isClosed()) {
-            throw new IOException("Stream is closed!");
-          }
-          queue.write((byte) b);
-        }
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+      } finally {
+        writeLock.unlock();
       }
     }
 
     @Override public void close() {
-      synchronized (queue) {
-        queue.close();
-      }
+      queue.close();
     }
   }
 }
@@ -7,6 +7,10 @@
  *******************************************************************************/
 package com.google.eclipse.elt.emulator.textcanvas;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.eclipse.swt.widgets.Display;
 
 import com.google.eclipse.elt.emulator.model.ITerminalTextDataSnapshot;
@@ -14,14 +18,73 @@ import com.google.eclipse.elt.emulator.model.ITerminalTextDataSnapshot;
 public class PollingTextCanvasModel extends AbstractTextCanvasModel {
   private int pollInterval = 50;
 
+  private final RenderingGovernor governor;
+  private final Display display;
+
+  // Set while a frame requested by the governor is waiting to be painted.
+  private final AtomicBoolean framePending = new AtomicBoolean();
+
+  private final Runnable paintFrame = new Runnable() {
+    @Override public void run() {
+      framePending.set(false);
+      paintFrame();
+    }
+  };
+
+  private final Runnable scheduleFrame = new Runnable() {
+    @Override public void run() {
+      long delay = governor.nanosUntilNextFrame();
+      if (delay > 0) {
+        // Round up, so that the frame is never painted before the governor allows it.
+        display.timerExec((int) NANOSECONDS.toMillis(delay) + 1, paintFrame);
+      } else {
+        paintFrame.run();
+      }
+    }
+  };
+
   public PollingTextCanvasModel(ITerminalTextDataSnapshot snapshot) {
+    this(snapshot, new RenderingGovernor());
+  }
+
+  public PollingTextCanvasModel(ITerminalTextDataSnapshot snapshot, RenderingGovernor governor) {
     super(snapshot);
-    Display.getDefault().timerExec(pollInterval, new Runnable() {
+    this.governor = governor;
+    display = Display.getDefault();
+    governor.setFrameRequestListener(new Runnable() {
       @Override public void run() {
-        update();
-        Display.getDefault().timerExec(pollInterval, this);
+        requestFrame();
       }
     });
+    display.timerExec(pollInterval, new Runnable() {
+      @Override public void run() {
+        // Changes not reported by the governor (e.g. a blinking cursor) are picked up here, within the frame rate cap.
+        if (!framePending.get() && governor.nanosUntilNextFrame() <= 0) {
+          paintFrame();
+        }
+        display.timerExec(pollInterval, this);
+      }
+    });
+  }
+
+  // Called from the thread feeding the emulator when new input has been parsed.
+  private void requestFrame() {
+    if (framePending.compareAndSet(false, true)) {
+      if (display.isDisposed()) {
+        return;
+      }
+      display.asyncExec(scheduleFrame);
+    }
+  }
+
+  private void paintFrame() {
+    long start = System.nanoTime();
+    update();
+    long snapshotTime = getLastSnapshotTime();
+    if (snapshotTime >= 0) {
+      // The terminal changed: everything but taking the snapshot was painting.
+      governor.frameRendered(start, snapshotTime, System.nanoTime() - start - snapshotTime);
+    }
   }
 
   public void setUpdateInterval(int interval) {
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.textcanvas;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import static com.google.eclipse.elt.emulator.control.RenderingMode.*;
+
+import com.google.eclipse.elt.emulator.control.RenderingMode;
+
+/**
+ * Balances the time spent parsing the output of a terminal against the time spent painting it.
+ * <p>
+ * The governor measures how long each slice of parsing, each snapshot of the terminal model and each paint takes. In
+ * {@link RenderingMode#LOW_LATENCY low-latency} mode, input is parsed in short slices and a frame is requested as soon
+ * as a slice has been parsed, so that a keystroke echo is painted right away. In
+ * {@link RenderingMode#HIGH_THROUGHPUT high-throughput} mode, input is parsed in large batches and frames are painted
+ * at a capped rate; the rate is lowered further when painting is expensive, so that painting never takes more than a
+ * quarter of the UI thread. In {@link RenderingMode#AUTOMATIC automatic} mode, the governor switches to high-throughput
+ * mode when parsing cannot keep up with the input, and back to low-latency mode once the input has been quiet for a
+ * while.
+ * <p>
+ * Parsing is reported from the thread feeding the emulator, frames from the UI thread.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+public class RenderingGovernor {
+  /** Default maximum number of frames per second painted in high-throughput mode. */
+  public static final int DEFAULT_MAXIMUM_FRAME_RATE = 30;
+
+  /** Default maximum time, in milliseconds, spent parsing in one batch in high-throughput mode. */
+  public static final int DEFAULT_THROUGHPUT_PARSE_BUDGET = 50;
+
+  private static final long LOW_LATENCY_PARSE_SLICE = MILLISECONDS.toNanos(5);
+
+  // Parsing that keeps the emulator busy for more than a third of this window is considered a burst.
+  private static final long BURST_WINDOW = MILLISECONDS.toNanos(100);
+  private static final long QUIET_PERIOD = MILLISECONDS.toNanos(250);
+
+  // Painting may take at most 1 / PAINT_DUTY_CYCLE of the UI thread in high-throughput mode.
+  private static final int PAINT_DUTY_CYCLE = 4;
+
+  private volatile RenderingMode mode = AUTOMATIC;
+  private volatile long frameInterval = SECONDS.toNanos(1) / DEFAULT_MAXIMUM_FRAME_RATE;
+  private volatile long throughputParseSlice = MILLISECONDS.toNanos(DEFAULT_THROUGHPUT_PARSE_BUDGET);
+
+  // Parsing statistics, updated by the thread feeding the emulator.
+  private long burstWindowStart;
+  private long parseTimeInBurstWindow;
+  private volatile long lastBurst;
+  private volatile long averageParseTime;
+
+  // Frame statistics, updated by the UI thread.
+  private volatile long lastFrameStart;
+  private volatile long averageSnapshotTime;
+  private volatile long averagePaintTime;
+
+  private volatile Runnable frameRequestListener;
+
+  public RenderingGovernor() {
+    long now = System.nanoTime();
+    burstWindowStart = now;
+    lastBurst = now - QUIET_PERIOD;
+    lastFrameStart = now - frameInterval;
+  }
+
+  public RenderingMode getMode() {
+    return mode;
+  }
+
+  public void setMode(RenderingMode mode) {
+    this.mode = mode;
+  }
+
+  /**
+   * Returns the mode currently in effect, which is never {@link RenderingMode#AUTOMATIC}.
+   *
+   * @return the mode currently in effect.
+   */
+  public RenderingMode getEffectiveMode() {
+    RenderingMode current = mode;
+    if (current != AUTOMATIC) {
+      return current;
+    }
+    return (System.nanoTime() - lastBurst < QUIET_PERIOD) ? HIGH_THROUGHPUT : LOW_LATENCY;
+  }
+
+  public int getMaximumFrameRate() {
+    return (int) (SECONDS.toNanos(1) / frameInterval);
+  }
+
+  /**
+   * Sets the maximum number of frames per second painted in high-throughput mode.
+   *
+   * @param framesPerSecond the maximum frame rate.
+   * @throws IllegalArgumentException if the given frame rate is not positive.
+   */
+  public void setMaximumFrameRate(int framesPerSecond) {
+    if (framesPerSecond <= 0) {
+      throw new IllegalArgumentException("The frame rate should be greater than zero");
+    }
+    frameInterval = SECONDS.toNanos(1) / framesPerSecond;
+  }
+
+  public int getThroughputParseBudget() {
+    return (int) NANOSECONDS.toMillis(throughputParseSlice);
+  }
+
+  /**
+   * Sets the maximum time spent parsing in one batch in high-throughput mode.
+   *
+   * @param milliseconds the maximum time, in milliseconds.
+   * @throws IllegalArgumentException if the given time is not positive.
+   */
+  public void setThroughputParseBudget(int milliseconds) {
+    if (milliseconds <= 0) {
+      throw new IllegalArgumentException("The parse budget should be greater than zero");
+    }
+    throughputParseSlice = MILLISECONDS.toNanos(milliseconds);
+  }
+
+  /**
+   * Returns the average time, in nanoseconds, spent parsing one slice of input.
+   *
+   * @return the average time spent parsing one slice of input.
+   */
+  public long getAverageParseTime() {
+    return averageParseTime;
+  }
+
+  /**
+   * Returns the average time, in nanoseconds, spent taking a snapshot of the terminal model for one frame.
+   *
+   * @return the average time spent taking a snapshot of the terminal model.
+   */
+  public long getAverageSnapshotTime() {
+    return averageSnapshotTime;
+  }
+
+  /**
+   * Returns the average time, in nanoseconds, spent painting one frame.
+   *
+   * @return the average time spent painting one frame.
+   */
+  public long getAveragePaintTime() {
+    return averagePaintTime;
+  }
+
+  /**
+   * Sets the listener to notify when new input has been parsed and should be painted. The listener is notified from the
+   * thread feeding the emulator.
+   *
+   * @param listener the listener to notify.
+   */
+  public void setFrameRequestListener(Runnable listener) {
+    frameRequestListener = listener;
+  }
+
+  /**
+   * Returns the maximum time, in nanoseconds, the emulator should spend parsing before a frame may be painted.
+   *
+   * @return the maximum time to spend parsing one slice of input.
+   */
+  public long parseTimeSlice() {
+    return (getEffectiveMode() == HIGH_THROUGHPUT) ? throughputParseSlice : LOW_LATENCY_PARSE_SLICE;
+  }
+
+  /**
+   * Records that a slice of input has been parsed and requests a frame. Must only be called by the thread feeding the
+   * emulator.
+   *
+   * @param elapsedNanos the time spent parsing, in nanoseconds.
+   * @param sliceExpired whether parsing stopped because the time slice elapsed, i.e. more input is waiting.
+   */
+  public void parseFinished(long elapsedNanos, boolean sliceExpired) {
+    averageParseTime = average(averageParseTime, elapsedNanos);
+    long now = System.nanoTime();
+    if (now - burstWindowStart > BURST_WINDOW) {
+      burstWindowStart = now;
+      parseTimeInBurstWindow = 0;
+    }
+    parseTimeInBurstWindow += elapsedNanos;
+    if (sliceExpired || parseTimeInBurstWindow > BURST_WINDOW / 3) {
+      lastBurst = now;
+    }
+    Runnable listener = frameRequestListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Returns how long to wait, in nanoseconds, before painting the next frame.
+   *
+   * @return how long to wait before painting the next frame, zero or negative to paint it right away.
+   */
+  public long nanosUntilNextFrame() {
+    if (getEffectiveMode() == LOW_LATENCY) {
+      return 0;
+    }
+    return lastFrameStart + frameInterval() - System.nanoTime();
+  }
+
+  /**
+   * Returns the minimum time, in nanoseconds, between two frames, which is zero in low-latency mode. Changes held back
+   * while jump scrolling should be released at least this often.
+   *
+   * @return the minimum time between two frames.
+   */
+  public long frameInterval() {
+    if (getEffectiveMode() == LOW_LATENCY) {
+      return 0;
+    }
+    return Math.max(frameInterval, PAINT_DUTY_CYCLE * (averageSnapshotTime + averagePaintTime));
+  }
+
+  /**
+   * Records that a frame has been painted. Must only be called by the UI thread.
+   *
+   * @param startNanos when the frame started, as returned by {@link System#nanoTime()}.
+   * @param snapshotNanos the time spent taking a snapshot of the terminal model, in nanoseconds.
+   * @param paintNanos the time spent painting, in nanoseconds.
+   */
+  public void frameRendered(long startNanos, long snapshotNanos, long paintNanos) {
+    lastFrameStart = startNanos;
+    averageSnapshotTime = average(averageSnapshotTime, snapshotNanos);
+    averagePaintTime = average(averagePaintTime, paintNanos);
+  }
+
+  // Exponential moving average giving a weight of 1/8 to the latest sample.
+  private static long average(long average, long sample) {
+    return average + ((sample - average) >> 3);
+  }
+}
@@ -7,6 +7,8 @@
  *******************************************************************************/
 package com.google.eclipse.elt.emulator.textcanvas;
 
+import static com.google.eclipse.elt.emulator.model.StyleColor.*;
+
 import java.util.*;
 
 import org.eclipse.jface.resource.*;
@@ -14,25 +16,35 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.*;
 import org.eclipse.swt.widgets.Display;
 
-import com.google.eclipse.elt.emulator.model.*;
+import com.google.eclipse.elt.emulator.model.Style;
 
 public class StyleMap {
-  private static final String BLACK = "black";
-  private static final String WHITE = "white";
-  private static final String WHITE_FOREGROUND = "white_foreground";
-  private static final String GRAY = "gray";
-  private static final String MAGENTA = "magenta";
-  private static final String CYAN = "cyan";
-  private static final String YELLOW = "yellow";
-  private static final String BLUE = "blue";
-  private static final String GREEN = "green";
-  private static final String RED = "red";
-
   private static final String PREFIX = "org.eclipse.tm.internal.";
 
-  private final Map<StyleColor, Color> colorMapForeground = new HashMap<StyleColor, Color>();
-  private final Map<StyleColor, Color> colorMapBackground = new HashMap<StyleColor, Color>();
-  private final Map<StyleColor, Color> colorMapIntense = new HashMap<StyleColor, Color>();
+  // The levels of red, green and blue of the 6x6x6 color cube of the 256-color palette.
+  private static final int[] COLOR_CUBE_LEVELS = { 0, 95, 135, 175, 215, 255 };
+
+  // The number of 24-bit colors kept. A line is drawn with at most two colors per segment, and a color is looked up
+  // right before it is set on the GC, so evicting the least recently used one never disposes a color being drawn with.
+  private static final int MAX_RGB_COLORS = 256;
+
+  // The 256-color palette. The foreground and background versions only differ in black and white.
+  private final Color[] foregroundPalette = new Color[256];
+  private final Color[] backgroundPalette = new Color[256];
+  // Bold black text, which is not drawn with bright black.
+  private Color boldBlack;
+
+  // The most recently used 24-bit colors, by packed color. Unlike the palette, they are not put in the color registry:
+  // they are owned by this map, and disposed when evicted.
+  private final Map<Integer, Color> rgbColors = new LinkedHashMap<Integer, Color>(16, 0.75f, true) {
+    @Override protected boolean removeEldestEntry(Map.Entry<Integer, Color> eldest) {
+      if (size() <= MAX_RGB_COLORS) {
+        return false;
+      }
+      eldest.getValue().dispose();
+      return true;
+    }
+  };
 
   private Point charSize;
 
@@ -52,103 +64,98 @@ public class StyleMap {
   }
 
   private void initColors() {
-    initForegroundColors();
-    initBackgroundColors();
-    initIntenseColors();
-  }
-
-  private void initForegroundColors() {
-    if (invertColors) {
-      setColor(colorMapForeground, WHITE, 0, 0, 0);
-      setColor(colorMapForeground, WHITE_FOREGROUND, 50, 50, 50);
-      setColor(colorMapForeground, BLACK, 229, 229, 229);
-    } else {
-      setColor(colorMapForeground, WHITE, 255, 255, 255);
-      setColor(colorMapForeground, WHITE_FOREGROUND, 229, 229, 229);
-      setColor(colorMapForeground, BLACK, 50, 50, 50);
+    initAnsiColors();
+    for (int i = 16; i < 232; i++) {
+      int cubeIndex = i - 16;
+      int red = COLOR_CUBE_LEVELS[cubeIndex / 36];
+      int green = COLOR_CUBE_LEVELS[(cubeIndex / 6) % 6];
+      int blue = COLOR_CUBE_LEVELS[cubeIndex % 6];
+      setColor(i, red, green, blue);
     }
-    setColor(colorMapForeground, RED, 205, 0, 0);
-    setColor(colorMapForeground, GREEN, 0, 205, 0);
-    setColor(colorMapForeground, BLUE, 0, 0, 238);
-    setColor(colorMapForeground, YELLOW, 205, 205, 0);
-    setColor(colorMapForeground, CYAN, 0, 205, 205);
-    setColor(colorMapForeground, MAGENTA, 205, 0, 205);
-    setColor(colorMapForeground, GRAY, 229, 229, 229);
-  }
-
-  private void initBackgroundColors() {
-    if (invertColors) {
-      setColor(colorMapBackground, WHITE, 0, 0, 0);
-      setColor(colorMapBackground, WHITE_FOREGROUND, 50, 50, 50); // only used when colors are inverse
-      setColor(colorMapBackground, BLACK, 255, 255, 255); // cursor color
-    } else {
-      setColor(colorMapBackground, WHITE, 255, 255, 255);
-      setColor(colorMapBackground, WHITE_FOREGROUND, 229, 229, 229);
-      setColor(colorMapBackground, BLACK, 0, 0, 0);
+    for (int i = 232; i < 256; i++) {
+      int level = 8 + (i - 232) * 10;
+      setColor(i, level, level, level);
     }
-    setColor(colorMapBackground, RED, 205, 0, 0);
-    setColor(colorMapBackground, GREEN, 0, 205, 0);
-    setColor(colorMapBackground, BLUE, 0, 0, 238);
-    setColor(colorMapBackground, YELLOW, 205, 205, 0);
-    setColor(colorMapBackground, CYAN, 0, 205, 205);
-    setColor(colorMapBackground, MAGENTA, 205, 0, 205);
-    setColor(colorMapBackground, GRAY, 229, 229, 229);
   }
 
-  private void initIntenseColors() {
+  private void initAnsiColors() {
     if (invertColors) {
-      setColor(colorMapIntense, WHITE, 127, 127, 127);
-      setColor(colorMapIntense, WHITE_FOREGROUND, 0, 0, 0); // only used when colors are inverse
-      setColor(colorMapIntense, BLACK, 255, 255, 255);
+      setColors(0, 229, 229, 229, 255, 255, 255); // the background one is the cursor color
+      setColors(7, 50, 50, 50, 0, 0, 0);
+      setColor(8, 127, 127, 127);
+      setColor(15, 0, 0, 0);
+      boldBlack = getColor(new RGB(255, 255, 255));
     } else {
-      setColor(colorMapIntense, WHITE, 255, 255, 255);
-      setColor(colorMapIntense, WHITE_FOREGROUND, 255, 255, 255);
-      setColor(colorMapIntense, BLACK, 0, 0, 0);
+      setColors(0, 50, 50, 50, 0, 0, 0);
+      setColors(7, 229, 229, 229, 255, 255, 255);
+      setColor(8, 127, 127, 127);
+      setColor(15, 255, 255, 255);
+      boldBlack = getColor(new RGB(0, 0, 0));
     }
-    setColor(colorMapIntense, RED, 255, 0, 0);
-    setColor(colorMapIntense, GREEN, 0, 255, 0);
-    setColor(colorMapIntense, BLUE, 92, 92, 255);
-    setColor(colorMapIntense, YELLOW, 255, 255, 0);
-    setColor(colorMapIntense, CYAN, 0, 255, 255);
-    setColor(colorMapIntense, MAGENTA, 255, 0, 255);
-    setColor(colorMapIntense, GRAY, 255, 255, 255);
+    setColor(1, 205, 0, 0);
+    setColor(2, 0, 205, 0);
+    setColor(3, 205, 205, 0);
+    setColor(4, 0, 0, 238);
+    setColor(5, 205, 0, 205);
+    setColor(6, 0, 205, 205);
+    // The bright colors, also used for bold text.
+    setColor(9, 255, 0, 0);
+    setColor(10, 0, 255, 0);
+    setColor(11, 255, 255, 0);
+    setColor(12, 92, 92, 255);
+    setColor(13, 255, 0, 255);
+    setColor(14, 0, 255, 255);
   }
 
-  private void setColor(Map<StyleColor, Color> colorMap, String name, int r, int g, int b) {
+  private void setColor(int index, int r, int g, int b) {
     Color color = getColor(new RGB(r, g, b));
-    setColor(colorMap, color, StyleColor.getStyleColor(name));
-    setColor(colorMap, color, StyleColor.getStyleColor(name.toUpperCase()));
+    foregroundPalette[index] = color;
+    backgroundPalette[index] = color;
   }
 
-  private void setColor(Map<StyleColor, Color> colorMap, Color color, StyleColor styleColor) {
-    if (styleColor != null) {
-      colorMap.put(styleColor, color);
-    }
+  private void setColors(int index, int foregroundR, int foregroundG, int foregroundB, int backgroundR,
+      int backgroundG, int backgroundB) {
+    foregroundPalette[index] = getColor(new RGB(foregroundR, foregroundG, foregroundB));
+    backgroundPalette[index] = getColor(new RGB(backgroundR, backgroundG, backgroundB));
   }
 
   public Color getForegroundColor(Style style) {
     if (style == null) {
       return foreground;
     }
-    StyleColor color = style.isReverse() ? style.getBackground() : style.getForeground();
-    Map<StyleColor, Color> map = style.isBold() ? colorMapIntense : colorMapForeground;
-    Color actualColor = map.get(color);
-    if (actualColor == null) {
-      actualColor = foreground;
+    int color = style.isReverse() ? style.getBackground() : style.getForeground();
+    if (style.isBold() && isIndexed(color) && getIndex(color) < 8) {
+      // Bold text is drawn with the bright version of the ANSI colors, except black, which is not drawn gray.
+      if (getIndex(color) == 0) {
+        return boldBlack;
+      }
+      color = indexed(getIndex(color) + 8);
     }
-    return actualColor;
+    return resolveColor(color, foregroundPalette, foreground);
   }
 
   public Color getBackgroundColor(Style style) {
     if (style == null) {
       return background;
     }
-    StyleColor color = style.isReverse() ? style.getForeground() : style.getBackground();
-    Color actualColor = colorMapBackground.get(color);
-    if (actualColor == null) {
-      actualColor = background;
+    int color = style.isReverse() ? style.getForeground() : style.getBackground();
+    return resolveColor(color, backgroundPalette, background);
+  }
+
+  private Color resolveColor(int color, Color[] palette, Color defaultColor) {
+    if (isIndexed(color)) {
+      return palette[getIndex(color)];
+    }
+    if (isRgb(color)) {
+      Integer key = color;
+      Color actualColor = rgbColors.get(key);
+      if (actualColor == null) {
+        actualColor = new Color(Display.getCurrent(), getRed(color), getGreen(color), getBlue(color));
+        rgbColors.put(key, actualColor);
+      }
+      return actualColor;
     }
-    return actualColor;
+    return defaultColor;
   }
 
   public void setInvertedColors(boolean invert) {
@@ -262,4 +269,14 @@ public class StyleMap {
     this.font = font;
     updateFont();
   }
+
+  /**
+   * Disposes the 24-bit colors created by this map. The palette colors belong to the color registry.
+   */
+  public void dispose() {
+    for (Color color : rgbColors.values()) {
+      color.dispose();
+    }
+    rgbColors.clear();
+  }
 }
@@ -69,6 +69,10 @@ public class TextCanvas extends GridCanvas {
         repaintRange(col, line, width, height);
       }
 
+      @Override public void rangeScrolled(int line, int height, int shift) {
+        scrollRange(line, height, shift);
+      }
+
       @Override public void dimensionsChanged(int cols, int rows) {
         calculateGrid();
       }
@@ -128,6 +132,11 @@ public class TextCanvas extends GridCanvas {
         }
       }
     });
+    addDisposeListener(new DisposeListener() {
+      @Override public void widgetDisposed(DisposeEvent e) {
+        TextCanvas.this.cellRenderer.dispose();
+      }
+    });
     serVerticalBarVisible(true);
     setHorizontalBarVisible(false);
   }
@@ -276,6 +285,44 @@ public class TextCanvas extends GridCanvas {
     repaint(r);
   }
 
+  // Moves the lines of the given range that are visible both before and after the move by copying their pixels, and
+  // repaints the other lines of the range.
+  protected void scrollRange(int line, int height, int shift) {
+    if (isDisposed()) {
+      return;
+    }
+    int cellHeight = getCellHeight();
+    if (cellHeight <= 0) {
+      repaintRange(0, line, getCols(), height);
+      return;
+    }
+    // The rows that are completely inside the client area.
+    Point origin = cellToOriginOnScreen(0, 0);
+    int visibleFirst = (-origin.y + cellHeight - 1) / cellHeight;
+    int visibleLast = (getClientArea().height - origin.y) / cellHeight - 1;
+    // The lines whose text stays in the range, before the move.
+    int first = shift > 0 ? line : line - shift;
+    int last = shift > 0 ? line + height - 1 - shift : line + height - 1;
+    // ...that are visible before and after the move.
+    first = Math.max(first, Math.max(visibleFirst, visibleFirst - shift));
+    last = Math.min(last, Math.min(visibleLast, visibleLast - shift));
+    if (first > last) {
+      repaintRange(0, line, getCols(), height);
+      return;
+    }
+    Point source = cellToOriginOnScreen(0, first);
+    Point destination = cellToOriginOnScreen(0, first + shift);
+    scroll(destination.x, destination.y, source.x, source.y, getCols() * getCellWidth(), (last - first + 1) * cellHeight,
+        false);
+    // The lines that did not receive text from the copy.
+    if (first + shift > line) {
+      repaintRange(0, line, getCols(), first + shift - line);
+    }
+    if (last + shift < line + height - 1) {
+      repaintRange(0, last + shift + 1, getCols(), line + height - 1 - (last + shift));
+    }
+  }
+
   @Override protected void drawLine(GC gc, int line, int x, int y, int colFirst, int colLast) {
     cellRenderer.drawLine(cellCanvasModel, gc, line, x, y, colFirst, colLast);
   }
@@ -163,7 +163,6 @@ public class TextLineRenderer implements ILineRenderer {
 
   @Override public void setInvertedColors(boolean invert) {
     styleMap.setInvertedColors(invert);
-
   }
 
   @Override public void setColors(RGB background, RGB foreground) {
@@ -173,4 +172,8 @@ public class TextLineRenderer implements ILineRenderer {
   @Override public void setFont(Font font) {
     styleMap.setFont(font);
   }
+
+  @Override public void dispose() {
+    styleMap.dispose();
+  }
 }
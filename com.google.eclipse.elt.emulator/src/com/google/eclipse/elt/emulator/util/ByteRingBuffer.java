@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.emulator.util;
+
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded byte ring buffer shared by exactly one producer thread and one consumer thread.
+ * <p>
+ * No monitor is taken: each side owns its own position counter and only reads the other side's counter. A thread
+ * parks only when it finds the buffer empty (consumer) or full (producer), and is unparked by the other side only if it
+ * is actually parked. Reads and writes move as many bytes as possible with at most two array copies.
+ * <p>
+ * Callers must guarantee that at most one thread writes and at most one thread reads at any given time.
+ */
+public class ByteRingBuffer {
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  private final byte[] buffer;
+  private final int mask;
+
+  // Total number of bytes ever written (updated by the producer only) and read (updated by the consumer only.)
+  private final AtomicLong writeCount = new AtomicLong();
+  private final AtomicLong readCount = new AtomicLong();
+
+  private volatile Thread parkedReader;
+  private volatile Thread parkedWriter;
+  private volatile boolean closed;
+  private volatile Runnable dataListener;
+  private final AtomicReference<Runnable> writableListener = new AtomicReference<Runnable>();
+
+  /**
+   * Creates a new {@link ByteRingBuffer}.
+   *
+   * @param capacity the minimum capacity of the buffer, rounded up to the next power of two.
+   * @throws IllegalArgumentException if the given capacity is not positive or too large.
+   */
+  public ByteRingBuffer(int capacity) {
+    if (capacity <= 0 || capacity > MAXIMUM_CAPACITY) {
+      throw new IllegalArgumentException("Capacity should be between 1 and " + MAXIMUM_CAPACITY);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    buffer = new byte[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Sets the listener to notify, on the producer thread, every time new bytes become available for reading. This lets
+   * a consumer be scheduled on demand instead of waiting in {@link #read(byte[], int, int)}.
+   *
+   * @param listener the listener to notify, or {@code null} to remove it.
+   */
+  public void setDataListener(Runnable listener) {
+    dataListener = listener;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * Returns the number of bytes that can be read without blocking.
+   *
+   * @return the number of bytes available for reading.
+   */
+  public int size() {
+    return (int) (writeCount.get() - readCount.get());
+  }
+
+  public int getFreeSlots() {
+    return buffer.length - size();
+  }
+
+  /**
+   * Writes the given bytes, blocking while the buffer is full. Must only be called by the producer thread.
+   *
+   * @param b the bytes to write.
+   * @param off the start offset in {@code b}.
+   * @param len the number of bytes to write.
+   * @return the number of bytes written, which is less than {@code len} only if the buffer was closed, or if the thread
+   * was interrupted while waiting for the buffer to have free slots; the interrupt status of the thread is then set.
+   */
+  public int write(byte[] b, int off, int len) {
+    int written = 0;
+    while (written < len) {
+      int n = offer(b, off + written, len - written);
+      if (n > 0) {
+        written += n;
+      } else if (closed || !awaitFreeSlots()) {
+        return written;
+      }
+    }
+    return written;
+  }
+
+  /**
+   * Writes as many of the given bytes as fit in the buffer, without blocking. Must only be called by the producer
+   * thread.
+   *
+   * @param b the bytes to write.
+   * @param off the start offset in {@code b}.
+   * @param len the number of bytes to write.
+   * @return the number of bytes written, which is less than {@code len} if the buffer is full or closed.
+   */
+  public int offer(byte[] b, int off, int len) {
+    long position = writeCount.get();
+    int free = buffer.length - (int) (position - readCount.get());
+    if (closed || free == 0 || len == 0) {
+      return 0;
+    }
+    int n = min(free, len);
+    int start = (int) position & mask;
+    int firstChunk = min(n, buffer.length - start);
+    System.arraycopy(b, off, buffer, start, firstChunk);
+    if (firstChunk < n) {
+      System.arraycopy(b, off + firstChunk, buffer, 0, n - firstChunk);
+    }
+    writeCount.set(position + n);
+    unpark(parkedReader);
+    notifyDataListener();
+    return n;
+  }
+
+  /**
+   * Notifies the given listener once, when at least half of the buffer is free or the buffer is closed. The listener is
+   * usually notified on the consumer thread, right after it read; it is notified right away, on the calling thread, if
+   * the buffer already has enough room. This lets a producer that must not block, and got a short write from
+   * {@link #offer(byte[], int, int)}, find out when to write the rest.
+   *
+   * @param listener the listener to notify.
+   */
+  public void notifyWhenWritable(Runnable listener) {
+    writableListener.set(listener);
+    // Check again after publishing the listener: the consumer may have freed slots before it could see it.
+    if (hasRoomForWritableListener()) {
+      notifyWritableListener();
+    }
+  }
+
+  private boolean hasRoomForWritableListener() {
+    return closed || getFreeSlots() >= buffer.length / 2;
+  }
+
+  private void notifyWritableListener() {
+    Runnable listener = writableListener.getAndSet(null);
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  // Returns false if the thread was interrupted, keeping its interrupt status.
+  private boolean awaitFreeSlots() {
+    parkedWriter = Thread.currentThread();
+    try {
+      // Check again after publishing ourselves: the consumer may have freed slots before it could see us.
+      if (getFreeSlots() == 0 && !closed) {
+        LockSupport.park(this);
+      }
+    } finally {
+      parkedWriter = null;
+    }
+    return !Thread.currentThread().isInterrupted();
+  }
+
+  /**
+   * Reads up to {@code len} bytes, blocking until at least one byte is available. Must only be called by the consumer
+   * thread.
+   *
+   * @param b the buffer to read into.
+   * @param off the start offset in {@code b}.
+   * @param len the maximum number of bytes to read.
+   * @return the number of bytes read, or -1 if the buffer is closed and empty.
+   * @throws InterruptedException when the thread is interrupted while waiting for the buffer to become ready.
+   */
+  public int read(byte[] b, int off, int len) throws InterruptedException {
+    if (len == 0) {
+      return 0;
+    }
+    int available;
+    while ((available = size()) == 0) {
+      if (closed) {
+        // The producer may have written a last chunk right before closing.
+        if ((available = size()) == 0) {
+          return -1;
+        }
+        break;
+      }
+      awaitData(0);
+    }
+    long position = readCount.get();
+    int n = min(available, len);
+    int start = (int) position & mask;
+    int firstChunk = min(n, buffer.length - start);
+    System.arraycopy(buffer, start, b, off, firstChunk);
+    if (firstChunk < n) {
+      System.arraycopy(buffer, 0, b, off + firstChunk, n - firstChunk);
+    }
+    readCount.set(position + n);
+    unpark(parkedWriter);
+    if (writableListener.get() != null && hasRoomForWritableListener()) {
+      notifyWritableListener();
+    }
+    return n;
+  }
+
+  /**
+   * Waits until data is available for reading, the buffer is closed or the given time elapses. Must only be called by
+   * the consumer thread.
+   *
+   * @param timeout the maximum time to wait, in milliseconds, or zero to wait without a time limit.
+   * @throws InterruptedException when the thread is interrupted while waiting for the buffer to become ready.
+   */
+  public void awaitData(long timeout) throws InterruptedException {
+    long deadline = (timeout > 0) ? System.nanoTime() + MILLISECONDS.toNanos(timeout) : 0;
+    parkedReader = Thread.currentThread();
+    try {
+      // Check again after publishing ourselves: the producer may have written before it could see us.
+      while (size() == 0 && !closed) {
+        if (timeout <= 0) {
+          LockSupport.park(this);
+        } else {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            break;
+          }
+          LockSupport.parkNanos(this, remaining);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+          break;
+        }
+      }
+    } finally {
+      parkedReader = null;
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  private void notifyDataListener() {
+    Runnable listener = dataListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  private void unpark(Thread thread) {
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * Closes this buffer. Bytes already written can still be read; waiting threads and listeners are woken up.
+   */
+  public void close() {
+    closed = true;
+    unpark(parkedReader);
+    unpark(parkedWriter);
+    notifyWritableListener();
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+}
@@ -15,14 +15,6 @@ extern "C" {
 JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_spawner_SpawnerOutputStream_write0
   (JNIEnv *, jobject, jint, jbyteArray, jint);
 
-/*
- * Class:     org_eclipse_cdt_utils_spawner_SpawnerOutputStream
- * Method:    close0
- * Signature: (I)I
- */
-JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_spawner_SpawnerOutputStream_close0
-  (JNIEnv *, jobject, jint);
-
 #ifdef __cplusplus
 }
 #endif
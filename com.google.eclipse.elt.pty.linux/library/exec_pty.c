@@ -21,17 +21,62 @@
 #include <libgen.h>
 #include <stdlib.h>
 #include <termios.h>
+#include <fcntl.h>
+#include <signal.h>
+#include <pthread.h>
+#include <sys/ioctl.h>
+#if defined(__linux__)
+#include <sys/syscall.h>
+#if !defined(SYS_close_range)
+#define SYS_close_range 436
+#endif
+#endif
 
 /* from pfind.c */
 extern char *pfind(const char *name, char * const envp[]);
 
+/*
+ * The child is started with vfork(): it borrows the address space of the JVM until it calls exec, so starting it
+ * does not depend on the size of the Java heap. Until exec, the child must only make system calls: no stdio, no
+ * malloc, and no returning from this function. Everything that can be done in the parent (finding the program,
+ * opening the slave side of the pseudo terminal) is done before vfork().
+ */
+
+/* Reports an error from the child and exits; the child must never return. */
+static void
+child_fail(const char *message)
+{
+	write(STDERR_FILENO, message, strlen(message));
+	write(STDERR_FILENO, "\n", 1);
+	_exit(127);
+}
+
+/* Closes every file descriptor from lowfd up, without visiting each possible descriptor when the kernel allows. */
+static void
+close_from(int lowfd, int fdlimit)
+{
+	int fd;
+
+#if defined(__linux__)
+	/* close_range(2) is available since Linux 5.9. */
+	if (syscall(SYS_close_range, lowfd, ~0U, 0) == 0)
+		return;
+#endif
+	for (fd = lowfd; fd < fdlimit; fd++)
+		close(fd);
+}
+
 pid_t
 exec_pty(const char *path, char *const argv[], char *const envp[],
       const char *dirpath, int channels[3], const char *pts_name, int fdm, int console)
 {
 	int pipe2[2];
+	int fds = -1;
+	int fdlimit;
+	int sig;
 	pid_t childpid;
 	char *full_path;
+	sigset_t all_signals, old_mask;
 
 	/*
 	 * We use pfind() to check that the program exists and is an executable.
@@ -54,44 +99,76 @@ exec_pty(const char *path, char *const argv[], char *const envp[],
 		}
 	}
 
-	childpid = fork();
+	/*
+	 * Open the slave in the parent. O_NOCTTY keeps it from becoming the controlling terminal of the JVM; the child
+	 * makes it its own controlling terminal. FD_CLOEXEC keeps other processes started by the JVM from inheriting it.
+	 */
+	if (channels != NULL) {
+		fds = open(pts_name, O_RDWR | O_NOCTTY);
+		if (fds < 0) {
+			fprintf(stderr, "%s(%d): returning due to error: %s\n", __FUNCTION__, __LINE__, strerror(errno));
+			if (console) {
+				close(pipe2[0]);
+				close(pipe2[1]);
+			}
+			free(full_path);
+			return -1;
+		}
+		fcntl(fds, F_SETFD, FD_CLOEXEC);
+		if (console) {
+			set_noecho(fds);
+		}
+	}
+
+	fdlimit = sysconf(_SC_OPEN_MAX);
+
+	/* No JVM signal handler may run in the child while it shares the address space of the JVM. */
+	sigfillset(&all_signals);
+	pthread_sigmask(SIG_SETMASK, &all_signals, &old_mask);
+
+	childpid = vfork();
 
 	if (childpid < 0) {
+		pthread_sigmask(SIG_SETMASK, &old_mask, NULL);
 		fprintf(stderr, "%s(%d): returning due to error: %s\n", __FUNCTION__, __LINE__, strerror(errno));
+		if (fds >= 0)
+			close(fds);
+		if (channels != NULL && console) {
+			close(pipe2[0]);
+			close(pipe2[1]);
+		}
 		free(full_path);
 		return -1;
 	} else if (childpid == 0) { /* child */
 
+		/* Signals caught by the JVM get their default action; signals it ignores stay ignored. */
+		for (sig = 1; sig < NSIG; sig++) {
+			struct sigaction action;
+			if (sigaction(sig, NULL, &action) == 0 && action.sa_handler != SIG_IGN
+					&& action.sa_handler != SIG_DFL) {
+				action.sa_handler = SIG_DFL;
+				action.sa_flags = 0;
+				sigaction(sig, &action, NULL);
+			}
+		}
+		sigprocmask(SIG_SETMASK, &old_mask, NULL);
+
 		chdir(dirpath);
 
 		if (channels != NULL) {
-			int fds;
-
 			if (!console && setsid() < 0) {
-				perror("setsid()");
-				return -1;
+				child_fail("setsid() failed");
 			}
 
-			fds = ptys_open(fdm, pts_name);
-			if (fds < 0) {
-				fprintf(stderr, "%s(%d): returning due to error: %s\n", __FUNCTION__, __LINE__, strerror(errno));
-				return -1;
+#if	defined(TIOCSCTTY)
+			/* Make the slave the controlling terminal of the new session. */
+			if (ioctl(fds, TIOCSCTTY, (char *)0) < 0) {
+				// ignore error: this is expected in console-mode
 			}
+#endif
 
-			/* Close the read end of pipe2 */
-			if (console && close(pipe2[0]) == -1) {
-				perror("close(pipe2[0]))");
-			}
-
-			/* close the master, no need in the child */
-			close(fdm);
-
-			if (console) {
-				set_noecho(fds);
-				if (setpgid(getpid(), getpid()) < 0) {
-					perror("setpgid()");
-					return -1;
-				}
+			if (console && setpgid(0, 0) < 0) {
+				child_fail("setpgid() failed");
 			}
 
 			/* redirections */
@@ -102,17 +179,10 @@ exec_pty(const char *path, char *const argv[], char *const envp[],
 			} else {
 				dup2(fds, STDERR_FILENO);  /* dup stderr */
 			}
-			close(fds);  /* done with fds. */
 		}
 
-		/* Close all the fd's in the child */
-		{
-			int fdlimit = sysconf(_SC_OPEN_MAX);
-			int fd = 3;
-
-			while (fd < fdlimit)
-				close(fd++);
-		}
+		/* Close all the fd's in the child, including the master, the slave and the pipe. */
+		close_from(3, fdlimit);
 
 		if (envp[0] == NULL) {
 			execv(full_path, argv);
@@ -123,6 +193,11 @@ exec_pty(const char *path, char *const argv[], char *const envp[],
 		_exit(127);
 
 	} else if (childpid != 0) { /* parent */
+		/* The child has either called exec or exited: the address space is ours again. */
+		pthread_sigmask(SIG_SETMASK, &old_mask, NULL);
+		if (fds >= 0) {
+			close(fds);
+		}
 		if (console) {
 			set_noecho(fdm);
 		}
@@ -66,7 +66,7 @@ Java_org_eclipse_cdt_utils_spawner_SpawnerInputStream_read0(JNIEnv * env,
  */
 JNIEXPORT jint JNICALL
 Java_org_eclipse_cdt_utils_spawner_SpawnerInputStream_close0(JNIEnv * env,
-                                                           jobject jobj,
+                                                           jclass cls,
                                                            jint fd)
 {
     return close(fd);
@@ -98,17 +98,3 @@ Java_org_eclipse_cdt_utils_spawner_SpawnerOutputStream_write0(JNIEnv * env,
 
     return status;
 }
-
-
-/*
- * Class:     org_eclipse_cdt_utils_spawner_SpawnerOutputStream
- * Method:    close0
- * Signature: (I)I
- */
-JNIEXPORT jint JNICALL
-Java_org_eclipse_cdt_utils_spawner_SpawnerOutputStream_close0(JNIEnv * env,
-                                                            jobject jobj,
-                                                            jint fd)
-{
-    return close(fd);
-}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Google Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+#include <jni.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <stdint.h>
+#include <unistd.h>
+#include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <PtyReactor.h>
+
+#define MAX_EVENTS com_google_eclipse_elt_pty_PtyReactor_MAX_EVENTS
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    create0
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_create0(JNIEnv * env,
+                                                   jclass cls)
+{
+    int epfd = epoll_create(MAX_EVENTS);
+    if (epfd == -1) {
+        jclass exception = (*env)->FindClass(env, "java/io/IOException");
+        if (exception != NULL) {
+            (*env)->ThrowNew(env, exception, "epoll_create failed");
+        }
+        return -1;
+    }
+    fcntl(epfd, F_SETFD, FD_CLOEXEC);
+    return epfd;
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    add0
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_add0(JNIEnv * env,
+                                                jclass cls,
+                                                jint epfd,
+                                                jint fd,
+                                                jint token)
+{
+    struct epoll_event event;
+    event.events = EPOLLIN;
+    event.data.u64 = 0;
+    event.data.u32 = (unsigned int) token;
+    return epoll_ctl(epfd, EPOLL_CTL_ADD, fd, &event);
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    remove0
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_remove0(JNIEnv * env,
+                                                   jclass cls,
+                                                   jint epfd,
+                                                   jint fd)
+{
+    struct epoll_event event; /* Ignored, but must not be NULL before Linux 2.6.9. */
+    return epoll_ctl(epfd, EPOLL_CTL_DEL, fd, &event);
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    createWakeup0
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_createWakeup0(JNIEnv * env,
+                                                         jclass cls,
+                                                         jint epfd,
+                                                         jint token)
+{
+    struct epoll_event event;
+    int fd = eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+    if (fd == -1) {
+        return -1;
+    }
+    event.events = EPOLLIN;
+    event.data.u64 = 0;
+    event.data.u32 = (unsigned int) token;
+    if (epoll_ctl(epfd, EPOLL_CTL_ADD, fd, &event) == -1) {
+        close(fd);
+        return -1;
+    }
+    return fd;
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    wakeup0
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_wakeup0(JNIEnv * env,
+                                                   jclass cls,
+                                                   jint fd)
+{
+    uint64_t value = 1;
+    /* The counter only overflows after 2^64 - 2 wake-ups that were never cleared. */
+    return (write(fd, &value, sizeof(value)) == sizeof(value)) ? 0 : -1;
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    clearWakeup0
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_clearWakeup0(JNIEnv * env,
+                                                        jclass cls,
+                                                        jint fd)
+{
+    uint64_t value;
+    /* Resets the counter; fails with EAGAIN if there was no wake-up. */
+    return (read(fd, &value, sizeof(value)) == sizeof(value)) ? 0 : -1;
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    wait0
+ * Signature: (I[II)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_wait0(JNIEnv * env,
+                                                 jclass cls,
+                                                 jint epfd,
+                                                 jintArray tokens,
+                                                 jint timeout)
+{
+    struct epoll_event events[MAX_EVENTS];
+    jint ready[MAX_EVENTS];
+    int max = (*env)->GetArrayLength(env, tokens);
+    int count;
+    int i;
+
+    if (max > MAX_EVENTS) {
+        max = MAX_EVENTS;
+    }
+    count = epoll_wait(epfd, events, max, timeout);
+    if (count == -1) {
+        return (errno == EINTR) ? 0 : -1;
+    }
+    for (i = 0; i < count; i++) {
+        /* Errors and hang-ups are reported as readable: the following read reports them. */
+        ready[i] = (jint) events[i].data.u32;
+    }
+    (*env)->SetIntArrayRegion(env, tokens, 0, count, ready);
+    return count;
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Google Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+#include <jni.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <stdint.h>
+#include <unistd.h>
+#include <sys/epoll.h>
+#include <sys/syscall.h>
+#include <ProcessReaper.h>
+
+#ifndef SYS_pidfd_open
+#define SYS_pidfd_open 434
+#endif
+
+#define MAX_EVENTS org_eclipse_cdt_utils_spawner_ProcessReaper_MAX_EVENTS
+#define WATCHING org_eclipse_cdt_utils_spawner_ProcessReaper_WATCHING
+
+/*
+ * Class:     org_eclipse_cdt_utils_spawner_ProcessReaper
+ * Method:    create0
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_spawner_ProcessReaper_create0(JNIEnv * env,
+                                                         jclass cls)
+{
+    int epfd = epoll_create(MAX_EVENTS);
+    if (epfd == -1) {
+        jclass exception = (*env)->FindClass(env, "java/io/IOException");
+        if (exception != NULL) {
+            (*env)->ThrowNew(env, exception, "epoll_create failed");
+        }
+        return -1;
+    }
+    fcntl(epfd, F_SETFD, FD_CLOEXEC);
+    return epfd;
+}
+
+/*
+ * Class:     org_eclipse_cdt_utils_spawner_ProcessReaper
+ * Method:    watch0
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_spawner_ProcessReaper_watch0(JNIEnv * env,
+                                                        jclass cls,
+                                                        jint epfd,
+                                                        jint pid)
+{
+    struct epoll_event event;
+    /* Fails with ENOSYS before Linux 5.3. A process that already exited, but was not reaped, can still be watched. */
+    int pidfd = syscall(SYS_pidfd_open, (pid_t) pid, 0);
+    if (pidfd == -1) {
+        return -1;
+    }
+    fcntl(pidfd, F_SETFD, FD_CLOEXEC);
+    event.events = EPOLLIN;
+    /* The pidfd is kept next to the pid, so that it can be closed once the process has exited. */
+    event.data.u64 = ((uint64_t) (uint32_t) pidfd << 32) | (uint32_t) pid;
+    if (epoll_ctl(epfd, EPOLL_CTL_ADD, pidfd, &event) == -1) {
+        close(pidfd);
+        return -1;
+    }
+    return WATCHING;
+}
+
+/*
+ * Class:     org_eclipse_cdt_utils_spawner_ProcessReaper
+ * Method:    wait0
+ * Signature: (I[I)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_spawner_ProcessReaper_wait0(JNIEnv * env,
+                                                       jclass cls,
+                                                       jint epfd,
+                                                       jintArray pids)
+{
+    struct epoll_event events[MAX_EVENTS];
+    jint exited[MAX_EVENTS];
+    int max = (*env)->GetArrayLength(env, pids);
+    int count;
+    int i;
+
+    if (max > MAX_EVENTS) {
+        max = MAX_EVENTS;
+    }
+    count = epoll_wait(epfd, events, max, -1);
+    if (count == -1) {
+        return (errno == EINTR) ? 0 : -1;
+    }
+    for (i = 0; i < count; i++) {
+        exited[i] = (jint) (uint32_t) events[i].data.u64;
+        /* Closing the only descriptor of the pidfd also removes it from the epoll set. */
+        close((int) (events[i].data.u64 >> 32));
+    }
+    (*env)->SetIntArrayRegion(env, pids, 0, count, exited);
+    return count;
+}
@@ -18,12 +18,44 @@ extern "C" {
 JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_pty_PTYInputStream_read0
   (JNIEnv *, jobject, jint, jbyteArray, jint);
 
+/*
+ * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
+ * Method:    readDirect0
+ * Signature: (ILjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_pty_PTYInputStream_readDirect0
+  (JNIEnv *, jobject, jint, jobject, jint, jint);
+
 /*
  * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
  * Method:    close0
  * Signature: (I)I
  */
 JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_pty_PTYInputStream_close0
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
+ * Method:    readTimed0
+ * Signature: (II[BIIII)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_pty_PTYInputStream_readTimed0
+  (JNIEnv *, jobject, jint, jint, jbyteArray, jint, jint, jint, jint);
+
+/*
+ * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
+ * Method:    openWakeup0
+ * Signature: ([I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_pty_PTYInputStream_openWakeup0
+  (JNIEnv *, jobject, jintArray);
+
+/*
+ * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
+ * Method:    wakeup0
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_pty_PTYInputStream_wakeup0
   (JNIEnv *, jobject, jint);
 
 #ifdef __cplusplus
@@ -10,18 +10,18 @@ extern "C" {
 /*
  * Class:     org_eclipse_cdt_utils_pty_PTYOutputStream
  * Method:    write0
- * Signature: (I[BI)I
+ * Signature: (I[BII)I
  */
 JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_pty_PTYOutputStream_write0
-  (JNIEnv *, jobject, jint, jbyteArray, jint);
+  (JNIEnv *, jobject, jint, jbyteArray, jint, jint);
 
 /*
  * Class:     org_eclipse_cdt_utils_pty_PTYOutputStream
- * Method:    close0
- * Signature: (I)I
+ * Method:    writeDirect0
+ * Signature: (ILjava/nio/ByteBuffer;II)I
  */
-JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_pty_PTYOutputStream_close0
-  (JNIEnv *, jobject, jint);
+JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_pty_PTYOutputStream_writeDirect0
+  (JNIEnv *, jobject, jint, jobject, jint, jint);
 
 #ifdef __cplusplus
 }
@@ -0,0 +1,49 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class org_eclipse_cdt_utils_spawner_ProcessReaper */
+
+#ifndef _Included_org_eclipse_cdt_utils_spawner_ProcessReaper
+#define _Included_org_eclipse_cdt_utils_spawner_ProcessReaper
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef org_eclipse_cdt_utils_spawner_ProcessReaper_MIN_PRIORITY
+#define org_eclipse_cdt_utils_spawner_ProcessReaper_MIN_PRIORITY 1L
+#undef org_eclipse_cdt_utils_spawner_ProcessReaper_NORM_PRIORITY
+#define org_eclipse_cdt_utils_spawner_ProcessReaper_NORM_PRIORITY 5L
+#undef org_eclipse_cdt_utils_spawner_ProcessReaper_MAX_PRIORITY
+#define org_eclipse_cdt_utils_spawner_ProcessReaper_MAX_PRIORITY 10L
+#undef org_eclipse_cdt_utils_spawner_ProcessReaper_MAX_EVENTS
+#define org_eclipse_cdt_utils_spawner_ProcessReaper_MAX_EVENTS 64L
+#undef org_eclipse_cdt_utils_spawner_ProcessReaper_WATCHING
+#define org_eclipse_cdt_utils_spawner_ProcessReaper_WATCHING 0L
+#undef org_eclipse_cdt_utils_spawner_ProcessReaper_ALREADY_EXITED
+#define org_eclipse_cdt_utils_spawner_ProcessReaper_ALREADY_EXITED 1L
+/*
+ * Class:     org_eclipse_cdt_utils_spawner_ProcessReaper
+ * Method:    create0
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_spawner_ProcessReaper_create0
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_cdt_utils_spawner_ProcessReaper
+ * Method:    watch0
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_spawner_ProcessReaper_watch0
+  (JNIEnv *, jclass, jint, jint);
+
+/*
+ * Class:     org_eclipse_cdt_utils_spawner_ProcessReaper
+ * Method:    wait0
+ * Signature: (I[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_cdt_utils_spawner_ProcessReaper_wait0
+  (JNIEnv *, jclass, jint, jintArray);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -13,6 +13,10 @@
 #include <PTYInputStream.h>
 #include <PTYOutputStream.h>
 #include <unistd.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <time.h>
 
 /* Header for class _org_eclipse_cdt_utils_pty_PTYInputStream */
 /* Header for class _org_eclipse_cdt_utils_pty_PTYOutputStream */
@@ -62,6 +66,196 @@ Java_org_eclipse_cdt_utils_pty_PTYInputStream_read0(JNIEnv * env,
 }
 
 
+/*
+ * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
+ * Method:    readDirect0
+ * Signature: (ILjava/nio/ByteBuffer;II)I
+ *
+ * Reads straight into the memory of a direct buffer, without any intermediate copy.
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_pty_PTYInputStream_readDirect0(JNIEnv * env,
+                                                                jobject jobj,
+                                                                jint jfd,
+                                                                jobject buf,
+                                                                jint position,
+                                                                jint len)
+{
+    int status;
+    jbyte *data;
+
+    data = (*env)->GetDirectBufferAddress(env, buf);
+    if (data == NULL) {
+        jclass exception = (*env)->FindClass(env, "java/io/IOException");
+        if (exception != NULL) {
+            (*env)->ThrowNew(env, exception, "not a direct buffer");
+        }
+        return -1;
+    }
+
+    do {
+        status = read(jfd, data + position, len);
+    } while (status == -1 && errno == EINTR);
+
+    if (status == 0) {
+        /* EOF. */
+        status = -1;
+    }
+    return status;
+}
+
+
+/*
+ * Waits until fd is readable, wakeup_fd is readable or timeout_us microseconds
+ * have elapsed (no time limit if negative.) Returns 1 if fd is readable or
+ * reports an error, 2 if woken up, 0 on timeout and -1 on error.
+ */
+static int wait_for_input(int fd, int wakeup_fd, long timeout_us)
+{
+    struct pollfd fds[2];
+    int nfds = (wakeup_fd == -1) ? 1 : 2;
+    int status;
+
+    fds[0].fd = fd;
+    fds[0].events = POLLIN;
+    fds[1].fd = wakeup_fd;
+    fds[1].events = POLLIN;
+    for (;;) {
+        fds[0].revents = 0;
+        fds[1].revents = 0;
+#ifdef __linux__
+        if (timeout_us >= 0) {
+            struct timespec ts;
+            ts.tv_sec = timeout_us / 1000000;
+            ts.tv_nsec = (timeout_us % 1000000) * 1000;
+            status = ppoll(fds, nfds, &ts, NULL);
+        } else {
+            status = ppoll(fds, nfds, NULL, NULL);
+        }
+#else
+        /* poll() only has millisecond resolution: round up. */
+        status = poll(fds, nfds, (timeout_us >= 0) ? (int) ((timeout_us + 999) / 1000) : -1);
+#endif
+        if (status != -1 || errno != EINTR) {
+            break;
+        }
+    }
+    if (status <= 0) {
+        return status;
+    }
+    if (nfds == 2 && fds[1].revents != 0) {
+        char drain[64];
+        while (read(wakeup_fd, drain, sizeof(drain)) > 0) {
+        }
+        return 2;
+    }
+    /* Hang-ups and errors are reported as readable: the following read reports them. */
+    return 1;
+}
+
+
+/*
+ * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
+ * Method:    readTimed0
+ * Signature: (II[BIIII)I
+ *
+ * Waits at most timeout milliseconds for data, then reads it, along with
+ * whatever else arrives within batch_us microseconds of each read.
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_pty_PTYInputStream_readTimed0(JNIEnv * env,
+                                                               jobject jobj,
+                                                               jint jfd,
+                                                               jint wakeup_fd,
+                                                               jbyteArray buf,
+                                                               jint off,
+                                                               jint len,
+                                                               jint timeout,
+                                                               jint batch_us)
+{
+    jbyte *data;
+    int total = 0;
+    int status;
+
+    status = wait_for_input(jfd, wakeup_fd, (timeout < 0) ? -1L : (long) timeout * 1000L);
+    if (status == 0 || status == 2) {
+        return 0;
+    }
+    if (status == -1) {
+        return -1;
+    }
+
+    data = (*env)->GetByteArrayElements(env, buf, 0);
+    if (data == NULL) {
+        return -1;
+    }
+    for (;;) {
+        do {
+            status = read(jfd, data + off + total, len - total);
+        } while (status == -1 && errno == EINTR);
+        if (status <= 0) {
+            break;
+        }
+        total += status;
+        if (total == len || batch_us <= 0 || wait_for_input(jfd, -1, batch_us) != 1) {
+            break;
+        }
+    }
+    (*env)->ReleaseByteArrayElements(env, buf, data, 0);
+
+    /* Report the end of the stream only once everything read before it has been delivered. */
+    return (total > 0) ? total : -1;
+}
+
+
+/*
+ * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
+ * Method:    openWakeup0
+ * Signature: ([I)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_pty_PTYInputStream_openWakeup0(JNIEnv * env,
+                                                                jobject jobj,
+                                                                jintArray jfds)
+{
+    int fds[2];
+    jint result[2];
+    int i;
+
+    if (pipe(fds) == -1) {
+        return -1;
+    }
+    for (i = 0; i < 2; i++) {
+        fcntl(fds[i], F_SETFL, fcntl(fds[i], F_GETFL) | O_NONBLOCK);
+        fcntl(fds[i], F_SETFD, FD_CLOEXEC);
+        result[i] = fds[i];
+    }
+    (*env)->SetIntArrayRegion(env, jfds, 0, 2, result);
+    return 0;
+}
+
+
+/*
+ * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
+ * Method:    wakeup0
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_pty_PTYInputStream_wakeup0(JNIEnv * env,
+                                                            jobject jobj,
+                                                            jint wakeup_fd)
+{
+    char c = 0;
+    int status;
+
+    do {
+        status = write(wakeup_fd, &c, 1);
+    } while (status == -1 && errno == EINTR);
+    /* A full pipe already has a wakeup pending. */
+    return (status == -1 && errno != EAGAIN) ? -1 : 0;
+}
+
+
 /*
  * Class:     org_eclipse_cdt_utils_pty_PTYInputStream
  * Method:    close0
@@ -69,7 +263,7 @@ Java_org_eclipse_cdt_utils_pty_PTYInputStream_read0(JNIEnv * env,
  */
 JNIEXPORT jint JNICALL
 Java_org_eclipse_cdt_utils_pty_PTYInputStream_close0(JNIEnv * env,
-                                                           jobject jobj,
+                                                           jclass cls,
                                                            jint fd)
 {
     return close(fd);
@@ -78,26 +272,33 @@ Java_org_eclipse_cdt_utils_pty_PTYInputStream_close0(JNIEnv * env,
 /*
  * Class:     org_eclipse_cdt_utils_pty_PTYOutputStream
  * Method:    write0
- * Signature: (II)I
+ * Signature: (I[BII)I
+ *
+ * Writes at most len bytes of buf, starting at off, through a buffer on the
+ * stack: the array is neither pinned nor copied as a whole. Returns the number
+ * of bytes written, which may be less than len, or -1 on error.
  */
 JNIEXPORT jint JNICALL
 Java_org_eclipse_cdt_utils_pty_PTYOutputStream_write0(JNIEnv * env,
                                                             jobject jobj,
                                                             jint jfd,
                                                             jbyteArray buf,
-                                                            jint buf_len)
+                                                            jint off,
+                                                            jint len)
 {
+    jbyte data[4096];
+    int count;
     int status;
-    int fd;
-    jbyte *data;
-    int data_len;
 
-    data = (*env)->GetByteArrayElements(env, buf, 0);
-    data_len = buf_len;
-    fd = jfd;
+    count = (len < (jint) sizeof(data)) ? len : (int) sizeof(data);
+    (*env)->GetByteArrayRegion(env, buf, off, count, data);
+    if ((*env)->ExceptionCheck(env)) {
+        return -1;
+    }
 
-    status = write(fd, data, data_len);
-    (*env)->ReleaseByteArrayElements(env, buf, data, 0);
+    do {
+        status = write(jfd, data, count);
+    } while (status == -1 && errno == EINTR);
 
     return status;
 }
@@ -105,13 +306,35 @@ Java_org_eclipse_cdt_utils_pty_PTYOutputStream_write0(JNIEnv * env,
 
 /*
  * Class:     org_eclipse_cdt_utils_pty_PTYOutputStream
- * Method:    close0
- * Signature: (I)I
+ * Method:    writeDirect0
+ * Signature: (ILjava/nio/ByteBuffer;II)I
+ *
+ * Writes straight from the memory of a direct buffer, without any intermediate copy.
  */
 JNIEXPORT jint JNICALL
-Java_org_eclipse_cdt_utils_pty_PTYOutputStream_close0(JNIEnv * env,
-                                                            jobject jobj,
-                                                            jint fd)
+Java_org_eclipse_cdt_utils_pty_PTYOutputStream_writeDirect0(JNIEnv * env,
+                                                                  jobject jobj,
+                                                                  jint jfd,
+                                                                  jobject buf,
+                                                                  jint position,
+                                                                  jint len)
 {
-    return close(fd);
+    int status;
+    jbyte *data;
+
+    data = (*env)->GetDirectBufferAddress(env, buf);
+    if (data == NULL) {
+        jclass exception = (*env)->FindClass(env, "java/io/IOException");
+        if (exception != NULL) {
+            (*env)->ThrowNew(env, exception, "not a direct buffer");
+        }
+        return -1;
+    }
+
+    do {
+        status = write(jfd, data + position, len);
+    } while (status == -1 && errno == EINTR);
+
+    return status;
 }
+
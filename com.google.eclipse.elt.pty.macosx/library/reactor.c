@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Google Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+#include <jni.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <stdint.h>
+#include <unistd.h>
+#include <sys/types.h>
+#include <sys/event.h>
+#include <sys/time.h>
+#include <PtyReactor.h>
+
+#define MAX_EVENTS com_google_eclipse_elt_pty_PtyReactor_MAX_EVENTS
+#define WAKEUP_IDENT 1
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    create0
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_create0(JNIEnv * env,
+                                                   jclass cls)
+{
+    int kq = kqueue();
+    if (kq == -1) {
+        jclass exception = (*env)->FindClass(env, "java/io/IOException");
+        if (exception != NULL) {
+            (*env)->ThrowNew(env, exception, "kqueue failed");
+        }
+        return -1;
+    }
+    fcntl(kq, F_SETFD, FD_CLOEXEC);
+    return kq;
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    add0
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_add0(JNIEnv * env,
+                                                jclass cls,
+                                                jint kq,
+                                                jint fd,
+                                                jint token)
+{
+    struct kevent change;
+    EV_SET(&change, fd, EVFILT_READ, EV_ADD, 0, 0, (void *) (intptr_t) token);
+    return kevent(kq, &change, 1, NULL, 0, NULL);
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    remove0
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_remove0(JNIEnv * env,
+                                                   jclass cls,
+                                                   jint kq,
+                                                   jint fd)
+{
+    struct kevent change;
+    EV_SET(&change, fd, EVFILT_READ, EV_DELETE, 0, 0, NULL);
+    return kevent(kq, &change, 1, NULL, 0, NULL);
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    createWakeup0
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_createWakeup0(JNIEnv * env,
+                                                         jclass cls,
+                                                         jint kq,
+                                                         jint token)
+{
+    /* A user event of the kqueue itself: the kqueue is also the file descriptor used to trigger it. */
+    struct kevent change;
+    EV_SET(&change, WAKEUP_IDENT, EVFILT_USER, EV_ADD | EV_CLEAR, 0, 0, (void *) (intptr_t) token);
+    return (kevent(kq, &change, 1, NULL, 0, NULL) == -1) ? -1 : kq;
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    wakeup0
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_wakeup0(JNIEnv * env,
+                                                   jclass cls,
+                                                   jint kq)
+{
+    struct kevent change;
+    EV_SET(&change, WAKEUP_IDENT, EVFILT_USER, 0, NOTE_TRIGGER, 0, NULL);
+    return kevent(kq, &change, 1, NULL, 0, NULL);
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    clearWakeup0
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_clearWakeup0(JNIEnv * env,
+                                                        jclass cls,
+                                                        jint kq)
+{
+    /* EV_CLEAR resets the user event once it has been reported. */
+    return 0;
+}
+
+/*
+ * Class:     com_google_eclipse_elt_pty_PtyReactor
+ * Method:    wait0
+ * Signature: (I[II)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_google_eclipse_elt_pty_PtyReactor_wait0(JNIEnv * env,
+                                                 jclass cls,
+                                                 jint kq,
+                                                 jintArray tokens,
+                                                 jint timeout)
+{
+    struct kevent events[MAX_EVENTS];
+    jint ready[MAX_EVENTS];
+    struct timespec ts;
+    struct timespec *tsp = NULL;
+    int max = (*env)->GetArrayLength(env, tokens);
+    int count;
+    int i;
+
+    if (max > MAX_EVENTS) {
+        max = MAX_EVENTS;
+    }
+    if (timeout >= 0) {
+        ts.tv_sec = timeout / 1000;
+        ts.tv_nsec = (timeout % 1000) * 1000000L;
+        tsp = &ts;
+    }
+    count = kevent(kq, NULL, 0, events, max, tsp);
+    if (count == -1) {
+        return (errno == EINTR) ? 0 : -1;
+    }
+    for (i = 0; i < count; i++) {
+        /* EOF and errors are reported as readable: the following read reports them. */
+        ready[i] = (jint) (intptr_t) events[i].udata;
+    }
+    (*env)->SetIntArrayRegion(env, tokens, 0, count, ready);
+    return count;
+}
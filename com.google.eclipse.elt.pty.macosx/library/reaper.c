@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Google Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+#include <jni.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <unistd.h>
+#include <sys/types.h>
+#include <sys/event.h>
+#include <sys/time.h>
+#include <ProcessReaper.h>
+
+#define MAX_EVENTS org_eclipse_cdt_utils_spawner_ProcessReaper_MAX_EVENTS
+#define WATCHING org_eclipse_cdt_utils_spawner_ProcessReaper_WATCHING
+#define ALREADY_EXITED org_eclipse_cdt_utils_spawner_ProcessReaper_ALREADY_EXITED
+
+/*
+ * Class:     org_eclipse_cdt_utils_spawner_ProcessReaper
+ * Method:    create0
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_spawner_ProcessReaper_create0(JNIEnv * env,
+                                                         jclass cls)
+{
+    int kq = kqueue();
+    if (kq == -1) {
+        jclass exception = (*env)->FindClass(env, "java/io/IOException");
+        if (exception != NULL) {
+            (*env)->ThrowNew(env, exception, "kqueue failed");
+        }
+        return -1;
+    }
+    fcntl(kq, F_SETFD, FD_CLOEXEC);
+    return kq;
+}
+
+/*
+ * Class:     org_eclipse_cdt_utils_spawner_ProcessReaper
+ * Method:    watch0
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_spawner_ProcessReaper_watch0(JNIEnv * env,
+                                                        jclass cls,
+                                                        jint kq,
+                                                        jint pid)
+{
+    struct kevent change;
+    /* One-shot: the filter is removed once the exit has been reported. */
+    EV_SET(&change, pid, EVFILT_PROC, EV_ADD | EV_ONESHOT, NOTE_EXIT, 0, NULL);
+    if (kevent(kq, &change, 1, NULL, 0, NULL) == -1) {
+        /* A process that already exited cannot be watched, but can be reaped right away. */
+        return (errno == ESRCH) ? ALREADY_EXITED : -1;
+    }
+    return WATCHING;
+}
+
+/*
+ * Class:     org_eclipse_cdt_utils_spawner_ProcessReaper
+ * Method:    wait0
+ * Signature: (I[I)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_eclipse_cdt_utils_spawner_ProcessReaper_wait0(JNIEnv * env,
+                                                       jclass cls,
+                                                       jint kq,
+                                                       jintArray pids)
+{
+    struct kevent events[MAX_EVENTS];
+    jint exited[MAX_EVENTS];
+    int max = (*env)->GetArrayLength(env, pids);
+    int count;
+    int i;
+
+    if (max > MAX_EVENTS) {
+        max = MAX_EVENTS;
+    }
+    count = kevent(kq, NULL, 0, events, max, NULL);
+    if (count == -1) {
+        return (errno == EINTR) ? 0 : -1;
+    }
+    for (i = 0; i < count; i++) {
+        exited[i] = (jint) events[i].ident;
+    }
+    (*env)->SetIntArrayRegion(env, pids, 0, count, exited);
+    return count;
+}
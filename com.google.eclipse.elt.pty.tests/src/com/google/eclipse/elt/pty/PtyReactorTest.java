@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.pty;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.*;
+import java.util.*;
+
+import org.eclipse.cdt.utils.pty.PTY;
+import org.junit.*;
+
+/**
+ * Tests for {@link PtyReactor}.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+public class PtyReactorTest {
+  private static final long TIMEOUT = SECONDS.toMillis(10);
+
+  private final List<PTY> ptys = new ArrayList<PTY>();
+
+  private PtyReactor reactor;
+
+  @Before public void setUp() throws IOException {
+    assumeTrue(PtyReactor.isSupported());
+    // A single loop, so that both pseudo terminals share it.
+    reactor = new PtyReactor(1);
+  }
+
+  @After public void tearDown() throws IOException {
+    for (PTY pty : ptys) {
+      pty.close();
+    }
+  }
+
+  @Test public void keepsDispatchingOutputWhileAnotherConsumerOnTheSameLoopIsStalled() throws Exception {
+    PTY stalledPty = openPty();
+    PTY otherPty = openPty();
+    RecordingConsumer stalled = new RecordingConsumer(false);
+    RecordingConsumer other = new RecordingConsumer(true);
+    PtyReactor.Registration stalledRegistration = reactor.register(stalledPty, stalled);
+    reactor.register(otherPty, other);
+    // More than the pseudo terminal buffers, so that the writer stays blocked until the reactor reads again.
+    byte[] flood = pattern(512 * 1024);
+    writeInBackground(stalledPty, flood);
+    assertTrue("The stalled consumer was never offered output", stalled.awaitOffered());
+    byte[] output = pattern(64 * 1024);
+    writeInBackground(otherPty, output);
+    assertTrue("Output was held up by the stalled consumer", other.awaitReceived(output.length));
+    assertArrayEquals(output, other.received());
+    // The held-back output comes first once the stalled consumer catches up.
+    stalled.accepting = true;
+    stalledRegistration.resume();
+    assertTrue("Held-back output was not passed again", stalled.awaitReceived(flood.length));
+    assertArrayEquals(flood, stalled.received());
+  }
+
+  private PTY openPty() throws IOException {
+    PTY pty = new PTY();
+    ptys.add(pty);
+    return pty;
+  }
+
+  private static byte[] pattern(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) ('a' + i % 26);
+    }
+    return bytes;
+  }
+
+  // Writes to the slave side of the given pseudo terminal, as a shell would.
+  private static void writeInBackground(final PTY pty, final byte[] bytes) {
+    Thread writer = new Thread("PTY writer") {
+      @Override public void run() {
+        try {
+          OutputStream out = new FileOutputStream(pty.getSlaveName());
+          try {
+            out.write(bytes);
+          } finally {
+            out.close();
+          }
+        } catch (IOException ignored) {
+          // The pseudo terminal was closed at the end of the test.
+        }
+      }
+    };
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private static class RecordingConsumer implements PtyReactor.Consumer {
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private boolean offered;
+
+    volatile boolean accepting;
+
+    RecordingConsumer(boolean accepting) {
+      this.accepting = accepting;
+    }
+
+    @Override public synchronized int bytesRead(byte[] buffer, int offset, int count) {
+      offered = true;
+      notifyAll();
+      if (!accepting) {
+        return 0;
+      }
+      received.write(buffer, offset, count);
+      return count;
+    }
+
+    @Override public void endOfStream() {}
+
+    synchronized boolean awaitOffered() throws InterruptedException {
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while (!offered && System.currentTimeMillis() < deadline) {
+        wait(TIMEOUT);
+      }
+      return offered;
+    }
+
+    synchronized boolean awaitReceived(int count) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      long remaining;
+      while (received.size() < count && (remaining = deadline - System.currentTimeMillis()) > 0) {
+        wait(remaining);
+      }
+      return received.size() >= count;
+    }
+
+    synchronized byte[] received() {
+      return received.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.pty;
+
+import static com.google.eclipse.elt.pty.PtyPlugin.PLUGIN_ID;
+
+import java.io.IOException;
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.core.runtime.*;
+
+/**
+ * A native file descriptor shared by the objects that use it, and closed when the last of them lets go of it.
+ * <p>
+ * Each user of the descriptor holds a {@link Lease} and releases it when done, e.g. when a stream is closed. If a
+ * holder becomes unreachable without releasing its lease, a background thread notices it through a phantom reference
+ * and releases the lease instead. Unlike finalizers, this does not delay the collection of the holder. Leases released
+ * this way are logged, since they point at a stream that was never closed.
+ * <p>
+ * Open descriptors are counted per owner (e.g. the name of the slave side of a pseudo terminal), which helps finding
+ * descriptor leaks.
+ */
+public final class NativeDescriptor {
+  /**
+   * Closes native file descriptors.
+   */
+  public interface Closer {
+    /**
+     * Closes the given file descriptor.
+     * @param fd the file descriptor to close.
+     * @return 0 on success, -1 on error.
+     */
+    int close(int fd);
+  }
+
+  private static final ReferenceQueue<Object> abandonedHolders = new ReferenceQueue<Object>();
+  // Phantom references are only enqueued while they are strongly reachable.
+  private static final Set<LeaseReference> leases =
+      Collections.newSetFromMap(new ConcurrentHashMap<LeaseReference, Boolean>());
+  private static final Set<NativeDescriptor> openDescriptors =
+      Collections.newSetFromMap(new ConcurrentHashMap<NativeDescriptor, Boolean>());
+  private static boolean cleanerStarted;
+
+  // The number of leases, or -1 once closed.
+  private final AtomicInteger leaseCount = new AtomicInteger();
+  private final int fd;
+  private final String owner;
+  private final String name;
+  private final Closer closer;
+
+  /**
+   * Creates a new {@link NativeDescriptor}. The descriptor is closed when the last lease taken on it is released, so
+   * callers should take a lease right away.
+   * @param fd the file descriptor.
+   * @param owner describes what the descriptor belongs to, e.g. the name of the slave side of a pseudo terminal.
+   * @param name describes the descriptor within its owner.
+   * @param closer closes the descriptor. It must not hold any reference to the holders of the descriptor.
+   */
+  public NativeDescriptor(int fd, String owner, String name, Closer closer) {
+    this.fd = fd;
+    this.owner = owner;
+    this.name = name;
+    this.closer = closer;
+    openDescriptors.add(this);
+    startCleaner();
+  }
+
+  /**
+   * Returns the file descriptor.
+   * @return the file descriptor, or -1 if it has been closed.
+   */
+  public int fd() {
+    return isOpen() ? fd : -1;
+  }
+
+  public boolean isOpen() {
+    return leaseCount.get() >= 0;
+  }
+
+  public String owner() {
+    return owner;
+  }
+
+  /**
+   * Takes a lease on this descriptor, which stays open at least until the lease is released.
+   * @param holder the object using the descriptor. The lease is released when it becomes unreachable.
+   * @return the new lease.
+   * @throws IllegalStateException if this descriptor has already been closed.
+   */
+  public Lease lease(Object holder) {
+    while (true) {
+      int count = leaseCount.get();
+      if (count < 0) {
+        throw new IllegalStateException("File descriptor already closed: " + this);
+      }
+      if (leaseCount.compareAndSet(count, count + 1)) {
+        break;
+      }
+    }
+    LeaseReference reference = new LeaseReference(holder, this);
+    leases.add(reference);
+    return new Lease(reference);
+  }
+
+  private void release() throws IOException {
+    if (leaseCount.decrementAndGet() == 0 && leaseCount.compareAndSet(0, -1)) {
+      openDescriptors.remove(this);
+      if (closer.close(fd) == -1) {
+        throw new IOException("Unable to close " + this);
+      }
+    }
+  }
+
+  @Override public String toString() {
+    return owner + " " + name + " (fd " + fd + ")";
+  }
+
+  /**
+   * Returns the number of open descriptors of the given owner.
+   * @param owner the owner of the descriptors.
+   * @return the number of open descriptors of the given owner.
+   */
+  public static int openCount(String owner) {
+    int count = 0;
+    for (NativeDescriptor descriptor : openDescriptors) {
+      if (descriptor.owner.equals(owner)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Describes the open descriptors, grouped by owner.
+   * @return one line per owner, with the number and names of its open descriptors.
+   */
+  public static String openDescriptorsReport() {
+    Map<String, List<String>> namesByOwner = new TreeMap<String, List<String>>();
+    for (NativeDescriptor descriptor : openDescriptors) {
+      List<String> names = namesByOwner.get(descriptor.owner);
+      if (names == null) {
+        names = new ArrayList<String>();
+        namesByOwner.put(descriptor.owner, names);
+      }
+      names.add(descriptor.name + " (fd " + descriptor.fd + ")");
+    }
+    StringBuilder report = new StringBuilder();
+    for (Map.Entry<String, List<String>> entry : namesByOwner.entrySet()) {
+      List<String> names = entry.getValue();
+      report.append(entry.getKey()).append(": ").append(names.size()).append(" open ").append(names).append('\n');
+    }
+    return report.toString();
+  }
+
+  private static synchronized void startCleaner() {
+    if (cleanerStarted) {
+      return;
+    }
+    cleanerStarted = true;
+    Thread cleaner = new Thread("Native descriptor cleaner") {
+      @Override public void run() {
+        while (true) {
+          LeaseReference reference;
+          try {
+            reference = (LeaseReference) abandonedHolders.remove();
+          } catch (InterruptedException e) {
+            return;
+          }
+          try {
+            if (reference.release()) {
+              log(new Status(IStatus.WARNING, PLUGIN_ID, "Released a file descriptor that was never closed: "
+                  + reference.descriptor));
+            }
+          } catch (IOException e) {
+            log(new Status(IStatus.WARNING, PLUGIN_ID, e.getMessage()));
+          }
+        }
+      }
+    };
+    cleaner.setDaemon(true);
+    cleaner.start();
+  }
+
+  private static void log(IStatus status) {
+    if (PtyPlugin.getDefault() != null) {
+      PtyPlugin.log(status);
+    }
+  }
+
+  /**
+   * A lease on a {@link NativeDescriptor}.
+   */
+  public static final class Lease {
+    private final LeaseReference reference;
+
+    private Lease(LeaseReference reference) {
+      this.reference = reference;
+    }
+
+    /**
+     * Releases this lease, closing the descriptor if this was the last lease on it. Releasing a lease more than once
+     * has no effect.
+     * @throws IOException if the descriptor could not be closed.
+     */
+    public void release() throws IOException {
+      reference.release();
+    }
+  }
+
+  private static class LeaseReference extends PhantomReference<Object> {
+    final NativeDescriptor descriptor;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    LeaseReference(Object holder, NativeDescriptor descriptor) {
+      super(holder, abandonedHolders);
+      this.descriptor = descriptor;
+    }
+
+    // Returns false if the lease had already been released.
+    boolean release() throws IOException {
+      if (!released.compareAndSet(false, true)) {
+        return false;
+      }
+      leases.remove(this);
+      clear();
+      descriptor.release();
+      return true;
+    }
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.pty;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.cdt.utils.pty.PTY;
+
+/**
+ * Reads the output of many pseudo terminals on a handful of threads.
+ * <p>
+ * The master side of each registered {@link PTY} is watched by the operating system's readiness notification facility
+ * (epoll on Linux, kqueue on Mac OS X.) Whenever a master has data, the thread owning it reads one chunk and hands it
+ * to the {@link Consumer} of that pseudo terminal. Pseudo terminals are spread across a small, fixed number of threads
+ * regardless of how many terminals are open.
+ * <p>
+ * Consumers are called on a reactor thread and share it with other pseudo terminals, so they must never block. A
+ * consumer that cannot take all of a chunk accepts only part of it: the reactor then keeps the rest and stops watching
+ * that pseudo terminal, without holding back the others, until the consumer asks for more with
+ * {@link Registration#resume()}.
+ */
+public final class PtyReactor {
+  private static final int CHUNK_SIZE = 32 * 1024;
+  private static final int MAX_EVENTS = 64;
+  // The token of the events that wake up a loop, never used by a pseudo terminal.
+  private static final int WAKEUP_TOKEN = -1;
+
+  private static PtyReactor defaultReactor;
+  private static boolean triedToStart;
+  private static boolean supported;
+
+  /**
+   * Receives the output of a pseudo terminal registered with a {@link PtyReactor}.
+   */
+  public interface Consumer {
+    /**
+     * Called when the pseudo terminal produced output. Must not block: a consumer that cannot take all of the output
+     * right away accepts only part of it, and calls {@link Registration#resume()} once it can take more. The rest of the
+     * output is passed again then, before any newer output.
+     * @param buffer contains the output; only valid during this call.
+     * @param offset the index of the first byte of output in {@code buffer}.
+     * @param count the number of bytes of output.
+     * @return the number of bytes accepted, from the start of the output.
+     * @throws IOException if the consumer cannot accept any more output; the pseudo terminal is unregistered.
+     */
+    int bytesRead(byte[] buffer, int offset, int count) throws IOException;
+
+    /**
+     * Called once, after the last output of the pseudo terminal has been passed to
+     * {@link #bytesRead(byte[], int, int)}.
+     */
+    void endOfStream();
+  }
+
+  /**
+   * The registration of a pseudo terminal with a {@link PtyReactor}.
+   */
+  public interface Registration {
+    /**
+     * Stops watching the pseudo terminal. A chunk that is already being dispatched may still reach the consumer.
+     */
+    void cancel();
+
+    /**
+     * Asks for the output held back after the consumer accepted only part of a chunk, and watches the pseudo terminal
+     * again once the consumer has taken all of it. Does nothing if no output is held back. May be called on any
+     * thread; the output is passed on the reactor thread.
+     */
+    void resume();
+  }
+
+  /**
+   * Indicates whether the native library supports the reactor on this platform.
+   * @return {@code true} if pseudo terminals can be registered with a {@link PtyReactor}.
+   */
+  public static synchronized boolean isSupported() {
+    getDefault();
+    return supported;
+  }
+
+  /**
+   * Returns the reactor shared by all terminals, starting it if necessary.
+   * @return the shared reactor, or {@code null} if the reactor is not supported on this platform.
+   */
+  public static synchronized PtyReactor getDefault() {
+    if (defaultReactor == null && !triedToStart) {
+      triedToStart = true;
+      try {
+        System.loadLibrary("gpty");
+        int loopCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        defaultReactor = new PtyReactor(loopCount);
+        supported = true;
+      } catch (UnsatisfiedLinkError e) {
+        // The native library is missing or was built without reactor support.
+      } catch (IOException e) {
+        PtyPlugin.log("Unable to start the PTY reactor", e);
+      }
+    }
+    return defaultReactor;
+  }
+
+  private final Loop[] loops;
+  private final AtomicInteger nextLoop = new AtomicInteger();
+
+  PtyReactor(int loopCount) throws IOException {
+    loops = new Loop[loopCount];
+    for (int i = 0; i < loopCount; i++) {
+      loops[i] = new Loop(i);
+    }
+    for (Loop loop : loops) {
+      loop.start();
+    }
+  }
+
+  /**
+   * Starts dispatching the output of the given pseudo terminal to the given consumer.
+   * @param pty the pseudo terminal to watch.
+   * @param consumer receives the output of the pseudo terminal.
+   * @return the registration, which can be used to stop watching the pseudo terminal.
+   * @throws IOException if the pseudo terminal cannot be watched.
+   */
+  public Registration register(PTY pty, Consumer consumer) throws IOException {
+    Loop loop = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    return loop.register(pty, consumer);
+  }
+
+  private static class Loop extends Thread {
+    // Watches are keyed by a token instead of the file descriptor, so that a stale event for a closed descriptor is
+    // never dispatched to a newer pseudo terminal that reuses the same descriptor number.
+    private final Map<Integer, Watch> watches = new ConcurrentHashMap<Integer, Watch>();
+    private final Queue<Watch> resumedWatches = new ConcurrentLinkedQueue<Watch>();
+    private final AtomicInteger nextToken = new AtomicInteger();
+    private final ByteBuffer directBuffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final int[] readyTokens = new int[MAX_EVENTS];
+    private final int pollFd;
+    private final int wakeupFd;
+
+    Loop(int index) throws IOException {
+      super("PTY reactor " + index);
+      setDaemon(true);
+      pollFd = create0();
+      wakeupFd = createWakeup0(pollFd, WAKEUP_TOKEN);
+      if (wakeupFd < 0) {
+        throw new IOException("Unable to create the wake-up event of the PTY reactor");
+      }
+    }
+
+    Registration register(PTY pty, Consumer consumer) throws IOException {
+      int fd = pty.getMasterFD().getFD();
+      int token = nextToken.getAndIncrement() & Integer.MAX_VALUE;
+      Watch watch = new Watch(this, token, fd, pty.getReadableChannel(), consumer);
+      watches.put(watch.token, watch);
+      if (add0(pollFd, fd, watch.token) != 0) {
+        watches.remove(watch.token);
+        throw new IOException("Unable to watch PTY " + pty.getSlaveName());
+      }
+      return watch;
+    }
+
+    void unregister(Watch watch) {
+      if (watches.remove(watch.token) != null) {
+        remove0(pollFd, watch.fd);
+      }
+    }
+
+    void resume(Watch watch) {
+      resumedWatches.add(watch);
+      wakeup0(wakeupFd);
+    }
+
+    @Override public void run() {
+      while (true) {
+        int count = wait0(pollFd, readyTokens, -1);
+        if (count < 0) {
+          PtyPlugin.log("PTY reactor stopped: unable to wait for PTY output", null);
+          return;
+        }
+        for (int i = 0; i < count; i++) {
+          if (readyTokens[i] == WAKEUP_TOKEN) {
+            clearWakeup0(wakeupFd);
+            resumeWatches();
+            continue;
+          }
+          Watch watch = watches.get(readyTokens[i]);
+          if (watch != null && watch.heldBack == null) {
+            dispatch(watch);
+          }
+        }
+      }
+    }
+
+    private void dispatch(Watch watch) {
+      int count;
+      try {
+        directBuffer.clear();
+        count = watch.channel.read(directBuffer);
+      } catch (IOException e) {
+        count = -1;
+      }
+      if (count > 0) {
+        directBuffer.flip();
+        directBuffer.get(chunk, 0, count);
+        if (deliver(watch, chunk, 0, count)) {
+          return;
+        }
+      }
+      endOfStream(watch);
+    }
+
+    private void resumeWatches() {
+      Watch watch;
+      while ((watch = resumedWatches.poll()) != null) {
+        byte[] heldBack = watch.heldBack;
+        if (heldBack == null || !watches.containsKey(watch.token)) {
+          continue;
+        }
+        watch.heldBack = null;
+        if (!deliver(watch, heldBack, watch.heldBackOffset, watch.heldBackCount)) {
+          endOfStream(watch);
+        } else if (watch.heldBack != null) {
+          // The consumer still did not accept everything: it resumes the watch again later.
+          continue;
+        } else if (add0(pollFd, watch.fd, watch.token) != 0) {
+          endOfStream(watch);
+        } else if (!watches.containsKey(watch.token)) {
+          // Cancelled while being watched again.
+          remove0(pollFd, watch.fd);
+        }
+      }
+    }
+
+    // Passes output to the consumer of the given watch. Output the consumer does not accept is held back, and the
+    // pseudo terminal is not watched until the consumer resumes the watch. Returns false if the consumer is gone.
+    private boolean deliver(Watch watch, byte[] buffer, int offset, int count) {
+      int accepted;
+      try {
+        accepted = watch.consumer.bytesRead(buffer, offset, count);
+      } catch (IOException e) {
+        // The consumer is gone: stop watching.
+        return false;
+      } catch (RuntimeException e) {
+        PtyPlugin.log(e);
+        return false;
+      }
+      if (accepted >= count) {
+        return true;
+      }
+      int start = offset + Math.max(0, accepted);
+      int end = offset + count;
+      if (buffer == chunk) {
+        // Newly read output, which the next read would overwrite: keep a copy, and stop watching the pseudo terminal
+        // until the consumer resumes.
+        watch.holdBack(Arrays.copyOfRange(chunk, start, end), 0, end - start);
+        remove0(pollFd, watch.fd);
+      } else {
+        watch.holdBack(buffer, start, end - start);
+      }
+      return true;
+    }
+
+    private void endOfStream(Watch watch) {
+      if (watches.containsKey(watch.token)) {
+        // The master reports an error once the slave side has been closed by the last process using it.
+        unregister(watch);
+        watch.consumer.endOfStream();
+      }
+    }
+  }
+
+  private static class Watch implements Registration {
+    final Loop loop;
+    final int token;
+    final int fd;
+    final ReadableByteChannel channel;
+    final Consumer consumer;
+
+    // The output the consumer has not accepted yet, only used on the thread of the loop. The pseudo terminal is not
+    // watched while there is some.
+    byte[] heldBack;
+    int heldBackOffset;
+    int heldBackCount;
+
+    Watch(Loop loop, int token, int fd, ReadableByteChannel channel, Consumer consumer) {
+      this.loop = loop;
+      this.token = token;
+      this.fd = fd;
+      this.channel = channel;
+      this.consumer = consumer;
+    }
+
+    void holdBack(byte[] buffer, int offset, int count) {
+      heldBack = buffer;
+      heldBackOffset = offset;
+      heldBackCount = count;
+    }
+
+    @Override public void cancel() {
+      loop.unregister(this);
+    }
+
+    @Override public void resume() {
+      loop.resume(this);
+    }
+  }
+
+  private static native int create0() throws IOException;
+
+  private static native int add0(int pollFd, int fd, int token);
+
+  private static native int remove0(int pollFd, int fd);
+
+  // Creates the event used to wake up a loop waiting in wait0, reported with the given token. Returns the file
+  // descriptor to pass to wakeup0 and clearWakeup0, or -1 on error.
+  private static native int createWakeup0(int pollFd, int token);
+
+  private static native int wakeup0(int wakeupFd);
+
+  private static native int clearWakeup0(int wakeupFd);
+
+  // Waits until at least one watched file descriptor is readable, or the timeout (in milliseconds, -1 for no timeout)
+  // expires. Stores the tokens of the readable file descriptors in readyTokens and returns how many there are, or -1 on
+  // error.
+  private static native int wait0(int pollFd, int[] readyTokens, int timeout);
+}
@@ -8,8 +8,10 @@
 package org.eclipse.cdt.utils.pty;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 
-import com.google.eclipse.elt.pty.PtyPlugin;
+import com.google.eclipse.elt.pty.*;
 
 /**
  * PTY - pseudo terminal support.
@@ -25,21 +27,25 @@ public class PTY {
    * NOTE: Field is accessed by the native layer. Do not refactor!
    */
   int master;
+  private NativeDescriptor masterDescriptor;
 
   private static boolean hasPTY;
   private static boolean setTerminalSizeErrorAlreadyLogged;
 
   /**
-   * The master fd is used on two streams. We need to wrap the fd so that when stream.close() is called the other stream
-   * is disabled.
+   * The master fd is used on two streams. Each stream holds a lease on it, and the fd is closed once both streams have
+   * been closed.
    */
   public class MasterFD {
+    /**
+     * @return the master fd, or -1 once it has been closed.
+     */
     public int getFD() {
-      return master;
+      return masterDescriptor.fd();
     }
 
-    void setFD(int fd) {
-      master = fd;
+    NativeDescriptor descriptor() {
+      return masterDescriptor;
     }
   }
 
@@ -81,6 +87,7 @@ public class PTY {
       throw new IOException(PtyPlugin.getResourceString("Util.exception.cannotCreatePty"));
     }
 
+    masterDescriptor = new NativeDescriptor(master, slave, "master", PTYInputStream.CLOSER);
     in = new PTYInputStream(new MasterFD());
     out = new PTYOutputStream(new MasterFD());
   }
@@ -108,6 +115,99 @@ public class PTY {
     return in;
   }
 
+  /**
+   * Closes both streams of this pseudo terminal, and with them the master side.
+   * @throws IOException if the master side cannot be closed.
+   */
+  public void close() throws IOException {
+    try {
+      in.close();
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Returns the number of native file descriptors of this pseudo terminal still open in this process: the master side
+   * and, once a timed read has been made, the two ends of the pipe used to wake up the reader. Useful to find leaks.
+   * @return the number of open file descriptors of this pseudo terminal.
+   */
+  public int openDescriptorCount() {
+    return NativeDescriptor.openCount(slave);
+  }
+
+  /**
+   * Reads from the master side of this pseudo terminal, waiting at most {@code timeout} milliseconds for output.
+   * Whatever else arrives within {@code batchWindow} microseconds of the previous read is returned in the same chunk.
+   * A blocked reader can be stopped with {@link #wakeUpReader()}.
+   * @param buf the buffer to read into.
+   * @param off the start offset in {@code buf}.
+   * @param len the maximum number of bytes to read.
+   * @param timeout the maximum time to wait for output, in milliseconds, or -1 to wait without a time limit.
+   * @param batchWindow how long to wait for more output after each read, in microseconds, or zero not to wait.
+   * @return the number of bytes read, zero if the timeout expired or the reader was woken up, or -1 once the master
+   *         side has been closed.
+   * @throws IOException on error.
+   */
+  public int read(byte[] buf, int off, int len, int timeout, int batchWindow) throws IOException {
+    return in.read(buf, off, len, timeout, batchWindow);
+  }
+
+  /**
+   * Makes a thread blocked in {@link #read(byte[], int, int, int, int)} return immediately.
+   */
+  public void wakeUpReader() {
+    in.wakeUp();
+  }
+
+  /**
+   * Returns a channel that reads from the master side of this pseudo terminal. Reading into direct buffers avoids any
+   * intermediate copy. Closing the channel closes the input stream of this pseudo terminal.
+   * @return a channel that reads from the master side of this pseudo terminal.
+   */
+  public ReadableByteChannel getReadableChannel() {
+    return new ReadableByteChannel() {
+      @Override public int read(ByteBuffer dst) throws IOException {
+        if (!isOpen()) {
+          throw new ClosedChannelException();
+        }
+        return in.read(dst);
+      }
+
+      @Override public boolean isOpen() {
+        return in.isOpen();
+      }
+
+      @Override public void close() throws IOException {
+        in.close();
+      }
+    };
+  }
+
+  /**
+   * Returns a channel that writes to the master side of this pseudo terminal. Writing from direct buffers avoids any
+   * intermediate copy. Closing the channel closes the output stream of this pseudo terminal.
+   * @return a channel that writes to the master side of this pseudo terminal.
+   */
+  public WritableByteChannel getWritableChannel() {
+    return new WritableByteChannel() {
+      @Override public int write(ByteBuffer src) throws IOException {
+        if (!isOpen()) {
+          throw new ClosedChannelException();
+        }
+        return out.write(src);
+      }
+
+      @Override public boolean isOpen() {
+        return out.isOpen();
+      }
+
+      @Override public void close() throws IOException {
+        out.close();
+      }
+    };
+  }
+
   /**
    * Change terminal window size to given width and height.
    * <p>
@@ -122,8 +222,12 @@ public class PTY {
    * @param height the given height.
    */
   public final void setTerminalSize(int width, int height) {
+    int fd = masterDescriptor.fd();
+    if (fd == -1) {
+      return;
+    }
     try {
-      change_window_size(master, width, height);
+      change_window_size(fd, width, height);
     } catch (UnsatisfiedLinkError e) {
       if (!setTerminalSizeErrorAlreadyLogged) {
         setTerminalSizeErrorAlreadyLogged = true;
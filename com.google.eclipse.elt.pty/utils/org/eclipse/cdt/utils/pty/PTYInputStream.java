@@ -8,11 +8,34 @@
 package org.eclipse.cdt.utils.pty;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import org.eclipse.cdt.utils.pty.PTY.MasterFD;
 
+import com.google.eclipse.elt.pty.NativeDescriptor;
+
 class PTYInputStream extends InputStream {
+  // Cleared if the native library was built without support for direct buffers.
+  private static boolean directBuffersSupported = true;
+  // Cleared if the native library was built without support for timed reads.
+  private static boolean timedReadsSupported = true;
+
+  // Closes the file descriptors of the pseudo terminal, without referencing any stream.
+  static final NativeDescriptor.Closer CLOSER = new NativeDescriptor.Closer() {
+    @Override public int close(int fd) {
+      return close0(fd);
+    }
+  };
+
   MasterFD master;
+  private final NativeDescriptor.Lease masterLease;
+  private volatile boolean closed;
+
+  // Read and write ends of the pipe used to wake up a thread blocked in a timed read, or null if not created yet.
+  private NativeDescriptor wakeupReader;
+  private NativeDescriptor wakeupWriter;
+  private NativeDescriptor.Lease wakeupReaderLease;
+  private NativeDescriptor.Lease wakeupWriterLease;
 
   /**
    * From a Unix valid file descriptor set a Reader.
@@ -20,6 +43,15 @@ class PTYInputStream extends InputStream {
    */
   public PTYInputStream(MasterFD fd) {
     master = fd;
+    masterLease = fd.descriptor().lease(this);
+  }
+
+  private int fd() {
+    return closed ? -1 : master.getFD();
+  }
+
+  boolean isOpen() {
+    return fd() != -1;
   }
 
   /**
@@ -32,7 +64,7 @@ class PTYInputStream extends InputStream {
     if (1 != read(b, 0, 1)) {
       return -1;
     }
-    return b[0];
+    return b[0] & 0xFF;
   }
 
   @Override public int read(byte[] buf, int off, int len) throws IOException {
@@ -45,8 +77,12 @@ class PTYInputStream extends InputStream {
     if (len == 0) {
       return 0;
     }
+    int fd = fd();
+    if (fd == -1) {
+      return -1;
+    }
     byte[] tmpBuf = new byte[len];
-    len = read0(master.getFD(), tmpBuf, len);
+    len = read0(fd, tmpBuf, len);
     if (len <= 0) {
       return -1;
     }
@@ -54,21 +90,170 @@ class PTYInputStream extends InputStream {
     return len;
   }
 
+  /**
+   * Reads up to {@code len} bytes, waiting at most {@code timeout} milliseconds for the first byte to arrive. Once data
+   * is available, whatever else arrives within {@code batchWindow} microseconds of the previous read is appended, until
+   * {@code len} bytes have been read; this turns a burst of small writes by the shell into a single chunk.
+   * <p>
+   * A thread blocked in this method returns promptly when {@link #wakeUp()} or {@link #close()} is called. If the native
+   * library does not support timed reads, this method behaves like {@link #read(byte[], int, int)}.
+   *
+   * @param buf the buffer to read into.
+   * @param off the start offset in {@code buf}.
+   * @param len the maximum number of bytes to read.
+   * @param timeout the maximum time to wait for the first byte, in milliseconds, or -1 to wait without a time limit.
+   * @param batchWindow how long to wait for more data after each read, in microseconds, or zero not to wait.
+   * @return the number of bytes read, zero if the timeout expired or the reader was woken up, or -1 at the end of the
+   *         stream.
+   * @exception IOException on error.
+   */
+  public int read(byte[] buf, int off, int len, int timeout, int batchWindow) throws IOException {
+    if ((off < 0) || (off > buf.length) || (len < 0) || ((off + len) > buf.length) || ((off + len) < 0)) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return 0;
+    }
+    int fd = fd();
+    if (fd == -1) {
+      return -1;
+    }
+    if (timedReadsSupported) {
+      try {
+        int wakeupFD = wakeupReadFD();
+        if (wakeupFD != -1) {
+          return readTimed0(fd, wakeupFD, buf, off, len, timeout, batchWindow);
+        }
+      } catch (UnsatisfiedLinkError e) {
+        timedReadsSupported = false;
+      }
+    }
+    return read(buf, off, len);
+  }
+
+  /**
+   * Makes a thread blocked in {@link #read(byte[], int, int, int, int)} return immediately. If no thread is blocked,
+   * the next timed read returns immediately instead.
+   */
+  public void wakeUp() {
+    NativeDescriptor writer;
+    synchronized (this) {
+      writer = wakeupWriter;
+    }
+    if (writer != null && writer.isOpen()) {
+      wakeup0(writer.fd());
+    }
+  }
+
+  private synchronized int wakeupReadFD() {
+    if (wakeupReader == null && !closed) {
+      int[] fds = new int[2];
+      if (openWakeup0(fds) == 0) {
+        String owner = master.descriptor().owner();
+        wakeupReader = new NativeDescriptor(fds[0], owner, "wakeup pipe (read end)", CLOSER);
+        wakeupWriter = new NativeDescriptor(fds[1], owner, "wakeup pipe (write end)", CLOSER);
+        wakeupReaderLease = wakeupReader.lease(this);
+        wakeupWriterLease = wakeupWriter.lease(this);
+      }
+    }
+    return (wakeupReader != null) ? wakeupReader.fd() : -1;
+  }
+
+  /**
+   * Reads bytes into the given buffer, advancing its position. The contents of direct buffers are written by the native
+   * layer without any intermediate copy or allocation.
+   *
+   * @param dst the buffer to read into.
+   * @return the number of bytes read, or -1 at the end of the stream.
+   * @exception IOException on error.
+   */
+  public int read(ByteBuffer dst) throws IOException {
+    int len = dst.remaining();
+    if (len == 0) {
+      return 0;
+    }
+    int position = dst.position();
+    if (dst.isDirect() && directBuffersSupported) {
+      try {
+        int count = readDirect0(fd(), dst, position, len);
+        if (count <= 0) {
+          return -1;
+        }
+        dst.position(position + count);
+        return count;
+      } catch (UnsatisfiedLinkError e) {
+        directBuffersSupported = false;
+      }
+    }
+    if (dst.hasArray()) {
+      int count = read(dst.array(), dst.arrayOffset() + position, len);
+      if (count > 0) {
+        dst.position(position + count);
+      }
+      return count;
+    }
+    byte[] buf = new byte[len];
+    int count = read(buf, 0, len);
+    if (count > 0) {
+      dst.put(buf, 0, count);
+    }
+    return count;
+  }
+
+  /**
+   * Closes this stream. The master side of the pseudo terminal is closed once its output stream has been closed too.
+   */
   @Override public void close() throws IOException {
-    if (master.getFD() == -1) {
-      return;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    try {
+      // Wake up a blocked reader: the master side may stay open for the output stream.
+      closeWakeupPipe();
+    } finally {
+      masterLease.release();
     }
-    close0(master.getFD());
-    master.setFD(-1);
   }
 
-  @Override protected void finalize() throws IOException {
-    close();
+  private void closeWakeupPipe() throws IOException {
+    NativeDescriptor writer;
+    NativeDescriptor.Lease readerLease;
+    NativeDescriptor.Lease writerLease;
+    synchronized (this) {
+      writer = wakeupWriter;
+      readerLease = wakeupReaderLease;
+      writerLease = wakeupWriterLease;
+    }
+    if (writer != null) {
+      // Wake up a blocked reader before the pipe goes away.
+      wakeup0(writer.fd());
+      try {
+        writerLease.release();
+      } finally {
+        readerLease.release();
+      }
+    }
   }
 
   private native int read0(int fd, byte[] buf, int len) throws IOException;
 
-  private native int close0(int fd) throws IOException;
+  private native int readDirect0(int fd, ByteBuffer buf, int position, int len) throws IOException;
+
+  private static native int close0(int fd);
+
+  // Waits for the master to become readable, the timeout (in milliseconds) to expire or the wakeup pipe to become
+  // readable, then reads, batching whatever arrives within batchWindow microseconds. Returns the number of bytes read,
+  // zero on timeout or wakeup, or -1 at end of stream or on error.
+  private native int readTimed0(int fd, int wakeupFD, byte[] buf, int off, int len, int timeout, int batchWindow)
+      throws IOException;
+
+  // Creates a non-blocking pipe, storing its read and write ends in fds. Returns 0 on success, -1 on error.
+  private native int openWakeup0(int[] fds);
+
+  private native int wakeup0(int wakeupFD);
 
   static {
     System.loadLibrary(PTY.LIBRARY_NAME);
@@ -8,11 +8,19 @@
 package org.eclipse.cdt.utils.pty;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import org.eclipse.cdt.utils.pty.PTY.MasterFD;
 
+import com.google.eclipse.elt.pty.NativeDescriptor;
+
 public class PTYOutputStream extends OutputStream {
+  // Cleared if the native library was built without support for direct buffers.
+  private static boolean directBuffersSupported = true;
+
   MasterFD master;
+  private final NativeDescriptor.Lease masterLease;
+  private volatile boolean closed;
 
   /**
    * From a Unix valid file descriptor set a Reader.
@@ -20,6 +28,15 @@ public class PTYOutputStream extends OutputStream {
    */
   public PTYOutputStream(MasterFD fd) {
     master = fd;
+    masterLease = fd.descriptor().lease(this);
+  }
+
+  private int fd() {
+    return closed ? -1 : master.getFD();
+  }
+
+  boolean isOpen() {
+    return fd() != -1;
   }
 
   @Override public void write(byte[] b, int off, int len) throws IOException {
@@ -30,9 +47,15 @@ public class PTYOutputStream extends OutputStream {
     } else if (len == 0) {
       return;
     }
-    byte[] tmpBuf = new byte[len];
-    System.arraycopy(b, off, tmpBuf, off, len);
-    write0(master.getFD(), tmpBuf, len);
+    // The native side copies the bytes through a small buffer on its stack, without allocating, and may write less.
+    while (len > 0) {
+      int count = write0(fd(), b, off, len);
+      if (count < 0) {
+        throw new IOException("Write error");
+      }
+      off += count;
+      len -= count;
+    }
   }
 
   @Override public void write(int b) throws IOException {
@@ -41,24 +64,58 @@ public class PTYOutputStream extends OutputStream {
     write(buf, 0, 1);
   }
 
-  @Override public void close() throws IOException {
-    if (master.getFD() == -1) {
-      return;
+  /**
+   * Writes all the remaining bytes of the given buffer, advancing its position. The contents of direct buffers are read
+   * by the native layer without any intermediate copy or allocation.
+   *
+   * @param src the buffer to write.
+   * @return the number of bytes written.
+   * @exception IOException on error.
+   */
+  public int write(ByteBuffer src) throws IOException {
+    int len = src.remaining();
+    if (src.isDirect() && directBuffersSupported) {
+      try {
+        while (src.hasRemaining()) {
+          int position = src.position();
+          int count = writeDirect0(fd(), src, position, src.remaining());
+          if (count < 0) {
+            throw new IOException("Write error");
+          }
+          src.position(position + count);
+        }
+        return len;
+      } catch (UnsatisfiedLinkError e) {
+        directBuffersSupported = false;
+      }
     }
-    int status = close0(master.getFD());
-    if (status == -1) {
-      throw new IOException("Close error");
+    if (src.hasArray()) {
+      write(src.array(), src.arrayOffset() + src.position(), len);
+      src.position(src.limit());
+      return len;
     }
-    master.setFD(-1);
+    byte[] buf = new byte[len];
+    src.get(buf);
+    write(buf, 0, len);
+    return len;
   }
 
-  @Override protected void finalize() throws IOException {
-    close();
+  /**
+   * Closes this stream. The master side of the pseudo terminal is closed once its input stream has been closed too.
+   */
+  @Override public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    masterLease.release();
   }
 
-  private native int write0(int fd, byte[] b, int len) throws IOException;
+  private native int write0(int fd, byte[] b, int off, int len) throws IOException;
 
-  private native int close0(int fd) throws IOException;
+  private native int writeDirect0(int fd, ByteBuffer buf, int position, int len) throws IOException;
 
   static {
     System.loadLibrary(PTY.LIBRARY_NAME);
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.eclipse.cdt.utils.spawner;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.eclipse.elt.pty.PtyPlugin;
+
+/**
+ * Waits for the exit of all the processes started by {@link Spawner} on a single thread.
+ * <p>
+ * Each process is watched through the operating system's readiness notification facility (a pidfd in an epoll set on
+ * Linux, an {@code EVFILT_PROC} filter on Mac OS X.) Only the watched processes are reaped, so the children started by
+ * other means (e.g. {@code Runtime.exec}) are left to whoever started them.
+ * <p>
+ * Exit notifications are dispatched on the reaper thread, which is shared by all the processes.
+ */
+final class ProcessReaper extends Thread {
+  private static final int MAX_EVENTS = 64;
+
+  // Values returned by watch0.
+  private static final int WATCHING = 0;
+  private static final int ALREADY_EXITED = 1;
+
+  private static ProcessReaper defaultReaper;
+  private static boolean triedToStart;
+
+  /**
+   * Returns the reaper shared by all processes, starting it if necessary.
+   * @return the shared reaper, or {@code null} if the native library cannot watch processes on this platform.
+   */
+  static synchronized ProcessReaper getDefault() {
+    if (defaultReaper == null && !triedToStart) {
+      triedToStart = true;
+      try {
+        defaultReaper = new ProcessReaper();
+        defaultReaper.start();
+      } catch (UnsatisfiedLinkError e) {
+        // The native library was built without reaper support.
+      } catch (IOException e) {
+        PtyPlugin.log("Unable to start the process reaper", e);
+      }
+    }
+    return defaultReaper;
+  }
+
+  private final Map<Integer, Spawner> processes = new ConcurrentHashMap<Integer, Spawner>();
+  private final int[] exitedPids = new int[MAX_EVENTS];
+  private final int pollFd;
+
+  private ProcessReaper() throws IOException {
+    super("Spawner Reaper");
+    setDaemon(true);
+    pollFd = create0();
+  }
+
+  /**
+   * Starts watching the process started by the given {@link Spawner}. If the process has already exited, it is reaped
+   * right away, on the calling thread.
+   * @param spawner the spawner that started the process.
+   * @return {@code false} if the process cannot be watched, in which case the caller must reap it some other way.
+   */
+  boolean watch(Spawner spawner) {
+    // Registered before watching, so that an exit reported right away finds its spawner.
+    processes.put(spawner.pid, spawner);
+    int result = watch0(pollFd, spawner.pid);
+    if (result == WATCHING) {
+      return true;
+    }
+    processes.remove(spawner.pid);
+    if (result == ALREADY_EXITED) {
+      spawner.reap();
+      return true;
+    }
+    return false;
+  }
+
+  @Override public void run() {
+    while (true) {
+      int count = wait0(pollFd, exitedPids);
+      if (count < 0) {
+        PtyPlugin.log("Process reaper stopped: unable to wait for processes to exit", null);
+        return;
+      }
+      for (int i = 0; i < count; i++) {
+        Spawner spawner = processes.remove(exitedPids[i]);
+        if (spawner != null) {
+          spawner.reap();
+        }
+      }
+    }
+  }
+
+  private static native int create0() throws IOException;
+
+  // Returns WATCHING if the process is now watched, ALREADY_EXITED if it exited before it could be watched, or -1 on
+  // error. A process is reported only once: it stops being watched when it exits.
+  private static native int watch0(int pollFd, int pid);
+
+  // Waits until at least one watched process exits. Stores the pids of the processes that exited, without reaping
+  // them, in exitedPids and returns how many there are, or -1 on error.
+  private static native int wait0(int pollFd, int[] exitedPids);
+}
@@ -8,17 +8,19 @@
 package org.eclipse.cdt.utils.spawner;
 
 import java.io.*;
-import java.util.StringTokenizer;
+import java.util.*;
 
 import org.eclipse.cdt.utils.pty.PTY;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.osgi.util.NLS;
 
-import com.google.eclipse.elt.pty.PtyPlugin;
+import com.google.eclipse.elt.pty.*;
 
 public class Spawner extends Process {
   static final String LIBRARY_NAME = "gspawner";
 
+  private static final String[] CHANNEL_NAMES = { "stdin", "stdout", "stderr" };
+
   public int NOOP = 0;
   public int HUP = 1;
   public int KILL = 9;
@@ -55,7 +57,11 @@ public class Spawner extends Process {
   int pid = 0;
   int status;
   final int[] fChannels = new int[3];
+  // Channels whose stream has not been created yet are owned by this spawner, and handed over to their stream.
+  private final NativeDescriptor[] channels = new NativeDescriptor[3];
+  private final NativeDescriptor.Lease[] channelLeases = new NativeDescriptor.Lease[3];
   boolean isDone;
+  private final List<ExitListener> exitListeners = new ArrayList<ExitListener>();
   OutputStream out;
   InputStream in;
   InputStream err;
@@ -120,10 +126,6 @@ public class Spawner extends Process {
     exec(cmdarray, environment, dirpath);
   }
 
-  @Override protected void finalize() throws Throwable {
-    closeUnusedStreams();
-  }
-
   /**
    * See java.lang.Process#getInputStream (); The client is responsible for closing the stream explicitly.
    **/
@@ -132,7 +134,8 @@ public class Spawner extends Process {
       if (fPty != null) {
         in = fPty.getInputStream();
       } else {
-        in = new SpawnerInputStream(fChannels[1]);
+        in = new SpawnerInputStream(channels[1]);
+        handOverChannel(1);
       }
     }
     return in;
@@ -146,7 +149,8 @@ public class Spawner extends Process {
       if (fPty != null) {
         out = fPty.getOutputStream();
       } else {
-        out = new SpawnerOutputStream(fChannels[0]);
+        out = new SpawnerOutputStream(channels[0]);
+        handOverChannel(0);
       }
     }
     return out;
@@ -166,7 +170,8 @@ public class Spawner extends Process {
           }
         };
       } else {
-        err = new SpawnerInputStream(fChannels[2]);
+        err = new SpawnerInputStream(channels[2]);
+        handOverChannel(2);
       }
     }
     return err;
@@ -203,6 +208,27 @@ public class Spawner extends Process {
     return status;
   }
 
+  /**
+   * Adds a listener to be notified when the process exits. If the process has already exited, the listener is notified
+   * right away, on the calling thread.
+   * @param listener the listener to add.
+   */
+  public void addExitListener(ExitListener listener) {
+    int exitValue;
+    synchronized (this) {
+      if (!isDone) {
+        exitListeners.add(listener);
+        return;
+      }
+      exitValue = status;
+    }
+    listener.processExited(exitValue);
+  }
+
+  public synchronized void removeExitListener(ExitListener listener) {
+    exitListeners.remove(listener);
+  }
+
   /**
    * See java.lang.Process#destroy ();
    *
@@ -282,23 +308,18 @@ public class Spawner extends Process {
     if (envp == null) {
       envp = new String[0];
     }
-    Reaper reaper = new Reaper(cmdarray, envp, dirpath);
-    reaper.setDaemon(true);
-    reaper.start();
-    // Wait until the subprocess is started or error.
-    synchronized (this) {
-      while (pid == 0) {
-        try {
-          wait();
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-        }
-      }
+    try {
+      pid = exec0(cmdarray, envp, dirpath, fChannels);
+    } catch (IOException e) {
+      throw new IOException(errorMessage(command, e));
     }
-    // Check for errors.
     if (pid == -1) {
-      throw new IOException(reaper.getErrorMessage());
+      throw new IOException(errorMessage(command, null));
     }
+    for (int i = 0; i < channels.length; i++) {
+      ownChannel(i);
+    }
+    watchForExit();
   }
 
   private void exec_pty(String[] command, String[] environment, String workingDirectory, PTY pty) throws IOException {
@@ -310,30 +331,22 @@ public class Spawner extends Process {
     if (environment == null) {
       environment = new String[0];
     }
-    final String slaveName = pty.getSlaveName();
-    final int masterFD = pty.getMasterFD().getFD();
-    final boolean console = pty.isConsole();
-    // int fdm = pty.get
-    Reaper reaper = new Reaper(command, environment, workingDirectory) {
-      @Override int execute(String[] cmd, String[] env, String dir, int[] channels) throws IOException {
-        return exec2(cmd, env, dir, channels, slaveName, masterFD, console);
-      }
-    };
-    reaper.setDaemon(true);
-    reaper.start();
-    // Wait until the subprocess is started or error.
-    synchronized (this) {
-      while (pid == 0) {
-        try {
-          wait();
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-        }
-      }
+    String slaveName = pty.getSlaveName();
+    int masterFD = pty.getMasterFD().getFD();
+    boolean console = pty.isConsole();
+    try {
+      pid = exec2(command, environment, workingDirectory, fChannels, slaveName, masterFD, console);
+    } catch (IOException e) {
+      throw new IOException("Exec_tty error:" + errorMessage(cmd, e));
     }
     if (pid == -1) {
-      throw new IOException("Exec_tty error:" + reaper.getErrorMessage());
+      throw new IOException("Exec_tty error:" + errorMessage(cmd, null));
     }
+    if (console) {
+      // stderr is a pipe. The other channels are the master side of the pseudo terminal, which the PTY owns.
+      ownChannel(2);
+    }
+    watchForExit();
   }
 
   public void exec_detached(String[] cmdarray, String[] envp, String dirpath) throws IOException {
@@ -354,6 +367,68 @@ public class Spawner extends Process {
     fChannels[2] = -1;
   }
 
+  private void ownChannel(int index) {
+    if (fChannels[index] != -1) {
+      channels[index] = new NativeDescriptor(fChannels[index], "process " + pid, CHANNEL_NAMES[index],
+          SpawnerInputStream.CLOSER);
+      channelLeases[index] = channels[index].lease(this);
+    }
+  }
+
+  private void handOverChannel(int index) {
+    NativeDescriptor.Lease lease = channelLeases[index];
+    channelLeases[index] = null;
+    if (lease != null) {
+      try {
+        lease.release();
+      } catch (IOException ignored) {
+        // The new stream holds a lease, so the channel is not closed.
+      }
+    }
+  }
+
+  private void watchForExit() {
+    ProcessReaper reaper = ProcessReaper.getDefault();
+    if (reaper != null && reaper.watch(this)) {
+      return;
+    }
+    // Fall back to a thread that blocks until the process exits.
+    Thread waiter = new Thread("Spawner Reaper") {
+      @Override public void run() {
+        reap();
+      }
+    };
+    waiter.setDaemon(true);
+    waiter.start();
+  }
+
+  /**
+   * Reaps the process, once it has exited, and notifies the threads and listeners waiting for it.
+   */
+  void reap() {
+    int exitValue = waitFor(pid);
+    List<ExitListener> listeners;
+    synchronized (this) {
+      status = exitValue;
+      isDone = true;
+      notifyAll();
+      listeners = new ArrayList<ExitListener>(exitListeners);
+      exitListeners.clear();
+    }
+    for (ExitListener listener : listeners) {
+      try {
+        listener.processExited(exitValue);
+      } catch (RuntimeException e) {
+        PtyPlugin.log(e);
+      }
+    }
+  }
+
+  private static String errorMessage(String command, Exception e) {
+    String reason = (e != null) ? e.getMessage() : "Unknown reason";
+    return NLS.bind(PtyPlugin.getResourceString("Util.error.cannotRun"), command, reason);
+  }
+
   private synchronized void closeUnusedStreams() {
     try {
       if (null == err) {
@@ -387,51 +462,15 @@ public class Spawner extends Process {
     System.loadLibrary(LIBRARY_NAME);
   }
 
-  // Spawn a thread to handle the forking and waiting.
-  // We do it this way because on linux the SIGCHLD is send to the one thread. So do the forking and then wait in the
-  // same thread.
-  class Reaper extends Thread {
-    String[] command;
-    String[] environment;
-    String dirPath;
-    volatile Throwable exception;
-
-    public Reaper(String[] command, String[] environment, String dirPath) {
-      super("Spawner Reaper");
-      this.command = command;
-      this.environment = environment;
-      this.dirPath = dirPath;
-      exception = null;
-    }
-
-    int execute(String[] cmdarray, String[] envp, String dir, int[] channels) throws IOException {
-      return exec0(cmdarray, envp, dir, channels);
-    }
-
-    @Override public void run() {
-      try {
-        pid = execute(command, environment, dirPath, fChannels);
-      } catch (Exception e) {
-        pid = -1;
-        exception = e;
-      }
-      // Tell spawner that the process started.
-      synchronized (Spawner.this) {
-        Spawner.this.notifyAll();
-      }
-      if (pid != -1) {
-        // Sync with spawner and notify when done.
-        status = waitFor(pid);
-        synchronized (Spawner.this) {
-          isDone = true;
-          Spawner.this.notifyAll();
-        }
-      }
-    }
-
-    public String getErrorMessage() {
-      final String reason = exception != null ? exception.getMessage() : "Unknown reason";
-      return NLS.bind(PtyPlugin.getResourceString("Util.error.cannotRun"), command[0], reason);
-    }
+  /**
+   * Notified when a process started by a {@link Spawner} exits.
+   */
+  public interface ExitListener {
+    /**
+     * Called once the process has exited and has been reaped. It is called on a thread shared by all the processes,
+     * so it should return quickly.
+     * @param exitValue the exit value of the process.
+     */
+    void processExited(int exitValue);
   }
 }
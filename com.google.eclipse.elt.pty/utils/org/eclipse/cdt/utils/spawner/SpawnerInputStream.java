@@ -9,17 +9,26 @@ package org.eclipse.cdt.utils.spawner;
 
 import java.io.*;
 
-import com.google.eclipse.elt.pty.PtyPlugin;
+import com.google.eclipse.elt.pty.*;
 
 class SpawnerInputStream extends InputStream {
+  // Closes the channels of a process, without referencing any stream.
+  static final NativeDescriptor.Closer CLOSER = new NativeDescriptor.Closer() {
+    @Override public int close(int fd) {
+      return close0(fd);
+    }
+  };
+
+  private final NativeDescriptor.Lease lease;
   private int fd;
 
   /**
    * From a Unix valid file descriptor set a Reader.
-   * @param fd file descriptor.
+   * @param descriptor file descriptor, or {@code null} if there is nothing to read.
    */
-  public SpawnerInputStream(int fd) {
-    this.fd = fd;
+  public SpawnerInputStream(NativeDescriptor descriptor) {
+    lease = (descriptor != null) ? descriptor.lease(this) : null;
+    fd = (descriptor != null) ? descriptor.fd() : -1;
   }
 
   @Override public int read() throws IOException {
@@ -55,11 +64,12 @@ class SpawnerInputStream extends InputStream {
     if (fd == -1) {
       return;
     }
-    int status = close0(fd);
-    if (status == -1) {
+    fd = -1;
+    try {
+      lease.release();
+    } catch (IOException e) {
       throw new IOException(PtyPlugin.getResourceString("Util.exception.closeError"));
     }
-    fd = -1;
   }
 
   @Override public int available() throws IOException {
@@ -71,13 +81,9 @@ class SpawnerInputStream extends InputStream {
     }
   }
 
-  @Override protected void finalize() throws IOException {
-    close();
-  }
-
   private native int read0(int fileDesc, byte[] buf, int len) throws IOException;
 
-  private native int close0(int fileDesc) throws IOException;
+  private static native int close0(int fileDesc);
 
   private native int available0(int fileDesc) throws IOException;
 
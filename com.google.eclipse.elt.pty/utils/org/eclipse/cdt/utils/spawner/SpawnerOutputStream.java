@@ -9,15 +9,23 @@ package org.eclipse.cdt.utils.spawner;
 
 import java.io.*;
 
+import com.google.eclipse.elt.pty.NativeDescriptor;
+
 public class SpawnerOutputStream extends OutputStream {
+  private final NativeDescriptor.Lease lease;
   private int fd;
 
   /**
-   * From a Unix valid file descriptor set a Reader.
+   * From a Unix valid file descriptor set a Writer. The stream owns the file descriptor, and closes it when closed.
    * @param fd file descriptor.
    */
   public SpawnerOutputStream(int fd) {
-    this.fd = fd;
+    this(new NativeDescriptor(fd, "fd " + fd, "output", SpawnerInputStream.CLOSER));
+  }
+
+  SpawnerOutputStream(NativeDescriptor descriptor) {
+    lease = (descriptor != null) ? descriptor.lease(this) : null;
+    fd = (descriptor != null) ? descriptor.fd() : -1;
   }
 
   @Override public void write(byte[] b, int off, int len) throws IOException {
@@ -45,21 +53,16 @@ public class SpawnerOutputStream extends OutputStream {
     if (fd == -1) {
       return;
     }
-    int status = close0(fd);
-    if (status == -1) {
+    fd = -1;
+    try {
+      lease.release();
+    } catch (IOException e) {
       throw new IOException("close error");
     }
-    fd = -1;
-  }
-
-  @Override protected void finalize() throws IOException {
-    close();
   }
 
   private native int write0(int fd, byte[] b, int len) throws IOException;
 
-  private native int close0(int fd);
-
   static {
     System.loadLibrary(Spawner.LIBRARY_NAME);
   }
@@ -20,6 +20,8 @@ import org.eclipse.jface.resource.*;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
+import com.google.eclipse.elt.view.connector.ShellPool;
+
 /**
  * The activator class controls the plug-in life cycle.
  *
@@ -33,9 +35,11 @@ public class Activator extends AbstractUIPlugin {
   @Override public void start(BundleContext context) throws Exception {
     super.start(context);
     plugin = this;
+    ShellPool.instance().warmUp();
   }
 
   @Override public void stop(BundleContext context) throws Exception {
+    ShellPool.instance().dispose();
     plugin = null;
     super.stop(context);
   }
@@ -18,11 +18,9 @@ import static com.google.eclipse.elt.view.connector.PseudoTerminal.isPlatformSup
 import static com.google.eclipse.elt.view.util.Platform.*;
 
 import java.io.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.eclipse.core.runtime.*;
-import org.eclipse.debug.core.IStreamListener;
-import org.eclipse.debug.core.model.IStreamMonitor;
-import org.eclipse.debug.internal.core.StreamsProxy;
 import org.eclipse.osgi.util.NLS;
 
 import com.google.eclipse.elt.emulator.connector.TerminalConnector;
@@ -34,14 +32,13 @@ import com.google.eclipse.elt.emulator.provisional.api.provider.TerminalConnecto
  *
  * @author alruiz@google.com (Alex Ruiz)
  */
-@SuppressWarnings("restriction") // StreamsProxy is internal API
 public class LocalTerminalConnector extends TerminalConnectorDelegate implements LifeCycleListener {
   private static final String ID = "com.google.eclipse.terminal.local.core.connector";
 
-  public static ITerminalConnector createLocalTerminalConnector(final String encoding) {
+  public static ITerminalConnector createLocalTerminalConnector() {
     TerminalConnector.Factory factory = new TerminalConnector.Factory(){
       @Override public TerminalConnectorDelegate makeConnector() {
-        return new LocalTerminalConnector(encoding);
+        return new LocalTerminalConnector();
       }
     };
     TerminalConnector connector = new TerminalConnector(factory, ID, localTerminalName);
@@ -52,44 +49,44 @@ public class LocalTerminalConnector extends TerminalConnectorDelegate implements
     return connector;
   }
 
+  private final CopyOnWriteArrayList<LifeCycleListener> lifeCycleListeners =
+      new CopyOnWriteArrayList<LifeCycleListener>();
+
   private IPath workingDirectory;
-  private PseudoTerminal pseudoTerminal;
+  private volatile PseudoTerminal pseudoTerminal;
 
-  private StreamsProxy streamsProxy;
   private OutputStream terminalToRemoteStream;
+  private TerminalOutputReader outputReader;
 
-  private final String encoding;
-
-  private LocalTerminalConnector(String encoding) {
-    this.encoding = encoding;
-  }
+  private LocalTerminalConnector() {}
 
   /**
-   * Verifies that PTY support is available on this platform.
-   * @throws CoreException if PTY support is <strong>not</strong> available on this platform.
-   * @see TerminalConnectorDelegate#initialize()
+   * Starts a shell attached to a new pseudo-terminal. Called from a background thread, since verifying that PTY support
+   * is available on this platform loads native libraries.
    */
-  @Override public void initialize() throws CoreException {
-    if (!isPlatformSupported()) {
-      String message = NLS.bind(errorNoPseudoTerminalSupport, getOS(), getOSArch());
-      throw new CoreException(new Status(WARNING, PLUGIN_ID, message));
-    }
-  }
-
   @Override protected void connect() {
     terminalControl.setState(CONNECTING);
+    if (!isPlatformSupported()) {
+      terminalControl.setErrorMessage(NLS.bind(errorNoPseudoTerminalSupport, getOS(), getOSArch()));
+      terminalControl.setState(CLOSED);
+      return;
+    }
     File workingDirectory = workingDirectory();
-    pseudoTerminal = new PseudoTerminal(workingDirectory);
-    pseudoTerminal.addLifeCycleListener(this);
     try {
-      pseudoTerminal.launch();
-      streamsProxy = new StreamsProxy(pseudoTerminal.systemProcess(), encoding);
-      terminalToRemoteStream = new BufferedOutputStream(new TerminalOutputStream(streamsProxy, encoding), 1024);
-      addListeners(terminalControl, streamsProxy.getOutputStreamMonitor(), streamsProxy.getErrorStreamMonitor());
-      if (streamsProxy != null) {
-        terminalControl.setState(CONNECTED);
-        return;
+      // Attach to a shell started ahead of time, if there is one.
+      pseudoTerminal = ShellPool.instance().take(workingDirectory, terminalControl.getEncoding());
+      if (pseudoTerminal == null) {
+        pseudoTerminal = new PseudoTerminal(workingDirectory);
+        pseudoTerminal.launch();
       }
+      terminalToRemoteStream = new BufferedOutputStream(pseudoTerminal.outputStream(), 1024);
+      // The shell's stdout and stderr are both attached to the pseudo-terminal, so a single reader sees all output.
+      outputReader = new TerminalOutputReader(pseudoTerminal.pty(), terminalControl);
+      outputReader.start();
+      terminalControl.setState(CONNECTED);
+      // Notified right away if the shell has already exited.
+      pseudoTerminal.addLifeCycleListener(this);
+      return;
     } catch (Throwable t) {
       log(new Status(INFO, PLUGIN_ID, OK, "Unable to start terminal", t));
     }
@@ -105,17 +102,6 @@ public class LocalTerminalConnector extends TerminalConnectorDelegate implements
     return (file.isDirectory()) ? file : null;
   }
 
-  private void addListeners(ITerminalControl control, IStreamMonitor...monitors) throws UnsupportedEncodingException {
-    for (IStreamMonitor monitor : monitors) {
-      addListener(monitor, new TerminalOutputListener(control, encoding));
-    }
-  }
-
-  private void addListener(IStreamMonitor monitor, IStreamListener listener) {
-    monitor.addListener(listener);
-    listener.streamAppended(monitor.getContents(), monitor);
-  }
-
   @Override public OutputStream getTerminalToRemoteStream() {
     return terminalToRemoteStream;
   }
@@ -134,8 +120,9 @@ public class LocalTerminalConnector extends TerminalConnectorDelegate implements
    * @param newHeight the new terminal height (in lines.)
    */
   @Override public void setTerminalSize(int newWidth, int newHeight) {
-    if (pseudoTerminal != null) {
-      pseudoTerminal.updateSize(newWidth, newHeight);
+    PseudoTerminal terminal = pseudoTerminal;
+    if (terminal != null) {
+      terminal.updateSize(newWidth, newHeight);
     }
   }
 
@@ -144,17 +131,34 @@ public class LocalTerminalConnector extends TerminalConnectorDelegate implements
   }
 
   @Override protected void onDisconnect() {
-    pseudoTerminal.disconnect();
+    if (outputReader != null) {
+      outputReader.stop();
+    }
+    // The shell may not have been started yet.
+    PseudoTerminal terminal = pseudoTerminal;
+    if (terminal != null) {
+      terminal.disconnect();
+    }
   }
 
   @Override public void executionFinished() {
     terminalControl.setState(CLOSED);
-    if (streamsProxy != null) {
-      streamsProxy.close();
+    if (terminalToRemoteStream != null) {
+      try {
+        terminalToRemoteStream.close();
+      } catch (IOException ignored) {}
+    }
+    for (LifeCycleListener listener : lifeCycleListeners) {
+      listener.executionFinished();
     }
   }
 
+  /**
+   * Adds a listener to be notified when the shell exits. The listener can be added before the shell has been started,
+   * and stays registered when the terminal reconnects.
+   * @param listener the listener to add.
+   */
   public void addLifeCycleListener(LifeCycleListener listener) {
-    pseudoTerminal.addLifeCycleListener(listener);
+    lifeCycleListeners.addIfAbsent(listener);
   }
 }
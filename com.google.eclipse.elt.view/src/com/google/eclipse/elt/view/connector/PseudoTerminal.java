@@ -8,50 +8,45 @@
  */
 package com.google.eclipse.elt.view.connector;
 
-import static java.lang.Thread.currentThread;
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.Arrays.asList;
 
 import static com.google.eclipse.elt.view.util.Platform.*;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
 
 import org.eclipse.cdt.utils.pty.PTY;
-import org.eclipse.cdt.utils.spawner.ProcessFactory;
+import org.eclipse.cdt.utils.spawner.*;
 
 /**
  * @author alruiz@google.com (Alex Ruiz)
  */
 class PseudoTerminal {
   private final List<LifeCycleListener> lifeCycleListeners = new ArrayList<LifeCycleListener>();
-  private final ExecutorService executor = newSingleThreadExecutor();
 
   private final File workingDirectory;
+  private final String[] environment;
 
-  private Process process;
+  private Spawner process;
   private PTY pty;
+  private boolean finished;
 
   private int width;
   private int height;
 
   PseudoTerminal(File workingDirectory) {
     this.workingDirectory = workingDirectory;
+    environment = environment();
   }
 
   void launch() throws IOException {
     ProcessFactory factory = ProcessFactory.getFactory();
     pty = new PTY(false);
-    process = factory.exec(command(), environment(), workingDirectory, pty);
-    executor.execute(new Runnable() {
-      @Override public void run() {
-        try {
-          process.waitFor();
-        } catch (InterruptedException ignored) {
-          currentThread().interrupt();
-        } finally {
-          notifyExecutionFinished();
-        }
+    process = (Spawner) factory.exec(command(), environment, workingDirectory, pty);
+    // Notified on the thread shared by all the shells, once the shell has been reaped.
+    process.addExitListener(new Spawner.ExitListener() {
+      @Override public void processExited(int exitValue) {
+        notifyExecutionFinished();
       }
     });
   }
@@ -61,24 +56,87 @@ class PseudoTerminal {
   }
 
   private void notifyExecutionFinished() {
-    for (LifeCycleListener listener : lifeCycleListeners) {
+    List<LifeCycleListener> listeners;
+    synchronized (lifeCycleListeners) {
+      finished = true;
+      listeners = new ArrayList<LifeCycleListener>(lifeCycleListeners);
+    }
+    for (LifeCycleListener listener : listeners) {
       listener.executionFinished();
     }
   }
 
+  /**
+   * Adds a listener to be notified when the shell exits. If the shell has already exited, the listener is notified
+   * right away.
+   * @param listener the listener to add.
+   */
   void addLifeCycleListener(LifeCycleListener listener) {
-    lifeCycleListeners.add(listener);
+    synchronized (lifeCycleListeners) {
+      if (!finished) {
+        lifeCycleListeners.add(listener);
+        return;
+      }
+    }
+    listener.executionFinished();
+  }
+
+  void removeLifeCycleListener(LifeCycleListener listener) {
+    synchronized (lifeCycleListeners) {
+      lifeCycleListeners.remove(listener);
+    }
+  }
+
+  boolean isRunning() {
+    synchronized (lifeCycleListeners) {
+      return process != null && !finished;
+    }
+  }
+
+  File workingDirectory() {
+    return workingDirectory;
+  }
+
+  /**
+   * Indicates whether this shell was started with the given environment variables, in any order.
+   * @param variables environment variables of the form "<code>name=value</code>".
+   * @return {@code true} if this shell was started with the given environment variables.
+   */
+  boolean hasEnvironment(String[] variables) {
+    return new HashSet<String>(asList(environment)).equals(new HashSet<String>(asList(variables)));
+  }
+
+  /**
+   * Makes the shell change its working directory, and clears the screen.
+   * @param directory the new working directory.
+   * @param encoding the encoding of the terminal, used to send the command.
+   * @throws IOException if the command cannot be sent to the shell.
+   */
+  void changeDirectory(File directory, String encoding) throws IOException {
+    // The leading space keeps the command out of the history of most shells.
+    String command = " cd '" + directory.getAbsolutePath().replace("'", "'\\''") + "' && clear\n";
+    OutputStream out = outputStream();
+    out.write(command.getBytes(encoding));
+    out.flush();
+  }
+
+  PTY pty() {
+    return pty;
   }
 
-  Process systemProcess() {
-    return process;
+  /**
+   * Returns the stream used to send bytes to the shell through the pseudo-terminal.
+   * @return the stream used to send bytes to the shell.
+   */
+  OutputStream outputStream() {
+    return process.getOutputStream();
   }
 
-  void updateSize(int newWidth, int newHeight) {
+  synchronized void updateSize(int newWidth, int newHeight) {
     if (pty != null && (newWidth != width || newHeight != height)) {
-      pty.setTerminalSize(width, height);
       width = newWidth;
       height = newHeight;
+      pty.setTerminalSize(newWidth, newHeight);
     }
   }
 
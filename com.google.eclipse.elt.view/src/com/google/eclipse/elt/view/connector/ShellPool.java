@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.view.connector;
+
+import static com.google.eclipse.elt.view.Activator.log;
+import static com.google.eclipse.elt.view.preferences.GeneralPreferences.prewarmedShellCount;
+import static com.google.eclipse.elt.view.util.Platform.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Keeps shells started ahead of time, so that opening a terminal does not have to wait for a shell to start.
+ * <p>
+ * Idle shells are matched by working directory and environment. When no idle shell was started in the requested
+ * directory, an idle shell with the same environment is told to {@code cd} to it. Every time a shell is taken, or
+ * missing, a replacement is started in the background for the requested directory. The number of idle shells is set
+ * by a preference; the pool is disabled when it is zero.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+public final class ShellPool {
+  private static final ShellPool INSTANCE = new ShellPool();
+
+  public static ShellPool instance() {
+    return INSTANCE;
+  }
+
+  // Idle shells, least recently started first.
+  private final LinkedList<PseudoTerminal> idleShells = new LinkedList<PseudoTerminal>();
+  private final ExecutorService launcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "Terminal shell pool");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  private boolean disposed;
+
+  private ShellPool() {}
+
+  /**
+   * Starts a shell in the user's home directory in the background, if the pool is enabled.
+   */
+  public void warmUp() {
+    IPath home = userHomeDirectory();
+    replenish((home != null) ? home.toFile() : null);
+  }
+
+  /**
+   * Takes an idle shell, running in the given directory.
+   * @param workingDirectory the working directory of the shell, or {@code null} for the default one.
+   * @param encoding the encoding of the terminal the shell is for.
+   * @return a running shell, or {@code null} if no idle shell can be used.
+   */
+  PseudoTerminal take(File workingDirectory, String encoding) {
+    if (prewarmedShellCount() <= 0) {
+      trimTo(0);
+      return null;
+    }
+    PseudoTerminal shell = removeIdleShell(workingDirectory, environment(), encoding);
+    replenish(workingDirectory);
+    return shell;
+  }
+
+  private synchronized PseudoTerminal removeIdleShell(File workingDirectory, String[] environment, String encoding) {
+    PseudoTerminal candidate = null;
+    for (Iterator<PseudoTerminal> i = idleShells.iterator(); i.hasNext();) {
+      PseudoTerminal shell = i.next();
+      if (!shell.isRunning()) {
+        i.remove();
+        continue;
+      }
+      if (!shell.hasEnvironment(environment)) {
+        continue;
+      }
+      if (sameFile(shell.workingDirectory(), workingDirectory)) {
+        i.remove();
+        return shell;
+      }
+      if (candidate == null && workingDirectory != null) {
+        candidate = shell;
+      }
+    }
+    if (candidate != null) {
+      try {
+        candidate.changeDirectory(workingDirectory, encoding);
+        idleShells.remove(candidate);
+        return candidate;
+      } catch (IOException e) {
+        log("Unable to change the working directory of a shell", e);
+      }
+    }
+    return null;
+  }
+
+  private void replenish(final File workingDirectory) {
+    if (prewarmedShellCount() <= 0) {
+      return;
+    }
+    try {
+      launcher.execute(new Runnable() {
+        @Override public void run() {
+          if (!hasIdleShellIn(workingDirectory)) {
+            launch(workingDirectory);
+          }
+        }
+      });
+    } catch (RejectedExecutionException ignored) {
+      // The pool has been disposed.
+    }
+  }
+
+  private synchronized boolean hasIdleShellIn(File workingDirectory) {
+    for (PseudoTerminal shell : idleShells) {
+      if (shell.isRunning() && sameFile(shell.workingDirectory(), workingDirectory)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void launch(File workingDirectory) {
+    final PseudoTerminal shell = new PseudoTerminal(workingDirectory);
+    try {
+      shell.launch();
+    } catch (IOException e) {
+      log("Unable to start a shell in the background", e);
+      return;
+    }
+    synchronized (this) {
+      if (disposed) {
+        shell.disconnect();
+        return;
+      }
+      idleShells.addLast(shell);
+    }
+    trimTo(prewarmedShellCount());
+  }
+
+  private void trimTo(int count) {
+    List<PseudoTerminal> evicted = new ArrayList<PseudoTerminal>();
+    synchronized (this) {
+      while (idleShells.size() > Math.max(0, count)) {
+        evicted.add(idleShells.removeFirst());
+      }
+    }
+    for (PseudoTerminal shell : evicted) {
+      shell.disconnect();
+    }
+  }
+
+  private static boolean sameFile(File f1, File f2) {
+    return (f1 == null) ? f2 == null : f1.equals(f2);
+  }
+
+  /**
+   * Stops all idle shells. No shell is started afterwards.
+   */
+  public void dispose() {
+    synchronized (this) {
+      disposed = true;
+    }
+    launcher.shutdownNow();
+    trimTo(0);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012 Google Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.google.eclipse.elt.view.connector;
+
+import static com.google.eclipse.elt.view.Activator.log;
+
+import java.io.*;
+
+import org.eclipse.cdt.utils.pty.PTY;
+
+import com.google.eclipse.elt.emulator.provisional.api.ITerminalControl;
+import com.google.eclipse.elt.pty.PtyReactor;
+
+/**
+ * Copies the raw bytes written by the shell to the master side of the pseudo-terminal straight into the terminal
+ * emulator's input queue. No decoding happens here: the emulator is the only component that turns bytes into
+ * characters, and nothing read is retained once it has been handed over.
+ * <p>
+ * When the native library supports it, the pseudo-terminal is watched by the shared {@link PtyReactor}; otherwise a
+ * dedicated thread reads from the pseudo-terminal, batching bursts of output into a single chunk. The reactor thread is
+ * shared with other terminals, so output is only handed over as far as the emulator's input queue has room; the
+ * reactor holds back the rest, and stops reading from this pseudo-terminal, until the emulator has caught up.
+ *
+ * @author alruiz@google.com (Alex Ruiz)
+ */
+class TerminalOutputReader implements Runnable, PtyReactor.Consumer {
+  private static final int BUFFER_SIZE = 8 * 1024;
+  // Output arriving within this many microseconds of the previous read is delivered in the same chunk.
+  private static final int BATCH_WINDOW_MICROS = 250;
+
+  private final PTY pty;
+  private final InputStream source;
+  private final ITerminalControl control;
+
+  private volatile boolean stopped;
+  private volatile PtyReactor.Registration registration;
+  // Set when the emulator asked for more output before the registration was known.
+  private volatile boolean resumeRequested;
+
+  private final Runnable resumer = new Runnable() {
+    @Override public void run() {
+      resumeRequested = true;
+      PtyReactor.Registration current = registration;
+      if (current != null) {
+        current.resume();
+      }
+    }
+  };
+
+  TerminalOutputReader(PTY pty, ITerminalControl control) {
+    this.pty = pty;
+    this.source = pty.getInputStream();
+    this.control = control;
+  }
+
+  void start() {
+    PtyReactor reactor = PtyReactor.getDefault();
+    if (reactor != null) {
+      try {
+        registration = reactor.register(pty, this);
+        if (resumeRequested) {
+          registration.resume();
+        }
+        return;
+      } catch (IOException e) {
+        log("Unable to watch the pseudo-terminal, falling back to a dedicated thread", e);
+      }
+    }
+    Thread thread = new Thread(this, "Terminal output reader");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops copying output. A reader thread blocked on the pseudo-terminal returns promptly.
+   */
+  void stop() {
+    stopped = true;
+    PtyReactor.Registration current = registration;
+    if (current != null) {
+      current.cancel();
+    }
+    pty.wakeUpReader();
+  }
+
+  @Override public void run() {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    OutputStream target = control.getRemoteToTerminalOutputStream();
+    try {
+      int count;
+      while (!stopped && (count = pty.read(buffer, 0, buffer.length, -1, BATCH_WINDOW_MICROS)) >= 0) {
+        if (count > 0) {
+          target.write(buffer, 0, count);
+        }
+      }
+    } catch (IOException ignored) {
+      // The master side of the pseudo-terminal reports an I/O error once the shell has exited.
+    } finally {
+      closeInput();
+    }
+  }
+
+  @Override public int bytesRead(byte[] buffer, int offset, int count) throws IOException {
+    return control.offerRemoteToTerminal(buffer, offset, count, resumer);
+  }
+
+  @Override public void endOfStream() {
+    closeInput();
+  }
+
+  private void closeInput() {
+    try {
+      source.close();
+    } catch (IOException ignored) {}
+  }
+}
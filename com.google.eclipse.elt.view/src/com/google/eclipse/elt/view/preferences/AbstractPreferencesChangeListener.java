@@ -30,6 +30,10 @@ public abstract class AbstractPreferencesChangeListener implements IPropertyChan
     if (USE_BLINKING_CURSOR.equals(property)) {
       onUseBlinkingCursorChanged();
     }
+    if (RENDERING_MODE.equals(property) || MAXIMUM_FRAME_RATE.equals(property)
+        || THROUGHPUT_PARSE_BUDGET.equals(property)) {
+      onRenderingChanged();
+    }
   }
 
   protected abstract void onBufferLineCountChanged();
@@ -39,4 +43,6 @@ public abstract class AbstractPreferencesChangeListener implements IPropertyChan
   protected abstract void onFontChanged();
 
   protected abstract void onUseBlinkingCursorChanged();
+
+  protected abstract void onRenderingChanged();
 }
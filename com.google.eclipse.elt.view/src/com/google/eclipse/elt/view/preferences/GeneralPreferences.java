@@ -11,6 +11,8 @@ package com.google.eclipse.elt.view.preferences;
 import static com.google.eclipse.elt.view.Activator.preferenceStore;
 import static com.google.eclipse.elt.view.preferences.PreferenceNames.*;
 
+import com.google.eclipse.elt.emulator.control.RenderingMode;
+
 /**
  * @author alruiz@google.com (Alex Ruiz)
  */
@@ -31,5 +33,25 @@ public final class GeneralPreferences {
     preferenceStore().setValue(WARN_ON_CLOSE, newValue);
   }
 
+  public static RenderingMode renderingMode() {
+    try {
+      return RenderingMode.valueOf(preferenceStore().getString(RENDERING_MODE));
+    } catch (IllegalArgumentException e) {
+      return RenderingMode.AUTOMATIC;
+    }
+  }
+
+  public static int maximumFrameRate() {
+    return preferenceStore().getInt(MAXIMUM_FRAME_RATE);
+  }
+
+  public static int throughputParseBudget() {
+    return preferenceStore().getInt(THROUGHPUT_PARSE_BUDGET);
+  }
+
+  public static int prewarmedShellCount() {
+    return preferenceStore().getInt(PREWARMED_SHELL_COUNT);
+  }
+
   private GeneralPreferences() {}
 }
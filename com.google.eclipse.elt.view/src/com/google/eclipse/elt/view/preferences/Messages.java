@@ -23,8 +23,18 @@ public class Messages extends NLS {
   public static String foregroundPrompt;
   public static String generalPreferencesTitle;
   public static String invalidBufferLineCount;
+  public static String invalidMaximumFrameRate;
+  public static String invalidPrewarmedShellCount;
+  public static String invalidThroughputParseBudget;
+  public static String maximumFrameRate;
+  public static String prewarmedShellCount;
   public static String previewPrompt;
+  public static String renderingMode;
+  public static String renderingModeAutomatic;
+  public static String renderingModeHighThroughput;
+  public static String renderingModeLowLatency;
   public static String textFontLink;
+  public static String throughputParseBudget;
   public static String unableToLoadPreviewContent;
   public static String useBlinkingCursor;
   public static String useCustomFont;
@@ -8,6 +8,7 @@
  */
 package com.google.eclipse.elt.view.preferences;
 
+import static com.google.eclipse.elt.emulator.control.RenderingMode.AUTOMATIC;
 import static com.google.eclipse.elt.view.Activator.preferenceStore;
 import static com.google.eclipse.elt.view.preferences.PreferenceNames.*;
 
@@ -24,6 +25,10 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
     preferenceStore().setDefault(BUFFER_LINE_COUNT, 1000);
     preferenceStore().setDefault(CLOSE_VIEW_ON_EXIT, true);
     preferenceStore().setDefault(WARN_ON_CLOSE, true);
+    preferenceStore().setDefault(RENDERING_MODE, AUTOMATIC.name());
+    preferenceStore().setDefault(MAXIMUM_FRAME_RATE, 30);
+    preferenceStore().setDefault(THROUGHPUT_PARSE_BUDGET, 50);
+    preferenceStore().setDefault(PREWARMED_SHELL_COUNT, 0);
     setDefault(BACKGROUND_COLOR, new RGB(0, 0, 0));
     setDefault(FOREGROUND_COLOR, new RGB(229, 229, 229));
     preferenceStore().setDefault(USE_CUSTOM_FONT, false);
@@ -20,6 +20,10 @@ final class PreferenceNames {
   static final String USE_CUSTOM_FONT = "useCustomFont";
   static final String CUSTOM_FONT_DATA = "customFontData";
   static final String USE_BLINKING_CURSOR = "useBlinkingCursor";
+  static final String RENDERING_MODE = "renderingMode";
+  static final String MAXIMUM_FRAME_RATE = "maximumFrameRate";
+  static final String THROUGHPUT_PARSE_BUDGET = "throughputParseBudget";
+  static final String PREWARMED_SHELL_COUNT = "prewarmedShellCount";
 
   private PreferenceNames() {}
 }
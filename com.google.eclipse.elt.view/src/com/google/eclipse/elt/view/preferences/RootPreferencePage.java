@@ -20,6 +20,8 @@ import org.eclipse.swt.layout.*;
 import org.eclipse.swt.widgets.*;
 import org.eclipse.ui.*;
 
+import com.google.eclipse.elt.emulator.control.RenderingMode;
+
 /**
  * @author alruiz@google.com (Alex Ruiz)
  */
@@ -30,13 +32,39 @@ public class RootPreferencePage extends PreferencePage implements IWorkbenchPref
   private static final int MAXIMUM_BUFFER_LINE_COUNT = 50000;
   private static final String INVALID_BUFFER_LINE_COUNT_MESSAGE =
       NLS.bind(invalidBufferLineCount, MINIMUM_BUFFER_LINE_COUNT, MAXIMUM_BUFFER_LINE_COUNT);
+  private static final int MINIMUM_FRAME_RATE = 1;
+  private static final int MAXIMUM_FRAME_RATE_VALUE = 120;
+  private static final String INVALID_FRAME_RATE_MESSAGE =
+      NLS.bind(invalidMaximumFrameRate, MINIMUM_FRAME_RATE, MAXIMUM_FRAME_RATE_VALUE);
+  private static final int MINIMUM_PARSE_BUDGET = 1;
+  private static final int MAXIMUM_PARSE_BUDGET = 500;
+  private static final String INVALID_PARSE_BUDGET_MESSAGE =
+      NLS.bind(invalidThroughputParseBudget, MINIMUM_PARSE_BUDGET, MAXIMUM_PARSE_BUDGET);
+  private static final int MAXIMUM_PREWARMED_SHELL_COUNT = 8;
+  private static final String INVALID_PREWARMED_SHELL_COUNT_MESSAGE =
+      NLS.bind(invalidPrewarmedShellCount, 0, MAXIMUM_PREWARMED_SHELL_COUNT);
+
+  private static final RenderingMode[] RENDERING_MODES = RenderingMode.values();
 
   private Text txtBufferLineCount;
   private Button btnCloseViewOnExit;
   private Button btnWarnOnClose;
   private Button btnUseBlinkingCursor;
+  private Combo cmbRenderingMode;
+  private Text txtMaximumFrameRate;
+  private Text txtThroughputParseBudget;
+  private Text txtPrewarmedShellCount;
 
   private int newBufferLineCount;
+  private int newMaximumFrameRate;
+  private int newThroughputParseBudget;
+  private int newPrewarmedShellCount;
+
+  private final ModifyListener validator = new ModifyListener() {
+    @Override public void modifyText(ModifyEvent event) {
+      validate();
+    }
+  };
 
   @Override public void init(IWorkbench workbench) {
     setPreferenceStore(preferenceStore());
@@ -58,22 +86,7 @@ public class RootPreferencePage extends PreferencePage implements IWorkbenchPref
 
     txtBufferLineCount = new Text(contents, SWT.BORDER);
     txtBufferLineCount.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 1, 1));
-    txtBufferLineCount.addModifyListener(new ModifyListener() {
-      @Override public void modifyText(ModifyEvent event) {
-        try {
-          newBufferLineCount = Integer.parseInt(txtBufferLineCount.getText());
-        } catch (NumberFormatException e) {
-          setInvalid(INVALID_BUFFER_LINE_COUNT_MESSAGE);
-          return;
-        }
-        if (newBufferLineCount < MINIMUM_BUFFER_LINE_COUNT || newBufferLineCount > MAXIMUM_BUFFER_LINE_COUNT) {
-          setInvalid(INVALID_BUFFER_LINE_COUNT_MESSAGE);
-          return;
-        }
-        setErrorMessage(null);
-        setValid(true);
-      }
-    });
+    txtBufferLineCount.addModifyListener(validator);
 
     btnCloseViewOnExit = new Button(contents, SWT.CHECK);
     btnCloseViewOnExit.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false, 2, 1));
@@ -87,10 +100,75 @@ public class RootPreferencePage extends PreferencePage implements IWorkbenchPref
     btnUseBlinkingCursor.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false, 2, 1));
     btnUseBlinkingCursor.setText(useBlinkingCursor);
 
+    Label lblRenderingMode = new Label(contents, SWT.NONE);
+    lblRenderingMode.setText(renderingMode);
+
+    cmbRenderingMode = new Combo(contents, SWT.READ_ONLY);
+    cmbRenderingMode.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 1, 1));
+    cmbRenderingMode.setItems(new String[] { renderingModeAutomatic, renderingModeLowLatency,
+        renderingModeHighThroughput });
+
+    Label lblMaximumFrameRate = new Label(contents, SWT.NONE);
+    lblMaximumFrameRate.setText(maximumFrameRate);
+
+    txtMaximumFrameRate = new Text(contents, SWT.BORDER);
+    txtMaximumFrameRate.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 1, 1));
+    txtMaximumFrameRate.addModifyListener(validator);
+
+    Label lblThroughputParseBudget = new Label(contents, SWT.NONE);
+    lblThroughputParseBudget.setText(throughputParseBudget);
+
+    txtThroughputParseBudget = new Text(contents, SWT.BORDER);
+    txtThroughputParseBudget.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 1, 1));
+    txtThroughputParseBudget.addModifyListener(validator);
+
+    Label lblPrewarmedShellCount = new Label(contents, SWT.NONE);
+    lblPrewarmedShellCount.setText(prewarmedShellCount);
+
+    txtPrewarmedShellCount = new Text(contents, SWT.BORDER);
+    txtPrewarmedShellCount.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 1, 1));
+    txtPrewarmedShellCount.addModifyListener(validator);
+
     updateContents();
     return contents;
   }
 
+  private void validate() {
+    newBufferLineCount = parseInt(txtBufferLineCount, MINIMUM_BUFFER_LINE_COUNT, MAXIMUM_BUFFER_LINE_COUNT);
+    if (newBufferLineCount < 0) {
+      setInvalid(INVALID_BUFFER_LINE_COUNT_MESSAGE);
+      return;
+    }
+    newMaximumFrameRate = parseInt(txtMaximumFrameRate, MINIMUM_FRAME_RATE, MAXIMUM_FRAME_RATE_VALUE);
+    if (newMaximumFrameRate < 0) {
+      setInvalid(INVALID_FRAME_RATE_MESSAGE);
+      return;
+    }
+    newThroughputParseBudget = parseInt(txtThroughputParseBudget, MINIMUM_PARSE_BUDGET, MAXIMUM_PARSE_BUDGET);
+    if (newThroughputParseBudget < 0) {
+      setInvalid(INVALID_PARSE_BUDGET_MESSAGE);
+      return;
+    }
+    newPrewarmedShellCount = parseInt(txtPrewarmedShellCount, 0, MAXIMUM_PREWARMED_SHELL_COUNT);
+    if (newPrewarmedShellCount < 0) {
+      setInvalid(INVALID_PREWARMED_SHELL_COUNT_MESSAGE);
+      return;
+    }
+    setErrorMessage(null);
+    setValid(true);
+  }
+
+  // Returns the value of the given field, or -1 if it is not an integer within the given range.
+  private static int parseInt(Text text, int minimum, int maximum) {
+    int value;
+    try {
+      value = Integer.parseInt(text.getText());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+    return (value < minimum || value > maximum) ? -1 : value;
+  }
+
   private void setInvalid(String errorMessage) {
     setErrorMessage(errorMessage);
     setValid(false);
@@ -101,6 +179,20 @@ public class RootPreferencePage extends PreferencePage implements IWorkbenchPref
     btnCloseViewOnExit.setSelection(getPreferenceStore().getBoolean(CLOSE_VIEW_ON_EXIT));
     btnWarnOnClose.setSelection(getPreferenceStore().getBoolean(WARN_ON_CLOSE));
     btnUseBlinkingCursor.setSelection(getPreferenceStore().getBoolean(USE_BLINKING_CURSOR));
+    selectRenderingMode(getPreferenceStore().getString(RENDERING_MODE));
+    txtMaximumFrameRate.setText(getPreferenceStore().getString(MAXIMUM_FRAME_RATE));
+    txtThroughputParseBudget.setText(getPreferenceStore().getString(THROUGHPUT_PARSE_BUDGET));
+    txtPrewarmedShellCount.setText(getPreferenceStore().getString(PREWARMED_SHELL_COUNT));
+  }
+
+  private void selectRenderingMode(String name) {
+    for (int i = 0; i < RENDERING_MODES.length; i++) {
+      if (RENDERING_MODES[i].name().equals(name)) {
+        cmbRenderingMode.select(i);
+        return;
+      }
+    }
+    cmbRenderingMode.select(0);
   }
 
   @Override public boolean performOk() {
@@ -108,6 +200,10 @@ public class RootPreferencePage extends PreferencePage implements IWorkbenchPref
     getPreferenceStore().setValue(CLOSE_VIEW_ON_EXIT, btnCloseViewOnExit.getSelection());
     getPreferenceStore().setValue(WARN_ON_CLOSE, btnWarnOnClose.getSelection());
     getPreferenceStore().setValue(USE_BLINKING_CURSOR, btnUseBlinkingCursor.getSelection());
+    getPreferenceStore().setValue(RENDERING_MODE, RENDERING_MODES[cmbRenderingMode.getSelectionIndex()].name());
+    getPreferenceStore().setValue(MAXIMUM_FRAME_RATE, newMaximumFrameRate);
+    getPreferenceStore().setValue(THROUGHPUT_PARSE_BUDGET, newThroughputParseBudget);
+    getPreferenceStore().setValue(PREWARMED_SHELL_COUNT, newPrewarmedShellCount);
     return true;
   }
 
@@ -116,5 +212,9 @@ public class RootPreferencePage extends PreferencePage implements IWorkbenchPref
     btnCloseViewOnExit.setSelection(getPreferenceStore().getDefaultBoolean(CLOSE_VIEW_ON_EXIT));
     btnWarnOnClose.setSelection(getPreferenceStore().getDefaultBoolean(WARN_ON_CLOSE));
     btnUseBlinkingCursor.setSelection(getPreferenceStore().getDefaultBoolean(USE_BLINKING_CURSOR));
+    selectRenderingMode(getPreferenceStore().getDefaultString(RENDERING_MODE));
+    txtMaximumFrameRate.setText(getPreferenceStore().getDefaultString(MAXIMUM_FRAME_RATE));
+    txtThroughputParseBudget.setText(getPreferenceStore().getDefaultString(THROUGHPUT_PARSE_BUDGET));
+    txtPrewarmedShellCount.setText(getPreferenceStore().getDefaultString(PREWARMED_SHELL_COUNT));
   }
 }
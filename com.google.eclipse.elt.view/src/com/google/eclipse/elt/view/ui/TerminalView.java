@@ -33,7 +33,7 @@ import org.eclipse.swt.widgets.*;
 import org.eclipse.ui.*;
 import org.eclipse.ui.contexts.*;
 import org.eclipse.ui.part.ViewPart;
-import org.eclipse.ui.progress.UIJob;
+import org.eclipse.ui.progress.*;
 
 import com.google.eclipse.elt.emulator.control.ITerminalListener;
 import com.google.eclipse.elt.emulator.provisional.api.TerminalState;
@@ -61,6 +61,7 @@ public class TerminalView extends ViewPart implements ISaveablePart2 {
 
   private boolean checkCanBeClosed;
   private boolean forceClose;
+  private boolean busy;
 
   private IContextActivation contextActivation;
 
@@ -110,7 +111,9 @@ public class TerminalView extends ViewPart implements ISaveablePart2 {
         updatePartName(title);
       }
 
-      @Override public void setState(TerminalState state) {}
+      @Override public void setState(TerminalState state) {
+        showBusy(state == TerminalState.CONNECTING);
+      }
     });
     IViewSite viewSite = getViewSite();
     preferencesChangeListener = new AbstractPreferencesChangeListener() {
@@ -129,11 +132,16 @@ public class TerminalView extends ViewPart implements ISaveablePart2 {
       @Override protected void onUseBlinkingCursorChanged() {
         updateUsageOfBlinkingCursor();
       }
+
+      @Override protected void onRenderingChanged() {
+        updateRendering();
+      }
     };
     preferenceStore().addPropertyChangeListener(preferencesChangeListener);
     updateBufferLineCount();
     updateColors();
     updateUsageOfBlinkingCursor();
+    updateRendering();
     textFontChangeListener = new IPropertyChangeListener() {
       @Override public void propertyChange(PropertyChangeEvent event) {
         if (TEXT_FONT.equals(event.getProperty())) {
@@ -187,6 +195,10 @@ public class TerminalView extends ViewPart implements ISaveablePart2 {
     terminalWidget.setBlinkingCursor(useBlinkingCursor());
   }
 
+  private void updateRendering() {
+    terminalWidget.setRendering(renderingMode(), maximumFrameRate(), throughputParseBudget());
+  }
+
   private Font terminalFont() {
     if (useCustomFont()) {
       return new Font(Display.getDefault(), customFontData());
@@ -249,6 +261,31 @@ public class TerminalView extends ViewPart implements ISaveablePart2 {
     terminalWidget.connect();
   }
 
+  // Called from any thread. Shows the view as busy while the terminal is starting.
+  private void showBusy(final boolean connecting) {
+    if (terminalWidget == null || terminalWidget.isDisposed()) {
+      return;
+    }
+    terminalWidget.getDisplay().asyncExec(new Runnable() {
+      @Override public void run() {
+        if (busy == connecting || terminalWidget.isDisposed()) {
+          return;
+        }
+        IWorkbenchSiteProgressService progressService =
+            (IWorkbenchSiteProgressService) getSite().getAdapter(IWorkbenchSiteProgressService.class);
+        if (progressService == null) {
+          return;
+        }
+        busy = connecting;
+        if (busy) {
+          progressService.incrementBusy();
+        } else {
+          progressService.decrementBusy();
+        }
+      }
+    });
+  }
+
   private void updatePartName(final String value) {
     UIJob job = new UIJob("Update terminal view title") {
       @Override public IStatus runInUIThread(IProgressMonitor monitor) {
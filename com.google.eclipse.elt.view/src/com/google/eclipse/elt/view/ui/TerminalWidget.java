@@ -41,7 +41,7 @@ class TerminalWidget extends Composite {
   TerminalWidget(Composite parent, IViewSite viewSite) {
     super(parent, SWT.NONE);
     GridLayoutFactory.fillDefaults().spacing(0, 0).applyTo(this);
-    ITerminalConnector terminalConnector = createLocalTerminalConnector(encoding);
+    ITerminalConnector terminalConnector = createLocalTerminalConnector();
     terminalControl = new VT100TerminalControl(terminalListener, this, new ITerminalConnector[] { terminalConnector });
     terminalControl.setConnector(terminalConnector);
     try {
@@ -142,6 +142,12 @@ class TerminalWidget extends Composite {
     terminalControl.setBlinkingCursor(useBlinkingCursor);
   }
 
+  void setRendering(RenderingMode mode, int maximumFrameRate, int throughputParseBudget) {
+    terminalControl.setRenderingMode(mode);
+    terminalControl.setMaximumFrameRate(maximumFrameRate);
+    terminalControl.setThroughputParseBudget(throughputParseBudget);
+  }
+
   private static class TerminalListener implements ITerminalListener {
     ITerminalListener delegate;
 